@@ -0,0 +1,65 @@
+package com.pat;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * What a cartridge says about itself in 0x0134 - 0x014F, without loading the rest of it.
+ * The bank controller, RAM size and battery are worked out by the same code Memory uses.
+ */
+public record CartridgeHeader(String title, int cartridgeType, int romSizeCode, int ramSizeCode, int cgbFlag,
+                              int headerChecksum, int globalChecksum, boolean headerChecksumValid) {
+
+    /**
+     * Bytes from the start of the ROM needed to parse the header.
+     */
+    public static final int HEADER_END = 0x150;
+
+    public static CartridgeHeader parse(byte[] rom) {
+        if (rom.length < HEADER_END) {
+            throw new IllegalArgumentException("Too short to hold a cartridge header: " + rom.length + " bytes");
+        }
+        int cgbFlag = rom[0x143] & 0xFF;
+        // colour games took the last byte (or more) of the title for the CGB flag and manufacturer code
+        int titleEnd = (cgbFlag & 0x80) != 0 ? 0x143 : 0x144;
+        int length = 0;
+        while (0x134 + length < titleEnd && rom[0x134 + length] != 0) {
+            length++;
+        }
+        String title = new String(rom, 0x134, length, StandardCharsets.US_ASCII).trim();
+
+        int checksum = 0;
+        for (int i = 0x134; i <= 0x14C; i++) {
+            checksum = checksum - (rom[i] & 0xFF) - 1;
+        }
+        int headerChecksum = rom[0x14D] & 0xFF;
+
+        return new CartridgeHeader(title, rom[0x147] & 0xFF, rom[0x148] & 0xFF, rom[0x149] & 0xFF, cgbFlag,
+                headerChecksum, (rom[0x14E] & 0xFF) << 8 | (rom[0x14F] & 0xFF), (checksum & 0xFF) == headerChecksum);
+    }
+
+    public Memory.MemoryBankType memoryBankType() {
+        return Memory.memoryBankTypeOf(cartridgeType);
+    }
+
+    /**
+     * ROM size in bytes the header declares, 32kB doubled romSizeCode times.
+     */
+    public int romSize() {
+        return romSizeCode < 0x10 ? 0x8000 << romSizeCode : 0;
+    }
+
+    public int ramSize() {
+        return Memory.cartRamSizeOf(cartridgeType, ramSizeCode);
+    }
+
+    public boolean hasBattery() {
+        return Memory.hasBattery(cartridgeType);
+    }
+
+    /**
+     * Runs on a Game Boy Color, either as well as on the original (0x80) or only there (0xC0).
+     */
+    public boolean supportsCgb() {
+        return (cgbFlag & 0x80) != 0;
+    }
+}
@@ -0,0 +1,20 @@
+package com.pat;
+
+/**
+ * Hardware driven by the CPU clock that can change memory behind the CPU's back (PPU, timers, DMA, ...).
+ * The CPU asks before fast-forwarding through an idle loop, so it never skips past a change the loop is waiting for.
+ */
+public interface ClockedDevice {
+    /**
+     * Cycles from now until this device can next change anything the CPU can read, or raise an interrupt.
+     * Long.MAX_VALUE if it never will on its own.
+     */
+    long cyclesUntilNextEvent();
+
+    /**
+     * Brings the device up to cycle, doing everything it would have done on the way. Called between blocks, so
+     * devices run behind the CPU by at most one block.
+     */
+    default void catchUp(long cycle) {
+    }
+}
@@ -0,0 +1,125 @@
+package com.pat;
+
+import com.pat.ppu.PPU;
+
+import java.io.IOException;
+
+/**
+ * The machine without a frontend: memory, CPU and whatever hardware gets hung off them.
+ * Schedulers, benchmarks and the Swing frontend drive it a frame or a cycle budget at a time
+ * instead of calling into the CPU per instruction.
+ * Closing it unloads the ROM, which hands the image back to the {@link RomCache} and writes out any battery save.
+ */
+public class Emulator implements AutoCloseable {
+
+    public enum StopReason {
+        BUDGET, // ran the cycles it was asked for
+        BREAKPOINT, // PC landed on a breakpoint
+        STOP_REQUESTED // requestStop was called
+    }
+
+    private final Memory memory;
+    private final CPU cpu;
+    private final PPU ppu;
+
+    private volatile boolean stopRequested;
+    private StopReason stopReason = StopReason.BUDGET;
+
+    public Emulator() {
+        this(new Memory());
+    }
+
+    public Emulator(Memory memory) {
+        this.memory = memory;
+        this.cpu = new CPU(memory);
+        this.ppu = new PPU(memory);
+        memory.attachPpu(ppu);
+    }
+
+    /**
+     * Unloads the ROM, see {@link Memory#unloadRom()}. The emulator can have another ROM loaded afterwards.
+     */
+    @Override
+    public void close() throws IOException {
+        memory.unloadRom();
+    }
+
+    public Memory getMemory() {
+        return memory;
+    }
+
+    public CPU getCpu() {
+        return cpu;
+    }
+
+    public PPU getPpu() {
+        return ppu;
+    }
+
+    /**
+     * Total cycles run since the CPU was created.
+     */
+    public long getCycleCount() {
+        return cpu.getCycleCount();
+    }
+
+    /**
+     * Runs whole blocks until at least budget cycles have gone by, PC lands on a breakpoint or requestStop is called.
+     * Blocks aren't split, so the last one can run a few cycles over; the return value is exactly what was run.
+     */
+    public long runCycles(long budget) {
+        CPU cpu = this.cpu;
+        long start = cpu.getCycleCount();
+        long end = start + budget;
+        boolean checkBreakpoints = cpu.hasBreakpoints();
+        StopReason reason = StopReason.BUDGET;
+
+        // idle loops are only fast-forwarded up to the end of the budget
+        cpu.setCycleLimit(end);
+        long now = start;
+        while (now < end) {
+            now += cpu.executeBlock();
+            memory.catchUpClockedDevices(now);
+            if (stopRequested) {
+                reason = StopReason.STOP_REQUESTED;
+                break;
+            }
+            if (checkBreakpoints && cpu.isBreakpoint(cpu.getPC())) {
+                reason = StopReason.BREAKPOINT;
+                break;
+            }
+        }
+        cpu.setCycleLimit(Long.MAX_VALUE);
+
+        stopRequested = false;
+        stopReason = reason;
+        return now - start;
+    }
+
+    /**
+     * Runs up to the next frame boundary (every CPU.CYCLES_PER_FRAME cycles since power on), so cycles a previous
+     * run went over by come out of this frame rather than piling up.
+     */
+    public long runFrame() {
+        long now = cpu.getCycleCount();
+        long frameEnd = (now / CPU.CYCLES_PER_FRAME + 1) * CPU.CYCLES_PER_FRAME;
+        long ran = runCycles(frameEnd - now);
+        // battery RAM written this frame goes out to the save file in the background
+        memory.flushCartRam();
+        return ran;
+    }
+
+    /**
+     * Stops the run in progress after its current block, or the next one if nothing is running. Safe from any thread.
+     */
+    public void requestStop() {
+        stopRequested = true;
+    }
+
+    /**
+     * Why the last runCycles or runFrame returned.
+     */
+    public StopReason getStopReason() {
+        return stopReason;
+    }
+}
@@ -0,0 +1,64 @@
+package com.pat;
+
+import com.pat.ppu.PPU;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+/**
+ * Puts PPU frames on screen: the framebuffer is copied straight into the int[] behind a TYPE_INT_RGB image, and the
+ * image is scaled onto whatever it's drawn on with a single drawImage. Nothing is allocated per frame.
+ * By default the frame is stretched over the whole area; with integer scaling it's drawn at the biggest whole
+ * multiple that fits, centred on black, which keeps every Game Boy pixel the same size.
+ */
+public class FramePresenter {
+
+    private final BufferedImage image = new BufferedImage(PPU.WIDTH, PPU.HEIGHT, BufferedImage.TYPE_INT_RGB);
+    // writing into this directly stops Java2D caching the image on the card, which it couldn't anyway when every
+    // frame is new
+    private final int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    private final boolean integerScale;
+
+    public FramePresenter(boolean integerScale) {
+        this.integerScale = integerScale;
+    }
+
+    /**
+     * Takes a copy of an ARGB framebuffer, the alpha is ignored.
+     */
+    public void update(int[] framebuffer) {
+        System.arraycopy(framebuffer, 0, pixels, 0, pixels.length);
+    }
+
+    /**
+     * Draws the last frame over width x height from the top left of g.
+     */
+    public void draw(Graphics g, int width, int height) {
+        if (!integerScale) {
+            g.drawImage(image, 0, 0, width, height, null);
+            return;
+        }
+        int scale = Math.max(1, Math.min(width / PPU.WIDTH, height / PPU.HEIGHT));
+        int scaledWidth = PPU.WIDTH * scale;
+        int scaledHeight = PPU.HEIGHT * scale;
+        int x = (width - scaledWidth) / 2;
+        int y = (height - scaledHeight) / 2;
+        // only the borders need clearing, the frame covers the rest
+        g.setColor(Color.BLACK);
+        g.fillRect(0, 0, width, y);
+        g.fillRect(0, y + scaledHeight, width, height - y - scaledHeight);
+        g.fillRect(0, y, x, scaledHeight);
+        g.fillRect(x + scaledWidth, y, width - x - scaledWidth, scaledHeight);
+        g.drawImage(image, x, y, scaledWidth, scaledHeight, null);
+    }
+
+    public BufferedImage getImage() {
+        return image;
+    }
+
+    public boolean isIntegerScale() {
+        return integerScale;
+    }
+}
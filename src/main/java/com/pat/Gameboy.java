@@ -1,16 +1,32 @@
 package com.pat;
 
+import com.pat.ppu.FrameExchange;
+import com.pat.ppu.PPU;
+
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
+import java.awt.image.BufferStrategy;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Date;
 
 public class Gameboy extends JPanel {
-    private final Memory memory = new Memory(); // Includes cartridge
-    private final CPU cpu = new CPU(memory);
+    private final Emulator emulator = new Emulator();
+    private final Memory memory = emulator.getMemory(); // Includes cartridge
+    private final CPU cpu = emulator.getCpu();
+    private final PPU ppu = emulator.getPpu();
     private final Controller controller = new Controller();
+    // -Djavaboy.integerScale=true draws whole multiples of the Game Boy screen instead of stretching it
+    private final FramePresenter presenter =
+            new FramePresenter(Boolean.parseBoolean(System.getProperty("javaboy.integerScale", "false")));
+    // finished frames from the emulation thread to whichever thread shows them
+    private final FrameExchange frames = new FrameExchange(PPU.WIDTH * PPU.HEIGHT);
+    // -Djavaboy.activeRendering=true draws onto this from its own thread instead of repainting on the EDT
+    private final Canvas canvas =
+            Boolean.parseBoolean(System.getProperty("javaboy.activeRendering", "false")) ? new Canvas() : null;
 
     private static final int SCREEN_WIDTH = 512;
     private static final int SCREEN_HEIGHT = 512;
@@ -19,16 +35,22 @@ public class Gameboy extends JPanel {
     private double SKIP_TICKS = 1000 / VERT_SYNC;
     private long nextGameTick;
 
-    private int[][] screenBuffer = new int[256][256]; // internal buffer
-    public int[][] screenData = new int[160][144]; // GameBoy screen dimensions
-
-    private int scrollX, scrollY;
-    private int wndPosX, wndPosY;
-
     private JFrame frame;
     private JTextArea registerTextArea;
 
     public Gameboy() throws IOException {
+        // cpu_instrs until there's a way to pick a cartridge, the loop runs frames for good now
+        memory.loadTestRom();
+        ppu.setFrameExchange(frames);
+
+        if (canvas != null) {
+            // the render thread does all the drawing, Swing shouldn't
+            setIgnoreRepaint(true);
+            canvas.setIgnoreRepaint(true);
+            setLayout(new BorderLayout());
+            add(canvas, BorderLayout.CENTER);
+        }
+
         // Initialize JFrame for rendering
         frame = new JFrame("Javaboiiiiii Emulator");
         frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
@@ -43,6 +65,8 @@ public class Gameboy extends JPanel {
                 // You can handle key presses similar to the GLFW key handling
                 if (e.getKeyCode() == KeyEvent.VK_P) {
                     System.out.println("Pause button pressed!");
+                } else if (e.getKeyCode() == KeyEvent.VK_T) {
+                    dumpTrace();
                 }
             }
 
@@ -72,6 +96,22 @@ public class Gameboy extends JPanel {
         nextGameTick = System.currentTimeMillis();
     }
 
+    // T writes the instruction trace out, when the emulator was started with -Djavaboy.trace=<records>
+    private void dumpTrace() {
+        Tracer tracer = cpu.getTracer();
+        if (tracer == null) {
+            System.out.println("Tracing is off, start with -Djavaboy.trace=<records> to turn it on");
+            return;
+        }
+        Path path = Paths.get("trace.log");
+        try {
+            tracer.dump(path);
+            System.out.printf("Wrote %d trace records to %s\n", tracer.size(), path.toAbsolutePath());
+        } catch (IOException e) {
+            System.out.printf("Couldn't write the trace :: %s\n", e);
+        }
+    }
+
     public JPanel createSidePanel() {
         JPanel sidePanel = new JPanel();
         sidePanel.setLayout(new BorderLayout());
@@ -120,6 +160,10 @@ public class Gameboy extends JPanel {
         registerInfo.append("N: ").append(flags.isSet(Flags.Flag.SUBTRACT)).append("\n");
         registerInfo.append("H: ").append(flags.isSet(Flags.Flag.HALF_CARRY)).append("\n");
         registerInfo.append("C: ").append(flags.isSet(Flags.Flag.CARRY)).append("\n");
+        registerInfo.append("\nIdle cycles last frame: ").append(cpu.getIdleCyclesLastFrame()).append("\n");
+        registerInfo.append("\nFrames shown: ").append(frames.getTaken()).append("\n");
+        registerInfo.append("Dropped: ").append(frames.getDropped()).append("\n");
+        registerInfo.append("Duplicated: ").append(frames.getDuplicated()).append("\n");
 
         // Update the text area with the new register data
         registerTextArea.setText(registerInfo.toString());
@@ -128,114 +172,82 @@ public class Gameboy extends JPanel {
 
     public void startScreen() throws InterruptedException {
         // Triggered to start the rendering process
-        Timer timer = new Timer((int) SKIP_TICKS, e -> repaint());
-        timer.start();
+        if (canvas != null) {
+            Thread renderThread = new Thread(this::renderLoop, "javaboy-render");
+            renderThread.setDaemon(true);
+            renderThread.start();
+        } else {
+            // the EDT is the consuming side, it takes the newest frame here and paintComponent only draws it
+            Timer timer = new Timer((int) SKIP_TICKS, e -> {
+                if (frames.take()) {
+                    presenter.update(frames.getFront());
+                }
+                repaint();
+            });
+            timer.start();
+        }
         loop();
     }
 
+    private void renderLoop() {
+        canvas.createBufferStrategy(2);
+        BufferStrategy strategy = canvas.getBufferStrategy();
+        long frameNanos = (long) (1_000_000_000L / VERT_SYNC);
+        long nextFrame = System.nanoTime();
+        try {
+            while (true) {
+                if (frames.take()) {
+                    presenter.update(frames.getFront());
+                }
+                // the buffers can be lost or restored under us, draw again until a whole frame makes it out
+                do {
+                    do {
+                        Graphics g = strategy.getDrawGraphics();
+                        try {
+                            presenter.draw(g, canvas.getWidth(), canvas.getHeight());
+                        } finally {
+                            g.dispose();
+                        }
+                    } while (strategy.contentsRestored());
+                    strategy.show();
+                } while (strategy.contentsLost());
+                Toolkit.getDefaultToolkit().sync();
 
-    private void loop() throws InterruptedException {
-        int cycles = 0;
-        boolean shouldRun = true;
-        while (shouldRun) {
-            cycles = cycles + cpu.fetchDecodeExecute();
-            if (cycles > 9999) {
-                shouldRun = false;
+                nextFrame = pace(nextFrame, frameNanos);
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
-
-        prepareScreenBufferForFrame();
-
-        System.out.println("Have finished running for 9999");
-
-
     }
 
-    private void prepareScreenBufferForFrame() {
-        int currentPixelX = 0;
-        int currentPixelY = 0;
-        // Do a horizontal line at a time by scanning down vertically and doing each horizontal line
-        for (int yy = 0; yy < 32; yy++) {
-            currentPixelY = yy * 8;
-            for (int xx = 0; xx < 32; xx++) {
-                currentPixelX = xx * 8;
-                // do 8x8
-
-
-                for (int innerY = 0; innerY < 8; innerY++) {
-                    // get byte
-                    int drawByteLocation = 0x8000 + (yy * xx);
-                    int drawByteSecondLocation = 0x8000 + (yy * xx) + 1;
-                    int drawByte = this.memory.readByteFromLocation(drawByteLocation);
-                    int drawByteSecond = this.memory.readByteFromLocation(drawByteSecondLocation);
-
-                    for (int innerX = 0; innerX < 8; innerX++) {
-
-                        boolean topLine = Helpful.getBit(drawByte, innerX);
-                        boolean bottomLine = Helpful.getBit(drawByteSecond, innerX);
-
-                        // decide the color
-
-                        Color color;
-
-                        if (topLine && bottomLine) {
-                            color = Color.YELLOW;
-                        } else if (topLine && !bottomLine) {
-                            color = Color.RED;
-                        } else if (!topLine && bottomLine) {
-                            color = Color.GREEN;
-                        } else {
-                            color = Color.BLACK;
-                        }
-
-//                        float drawX = 0 - (1 * ((float) (innerX + currentPixelX) / 256));
-//                        float drawY = 0 + (1 * ((float) (innerY + currentPixelY) / 256));
-
-                        screenBuffer[innerX + currentPixelX][innerY + currentPixelY] = color.getRGB();
-                    }
-                }
-            }
+    // sleeps until the next frame is due and returns when the one after is, or doesn't sleep if we've fallen behind
+    private static long pace(long nextFrame, long frameNanos) throws InterruptedException {
+        nextFrame += frameNanos;
+        long sleep = nextFrame - System.nanoTime();
+        if (sleep > 0) {
+            Thread.sleep(sleep / 1_000_000, (int) (sleep % 1_000_000));
+            return nextFrame;
         }
+        return System.nanoTime();
     }
 
-    @Override
-    protected void paintComponent(Graphics g) {
-        super.paintComponent(g);
-
-        // Cast to Graphics2D for more control (optional)
-        Graphics2D g2d = (Graphics2D) g;
-
-        // Clear the screen
-        g2d.setColor(Color.BLACK);
-        g2d.fillRect(0, 0, getWidth(), getHeight());
 
-        // Render GameBoy screen data
-        // You can adapt this to read from `screenData` or `screenBuffer`
-        for (int y = 0; y < screenData.length; y++) {
-            for (int x = 0; x < screenData[y].length; x++) {
-                g2d.setColor(getAWTColor(screenData[y][x]));
-                g2d.fillRect(x * 3, y * 3, 3, 3); // Scale-up each pixel for visibility
-            }
+    private void loop() throws InterruptedException {
+        long frameNanos = (long) (1_000_000_000L / VERT_SYNC);
+        long nextFrame = System.nanoTime();
+        while (true) {
+            // the PPU publishes each frame to the exchange as it finishes, without waiting for anyone
+            emulator.runFrame();
+
+            // hold it to the real frame rate, or catch up without sleeping if we've fallen behind
+            nextFrame = pace(nextFrame, frameNanos);
         }
     }
 
-    /**
-     * Converts screen buffer values into AWT colors.
-     */
-    private Color getAWTColor(int colorValue) {
-        if (colorValue < 0 || colorValue > 3) {
-            System.err.println("Invalid color value: " + colorValue);
-            return Color.PINK; // Return a debug color
-        }
-
-        Color[] dmgPalette = {
-                new Color(155, 188, 15),  // Shade 0
-                new Color(139, 172, 15),  // Shade 1
-                new Color(48, 98, 48),    // Shade 2
-                new Color(15, 56, 15)     // Shade 3
-        };
-
-        return dmgPalette[colorValue];
+    @Override
+    protected void paintComponent(Graphics g) {
+        // the frame, or the frame and its black border, covers the whole panel so there's nothing to clear first
+        presenter.draw(g, getWidth(), getHeight());
     }
 
     public static void main(String[] args) throws IOException, InterruptedException {
@@ -1,141 +1,670 @@
 package com.pat;
 
-import org.apache.commons.io.IOUtils;
+import com.pat.mbc.BankController;
+import com.pat.mbc.RealTimeClock;
+import com.pat.ppu.PPU;
 
 import java.io.*;
-import java.nio.file.Files;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Objects;
+import java.util.function.LongSupplier;
 
 public class Memory {
 
-    private static final int maxMemorySize = 0x10000;
-    // just storing the whole cartridge here
-    public int[] cartMemory;
-    // the whole memory map.
-    public int[] generalMemory = new int[maxMemorySize];
+    // the cartridge, shared with every other Memory running the same file
+    private static final RomImage NO_ROM = RomImage.copyOf(new byte[0]);
+
+    private RomImage rom = NO_ROM;
+    private int romBankOffset = 0x4000;
+    private int lowerRomOffset = 0;
+    // null for ROM only cartridges
+    private BankController bankController;
+
+    // everything else is per instance, and only as big as the hardware (or the cartridge header) says
+    private final ByteBuffer videoRam = ByteBuffer.allocate(0x2000);   // 0x8000 -> 0xA000
+    private ByteBuffer cartRam = ByteBuffer.allocate(0);               // 0xA000 -> 0xC000, banked, size from the header
+    private int cartRamMask;
+    // where battery backed RAM lives, null when it's only on the heap
+    private SaveFile saveFile;
+    private final ByteBuffer workRam = ByteBuffer.allocate(0x2000);    // 0xC000 -> 0xE000, echoed at 0xE000 -> 0xFE00
+    private final byte[] highMemory = new byte[0x200];                 // 0xFE00 -> 0x10000, OAM, IO, HRAM and IE
+    private final ByteBuffer highMemoryBuffer = ByteBuffer.wrap(highMemory);
+    private final ByteBuffer oam = highMemoryBuffer.slice(0, 0xA0).asReadOnlyBuffer();
 
     int currentRomBank = 1;
-    int[] ramBanks = new int[0x8000];
     int currentRamBank = 0;
+    // whether 0xA000 - 0xBFFF is the RAM bank, rather than disabled or handed to the bank controller
+    private boolean cartRamMapped = true;
+
+    // The page table: for each 256 byte page, the buffer it lives in and where in that buffer it starts.
+    // A null entry sends the access down the slow path, for pages with side effects (MBC control, IO, the
+    // unusable part of OAM) or with nothing behind them. Bank switches only move offsets.
+    private final ByteBuffer[] readPages = new ByteBuffer[0x100];
+    private final int[] readOffsets = new int[0x100];
+    private final ByteBuffer[] writePages = new ByteBuffer[0x100];
+    private final int[] writeOffsets = new int[0x100];
+
+    // bumped on every write into a 256 byte page, so anything decoded from that page can tell it's out of date.
+    // Echo pages share the version of the work RAM page they alias
+    private final int[] pageVersions = new int[0x100];
+    private final int[] versionSlots = new int[0x100];
+    // total writes so far, a cheap first check before looking at the pages
+    private int writeCount;
+
+    // OAM DMA: 160 bytes at one byte per M-cycle, the CPU can only get at 0xFF00 - 0xFFFF meanwhile
+    public static final int OAM_DMA_CYCLES = 160 * 4;
+    private boolean oamDmaActive;
+    private long oamDmaEnd;
+
+    private final List<ClockedDevice> clockedDevices = new ArrayList<>();
+    // owns 0xFF40 - 0xFF4B (bar the DMA register) once attached, null until then
+    private PPU ppu;
+    // emulated time, for hardware like the cartridge clock that works out where it is when asked rather than ticking
+    private LongSupplier cycleCounter = () -> 0;
 
     public enum MemoryBankType {
-        MBC1, MBC2, UNKNOWN
+        ROM_ONLY, MBC1, MBC2, MBC3, MBC5, UNKNOWN
     }
 
     public Memory() {
+        for (int page = 0; page < versionSlots.length; page++) {
+            versionSlots[page] = page >= 0xE0 && page < 0xFE ? page - 0x20 : page;
+        }
+        mapAllPages();
         reset();
     }
 
+    private void mapAllPages() {
+        mapPages(0x80, 0x20, videoRam, 0, true);
+        unmapVideoRamWrites();
+        mapPages(0xC0, 0x20, workRam, 0, true);
+        mapPages(0xE0, 0x1E, workRam, 0, true);
+        // OAM reads straight through, writes go the slow way to skip the protected area
+        mapPages(0xFE, 1, highMemoryBuffer, 0, false);
+        mapRom();
+        mapCartRam();
+    }
+
+    // VRAM writes go the slow way once there's a PPU, whose decoded tiles and layers need to know
+    private void unmapVideoRamWrites() {
+        if (ppu != null) {
+            Arrays.fill(writePages, 0x80, 0xA0, null);
+        }
+    }
+
+    private void mapPages(int firstPage, int count, ByteBuffer backing, int offset, boolean writable) {
+        for (int i = 0; i < count; i++) {
+            readPages[firstPage + i] = backing;
+            readOffsets[firstPage + i] = offset + i * 0x100;
+            writePages[firstPage + i] = writable ? backing : null;
+            writeOffsets[firstPage + i] = offset + i * 0x100;
+        }
+    }
+
+    // ROM is never writable, writes there are for the memory bank controller
+    private void mapRom() {
+        mapPages(0x00, 0x40, rom.buffer(), lowerRomOffset, false);
+        mapPages(0x40, 0x40, rom.buffer(), romBankOffset, false);
+    }
+
+    private void mapCartRam() {
+        if (!cartRamMapped || cartRam.capacity() == 0) {
+            mapPages(0xA0, 0x20, null, 0, false);
+            return;
+        }
+        for (int i = 0; i < 0x20; i++) {
+            int offset = (currentRamBank * 0x2000 + i * 0x100) & cartRamMask;
+            readPages[0xA0 + i] = cartRam;
+            readOffsets[0xA0 + i] = offset;
+            // writes to a save file take the slow path, which keeps track of what needs flushing
+            writePages[0xA0 + i] = saveFile == null ? cartRam : null;
+            writeOffsets[0xA0 + i] = offset;
+        }
+    }
+
     public MemoryBankType getMemoryBankType() {
-        int bankByte = this.cartMemory[0x147];
-        return switch (bankByte) {
-            case 1, 2, 3 -> MemoryBankType.MBC1;
-            case 5, 6 -> MemoryBankType.MBC2;
+        return memoryBankTypeOf(rom.read(0x147));
+    }
+
+    /**
+     * The controller a cartridge type byte (0x147 in the header) means. Shared with the ROM library so what it
+     * lists and what gets loaded agree.
+     */
+    public static MemoryBankType memoryBankTypeOf(int cartridgeType) {
+        return switch (cartridgeType) {
+            case 0x00, 0x08, 0x09 -> MemoryBankType.ROM_ONLY;
+            case 0x01, 0x02, 0x03 -> MemoryBankType.MBC1;
+            case 0x05, 0x06 -> MemoryBankType.MBC2;
+            case 0x0F, 0x10, 0x11, 0x12, 0x13 -> MemoryBankType.MBC3;
+            case 0x19, 0x1A, 0x1B, 0x1C, 0x1D, 0x1E -> MemoryBankType.MBC5;
             default -> MemoryBankType.UNKNOWN;
         };
     }
 
-    public void reset() {
-        generalMemory[0xFF05] = 0x00;
-        generalMemory[0xFF06] = 0x00;
-        generalMemory[0xFF07] = 0x00;
-        generalMemory[0xFF10] = 0x80;
-        generalMemory[0xFF11] = 0xBF;
-        generalMemory[0xFF12] = 0xF3;
-        generalMemory[0xFF14] = 0xBF;
-        generalMemory[0xFF16] = 0x3F;
-        generalMemory[0xFF17] = 0x00;
-        generalMemory[0xFF19] = 0xBF;
-        generalMemory[0xFF1A] = 0x7F;
-        generalMemory[0xFF1B] = 0xFF;
-        generalMemory[0xFF1C] = 0x9F;
-        generalMemory[0xFF1E] = 0xBF;
-        generalMemory[0xFF20] = 0xFF;
-        generalMemory[0xFF21] = 0x00;
-        generalMemory[0xFF22] = 0x00;
-        generalMemory[0xFF23] = 0xBF;
-        generalMemory[0xFF24] = 0x77;
-        generalMemory[0xFF25] = 0xF3;
-        generalMemory[0xFF26] = 0xF1;
-        generalMemory[0xFF40] = 0x91;
-        generalMemory[0xFF42] = 0x00;
-        generalMemory[0xFF43] = 0x00;
-        generalMemory[0xFF45] = 0x00;
-        generalMemory[0xFF47] = 0xFC;
-        generalMemory[0xFF48] = 0xFF;
-        generalMemory[0xFF49] = 0xFF;
-        generalMemory[0xFF4A] = 0x00;
-        generalMemory[0xFF4B] = 0x00;
-        generalMemory[0xFFFF] = 0x00;
+    /**
+     * Bytes of cartridge RAM the header at 0x149 declares. MBC2 has its 512 half bytes built in and declares none.
+     */
+    public int getCartRamSize() {
+        return cartRamSizeOf(rom.read(0x147), rom.read(0x149));
     }
 
+    public static int cartRamSizeOf(int cartridgeType, int ramSizeCode) {
+        if (memoryBankTypeOf(cartridgeType) == MemoryBankType.MBC2) {
+            return 0x200;
+        }
+        return switch (ramSizeCode) {
+            case 1 -> 0x800;
+            case 2 -> 0x2000;
+            case 3 -> 0x8000;
+            case 4 -> 0x20000;
+            case 5 -> 0x10000;
+            default -> 0;
+        };
+    }
+
+    public RomImage getRom() {
+        return rom;
+    }
 
     /**
-     * Use this to load the cpu_instrs rom directly. Blaarg rom.
+     * A byte straight out of the cartridge, ignoring banking.
      */
-    public void loadTestRom() throws IOException {
-        ClassLoader classLoader = getClass().getClassLoader();
-        File file = new File(Objects.requireNonNull(classLoader.getResource("cpu_instrs.gb")).getFile());
-        InputStream is = Files.newInputStream(file.toPath());
+    public int readRomByte(int offset) {
+        return rom.read(offset);
+    }
+
+    public int getPageVersion(int page) {
+        return pageVersions[versionSlots[page]];
+    }
+
+    public int getWriteCount() {
+        return writeCount;
+    }
+
+    public int getCurrentRomBank() {
+        return currentRomBank;
+    }
+
+    /**
+     * Points 0x4000 - 0x7FFF at bank (wrapped to the banks the ROM has).
+     */
+    public void setCurrentRomBank(int bank) {
+        currentRomBank = bank % rom.getBankCount();
+        romBankOffset = currentRomBank * 0x4000;
+        for (int i = 0; i < 0x40; i++) {
+            readOffsets[0x40 + i] = romBankOffset + i * 0x100;
+        }
+    }
+
+    /**
+     * Points 0x0000 - 0x3FFF at bank, which is 0 for everything except MBC1 in mode 1.
+     */
+    public void setLowerRomBank(int bank) {
+        int offset = (bank % rom.getBankCount()) * 0x4000;
+        if (offset == lowerRomOffset) {
+            return;
+        }
+        lowerRomOffset = offset;
+        for (int i = 0; i < 0x40; i++) {
+            readOffsets[i] = offset + i * 0x100;
+            // blocks from bank 0 aren't keyed by bank, so the old ones have to go
+            pageVersions[i]++;
+        }
+    }
+
+    public int getCurrentRamBank() {
+        return currentRamBank;
+    }
+
+    public void setCurrentRamBank(int bank) {
+        if (bank != currentRamBank) {
+            currentRamBank = bank;
+            mapCartRam();
+        }
+    }
+
+    /**
+     * Maps the current RAM bank at 0xA000 - 0xBFFF, or when false sends accesses there to the bank controller.
+     */
+    public void setCartRamMapped(boolean mapped) {
+        if (mapped != cartRamMapped) {
+            cartRamMapped = mapped;
+            mapCartRam();
+            if (!mapped) {
+                // games disable RAM when they're done saving
+                flushCartRam();
+            }
+        }
+    }
+
+    /**
+     * A write into cartridge RAM from a bank controller that keeps it off the page table.
+     */
+    public void writeCartRam(int offset, int value) {
+        cartRam.put(offset, (byte) value);
+        if (saveFile != null) {
+            saveFile.markDirty(offset);
+        }
+    }
+
+    /**
+     * Starts writing whatever has changed in battery backed RAM out to the save file, in the background.
+     */
+    public void flushCartRam() {
+        if (saveFile != null) {
+            saveFile.flush();
+        }
+    }
+
+    /**
+     * Writes the clock into the save file's trailer, to go out with the next flush. Not done every frame, the
+     * trailer keeps the wall clock time so the clock only needs saving when the game is done with it.
+     */
+    public void storeClock() {
+        RealTimeClock clock = bankController != null ? bankController.getClock() : null;
+        if (clock != null && saveFile != null) {
+            clock.writeTrailer(saveFile.getTrailer(), Instant.now().getEpochSecond());
+            saveFile.markTrailerDirty();
+        }
+    }
+
+    /**
+     * The save file battery backed RAM is mapped from, or null.
+     */
+    public SaveFile getSaveFile() {
+        return saveFile;
+    }
+
+    /**
+     * Whether the cartridge keeps its RAM (or clock) with a battery.
+     */
+    public boolean hasBattery() {
+        return hasBattery(rom.read(0x147));
+    }
+
+    /**
+     * Whether the cartridge type has MBC3's real time clock.
+     */
+    public static boolean hasClock(int cartridgeType) {
+        return cartridgeType == 0x0F || cartridgeType == 0x10;
+    }
+
+    public static boolean hasBattery(int cartridgeType) {
+        return switch (cartridgeType) {
+            case 0x03, 0x06, 0x09, 0x0F, 0x10, 0x13, 0x1B, 0x1E -> true;
+            default -> false;
+        };
+    }
+
+    /**
+     * All of the cartridge RAM, every bank.
+     */
+    public ByteBuffer getCartRam() {
+        return cartRam;
+    }
 
-        byte[] bytes = IOUtils.toByteArray(is, file.length());
-        int[] intArray = new int[0x200000];
-        for (int i = 0; i < bytes.length; i++) {
-            intArray[i] = bytes[i] & 0xFF;
+    public BankController getBankController() {
+        return bankController;
+    }
+
+    /**
+     * IE & IF, the interrupts both requested and enabled.
+     */
+    public int getPendingInterrupts() {
+        return highMemory[0x1FF] & highMemory[0x10F] & 0x1F;
+    }
+
+    /**
+     * Where getCycleCount comes from, the CPU hooks itself up here.
+     */
+    public void setCycleCounter(LongSupplier cycleCounter) {
+        this.cycleCounter = cycleCounter;
+    }
+
+    public long getCycleCount() {
+        return cycleCounter.getAsLong();
+    }
+
+    public void addClockedDevice(ClockedDevice device) {
+        clockedDevices.add(device);
+    }
+
+    /**
+     * Brings every clocked device up to cycle.
+     */
+    public void catchUpClockedDevices(long cycle) {
+        for (int i = 0; i < clockedDevices.size(); i++) {
+            clockedDevices.get(i).catchUp(cycle);
         }
+    }
+
+    /**
+     * Hands the LCD registers to ppu, and clocks it along with the other devices.
+     */
+    public void attachPpu(PPU ppu) {
+        this.ppu = ppu;
+        unmapVideoRamWrites();
+        addClockedDevice(ppu);
+    }
+
+    /**
+     * Sets bits in IF. Not counted as a write, nothing decoded from memory depends on it.
+     */
+    public void requestInterrupt(int mask) {
+        highMemory[0x10F] |= (byte) mask;
+    }
 
-        // get some of the stats from the rom itself
+    /**
+     * Clears bits in IF as the CPU dispatches them. Not counted as a write either.
+     */
+    public void acknowledgeInterrupt(int mask) {
+        highMemory[0x10F] &= (byte) ~mask;
+    }
 
+    /**
+     * All of video RAM, 0x8000 - 0x9FFF, for the PPU to draw from.
+     */
+    public ByteBuffer getVideoRam() {
+        return videoRam;
+    }
 
-        this.cartMemory = intArray;
+    /**
+     * The 160 bytes of OAM, read only.
+     */
+    public ByteBuffer getOam() {
+        return oam;
+    }
+
+    // 0xFF40 - 0xFF4B are the PPU's, except the DMA register in the middle
+    private boolean isPpuRegister(int location) {
+        return ppu != null && location >= 0xFF40 && location <= 0xFF4B && location != 0xFF46;
+    }
 
-        // Write the rom between 0x0000 and 0x8000.
-        // 0x0000 -> 0x4000 is ROM bank #0
-        // 0x4000 -> 0x8000 is ROM bank #n, for multibank etc.
-        // Test rom, tetris, is 32kB so no bank switching required
-        for (int i = 0; i < this.cartMemory.length && i < 0x8000; i++) {
-            this.generalMemory[i] = this.cartMemory[i];
+    /**
+     * Cycles until the first clocked device can next change memory, Long.MAX_VALUE when none of them will.
+     */
+    public long cyclesUntilNextEvent() {
+        // the end of a DMA lets the CPU see the rest of memory again
+        long cycles = oamDmaActive ? Math.max(0, oamDmaEnd - getCycleCount()) : Long.MAX_VALUE;
+        for (ClockedDevice device : clockedDevices) {
+            cycles = Math.min(cycles, device.cyclesUntilNextEvent());
         }
+        return cycles;
+    }
+
+    private void invalidateAllPages() {
+        for (int page = 0; page < pageVersions.length; page++) {
+            pageVersions[page]++;
+        }
+    }
 
+    public void reset() {
+        setIoRegister(0xFF05, 0x00);
+        setIoRegister(0xFF06, 0x00);
+        setIoRegister(0xFF07, 0x00);
+        setIoRegister(0xFF10, 0x80);
+        setIoRegister(0xFF11, 0xBF);
+        setIoRegister(0xFF12, 0xF3);
+        setIoRegister(0xFF14, 0xBF);
+        setIoRegister(0xFF16, 0x3F);
+        setIoRegister(0xFF17, 0x00);
+        setIoRegister(0xFF19, 0xBF);
+        setIoRegister(0xFF1A, 0x7F);
+        setIoRegister(0xFF1B, 0xFF);
+        setIoRegister(0xFF1C, 0x9F);
+        setIoRegister(0xFF1E, 0xBF);
+        setIoRegister(0xFF20, 0xFF);
+        setIoRegister(0xFF21, 0x00);
+        setIoRegister(0xFF22, 0x00);
+        setIoRegister(0xFF23, 0xBF);
+        setIoRegister(0xFF24, 0x77);
+        setIoRegister(0xFF25, 0xF3);
+        setIoRegister(0xFF26, 0xF1);
+        setIoRegister(0xFF40, 0x91);
+        setIoRegister(0xFF42, 0x00);
+        setIoRegister(0xFF43, 0x00);
+        setIoRegister(0xFF45, 0x00);
+        setIoRegister(0xFF47, 0xFC);
+        setIoRegister(0xFF48, 0xFF);
+        setIoRegister(0xFF49, 0xFF);
+        setIoRegister(0xFF4A, 0x00);
+        setIoRegister(0xFF4B, 0x00);
+        setIoRegister(0xFFFF, 0x00);
+        pageVersions[0xFF]++;
+    }
 
+    private void setIoRegister(int location, int value) {
+        highMemory[location - 0xFE00] = (byte) value;
+    }
 
+    /**
+     * Maps the ROM file at path, sharing it with any other Memory holding the same bytes, and sizes the cartridge
+     * RAM from its header. The image is held until {@link #unloadRom()}.
+     */
+    public void loadRom(Path path) throws IOException {
+        useRom(RomCache.shared().acquire(path), null);
+    }
+
+    /**
+     * Like loadRom, but battery backed RAM is mapped from the .sav beside the ROM so it survives between runs.
+     * Only one running instance should use a given save.
+     */
+    public void loadRomWithSaveFile(Path path) throws IOException {
+        loadRom(path, SaveFile.besideRom(path));
+    }
+
+    public void loadRom(Path path, Path savePath) throws IOException {
+        useRom(RomCache.shared().acquire(path), savePath);
+    }
+
+    /**
+     * Use this to load the cpu_instrs rom directly. Blaarg rom.
+     */
+    public void loadTestRom() throws IOException {
+        URL resource = Objects.requireNonNull(getClass().getClassLoader().getResource("cpu_instrs.gb"));
+        try {
+            loadRom(Path.of(resource.toURI()));
+        } catch (URISyntaxException e) {
+            throw new IOException(e);
+        }
     }
 
     /**
      * Use this mostly to test little sample roms. Not safe enough for an actual ROM
      */
     public void loadTestRomByteArray(int[] romMemory) throws IOException {
-        int[] intArray = new int[romMemory.length];
+        byte[] bytes = new byte[romMemory.length];
         for (int i = 0; i < romMemory.length; i++) {
-            intArray[i] = romMemory[i] & 0xFF;
+            bytes[i] = (byte) romMemory[i];
         }
+        useRom(RomCache.shared().acquire(bytes), null);
+    }
 
-        this.cartMemory = intArray;
+    /**
+     * Hands the ROM back to the cache, call it when the instance is finished with so an image nobody is running
+     * any more can go. Every load holds its image in {@link RomCache#shared()} until this or the next load, nothing
+     * else lets go of it; {@link Emulator#close()} calls this.
+     */
+    public void unloadRom() throws IOException {
+        useRom(NO_ROM, null);
+    }
 
-        // Write the rom between 0x0000 and 0x8000.
-        // 0x0000 -> 0x4000 is ROM bank #0
-        // 0x4000 -> 0x8000 is ROM bank #n, for multibank etc.
-        // Test rom, tetris, is 32kB so no bank switching required
-        for (int i = 0; i < this.cartMemory.length && i < 0x8000; i++) {
-            this.generalMemory[i] = this.cartMemory[i];
+    private void useRom(RomImage image, Path savePath) throws IOException {
+        storeClock();
+        flushCartRam();
+        oamDmaActive = false;
+        RomCache.shared().release(rom);
+        this.rom = image;
+        // only battery backed RAM and clocks go to a file, anything else is gone when the power is
+        boolean clock = hasClock(rom.read(0x147));
+        this.saveFile = savePath != null && hasBattery() && (getCartRamSize() > 0 || clock)
+                ? SaveFile.open(savePath, getCartRamSize(), clock ? RealTimeClock.TRAILER_SIZE : 0)
+                : null;
+        this.cartRam = saveFile != null ? saveFile.getRam() : ByteBuffer.allocate(getCartRamSize());
+        // every size a header can declare is a power of two, smaller RAMs mirror across the 8kB window
+        this.cartRamMask = Math.max(0, cartRam.capacity() - 1);
+        this.currentRamBank = 0;
+        this.lowerRomOffset = 0;
+        this.bankController = BankController.forCartridge(this);
+        if (clock && saveFile != null && saveFile.hasSavedTrailer()) {
+            bankController.getClock().readTrailer(saveFile.getTrailer(), Instant.now().getEpochSecond());
         }
+        // RAM behind a controller starts disabled, RAM on a plain cartridge is always there
+        this.cartRamMapped = bankController == null;
+        setCurrentRomBank(1);
+        mapRom();
+        mapCartRam();
+        invalidateAllPages();
     }
 
-    // expand this to also echo if needed, etc
     public void writeByteToLocation(int a, int location) {
-        if (location >= 0xE000 && location < 0xFE00) {
-            this.generalMemory[location] = a;
-            this.generalMemory[location - 0x2000] = a; // ECHO of E000 -> C000
-        } else if (location >= 0xC000 && location < 0xE000){
-            this.generalMemory[location] = a;
-            this.generalMemory[location + 0x2000] = a; // ECHO of C000 -> E000
+        writeCount++;
+        int page = location >> 8;
+        ByteBuffer backing = writePages[page];
+        if (backing != null) {
+            backing.put(writeOffsets[page] + (location & 0xFF), (byte) a);
+            pageVersions[versionSlots[page]]++;
+        } else {
+            writeSlow(a, location);
+        }
+    }
+
+    private void writeSlow(int a, int location) {
+        if (oamDmaActive && location < 0xFF00) {
+            if (isOamDmaActive()) {
+                // the DMA has the bus
+                return;
+            }
+            // it's just ended and the pages are mapped again, work RAM and echo only ever get here then
+            writeByteToLocation(a, location);
+            return;
+        }
+        if (location < 0x8000) {
+            if (bankController != null) {
+                bankController.write(a, location);
+            }
+        } else if (location < 0xA000) {
+            if (ppu != null) {
+                ppu.writeVideoRam(location - 0x8000, a);
+            } else {
+                videoRam.put(location - 0x8000, (byte) a);
+            }
+            pageVersions[location >> 8]++;
+        } else if (location < 0xC000) {
+            int page = location >> 8;
+            if (readPages[page] != null) {
+                // mapped, but from a save file
+                writeCartRam(writeOffsets[page] + (location & 0xFF), a);
+                pageVersions[page]++;
+            } else if (bankController != null) {
+                // cartridge RAM that is disabled, missing or belongs to the controller
+                bankController.writeRam(a, location);
+                pageVersions[location >> 8]++;
+            }
         } else if (location >= 0xFEA0 && location < 0xFEFF) {
             // protected area, dont do anything
-            System.out.printf("Protected memory write attempted at :: 0x%x\n", location);
-            return;
+        } else if (isPpuRegister(location)) {
+            ppu.writeRegister(location, a);
         } else {
-            // just return the memory
-            this.generalMemory[location] = a;
+            if (location < 0xFEA0 && ppu != null) {
+                // OAM, the PPU's sprite lists go stale
+                ppu.invalidateSprites();
+            }
+            highMemory[location - 0xFE00] = (byte) a;
+            pageVersions[location >> 8]++;
+            if (location == 0xFF46) {
+                startOamDma(a);
+            }
+        }
+    }
+
+    /**
+     * Copies 160 bytes from (source << 8) into OAM in one go. The cycles the real transfer takes are still
+     * accounted for: until they've gone by the CPU can only reach 0xFF00 - 0xFFFF, everything else reads 0xFF and
+     * ignores writes, as it does on the hardware (which is why games run the wait from HRAM).
+     */
+    private void startOamDma(int source) {
+        if (oamDmaActive) {
+            endOamDma();
+        }
+        if (ppu != null) {
+            ppu.invalidateSprites();
+        }
+        readRange((source & 0xFF) << 8, highMemory, 0, 0xA0);
+        pageVersions[0xFE]++;
+
+        oamDmaActive = true;
+        oamDmaEnd = getCycleCount() + OAM_DMA_CYCLES;
+        // everything below 0xFF00 goes the slow way until the transfer is over
+        Arrays.fill(readPages, 0, 0xFF, null);
+        Arrays.fill(writePages, 0, 0xFF, null);
+    }
+
+    private void endOamDma() {
+        oamDmaActive = false;
+        mapAllPages();
+    }
+
+    /**
+     * Whether an OAM DMA still has the bus, ending it if its cycles are up.
+     */
+    public boolean isOamDmaActive() {
+        if (oamDmaActive && getCycleCount() >= oamDmaEnd) {
+            endOamDma();
+        }
+        return oamDmaActive;
+    }
+
+    /**
+     * Copies length bytes starting at location into destination, a page at a time straight out of the backing
+     * buffers wherever the page table allows, and a byte at a time through readByteFromLocation anywhere else.
+     */
+    public void readRange(int location, byte[] destination, int offset, int length) {
+        while (length > 0) {
+            int page = location >> 8;
+            int chunk = Math.min(length, 0x100 - (location & 0xFF));
+            ByteBuffer backing = readPages[page];
+            if (backing != null) {
+                backing.get(readOffsets[page] + (location & 0xFF), destination, offset, chunk);
+            } else {
+                for (int i = 0; i < chunk; i++) {
+                    destination[offset + i] = (byte) readSlow(location + i);
+                }
+            }
+            location += chunk;
+            offset += chunk;
+            length -= chunk;
+        }
+    }
+
+    /**
+     * Writes length bytes from source starting at location, the same way round as readRange. Pages with side
+     * effects (bank control, IO, ...) see every byte as its own write.
+     */
+    public void writeRange(int location, byte[] source, int offset, int length) {
+        while (length > 0) {
+            int page = location >> 8;
+            int chunk = Math.min(length, 0x100 - (location & 0xFF));
+            ByteBuffer backing = writePages[page];
+            if (backing != null) {
+                writeCount++;
+                backing.put(writeOffsets[page] + (location & 0xFF), source, offset, chunk);
+                pageVersions[versionSlots[page]]++;
+            } else {
+                for (int i = 0; i < chunk; i++) {
+                    writeByteToLocation(source[offset + i] & 0xFF, location + i);
+                }
+            }
+            location += chunk;
+            offset += chunk;
+            length -= chunk;
         }
     }
 
@@ -146,18 +675,30 @@ public class Memory {
 
 
     public int readByteFromLocation(int location) {
-        // Reading from rom memory bank
-        if ((location >= 0x4000) && (location <= 0x7FFF)) {
-            int newAddress = location - 0x4000;
-            return cartMemory[newAddress + (currentRomBank * 0x4000)];
-
-            // ram memory bank
-        } else if ((location >= 0xA000) && (location <= 0xBFFF)) {
-            int newAddress = location - 0xA000;
-            return ramBanks[newAddress + (currentRamBank * 0x2000)];
+        int page = location >> 8;
+        ByteBuffer backing = readPages[page];
+        if (backing != null) {
+            return backing.get(readOffsets[page] + (location & 0xFF)) & 0xFF;
         }
+        return readSlow(location);
+    }
 
-        return this.generalMemory[location];
+    private int readSlow(int location) {
+        if (oamDmaActive && location < 0xFF00) {
+            if (isOamDmaActive()) {
+                return 0xFF;
+            }
+            return readByteFromLocation(location);
+        }
+        if (location >= 0xFF00) {
+            if (isPpuRegister(location)) {
+                return ppu.readRegister(location);
+            }
+            // IO registers, HRAM and IE
+            return highMemory[location - 0xFE00] & 0xFF;
+        }
+        // cartridge RAM that is disabled, missing or belongs to the controller
+        return bankController != null ? bankController.readRam(location) : 0xFF;
     }
 
     public int readWordFromLocation(int location) {
@@ -14,15 +14,19 @@ public class Register {
         setReg(reg);
     }
 
+    // for views that keep their value somewhere else and override getReg/setReg
+    protected Register() {
+    }
+
     public int getLo() {
-        return lowNibble(this.reg);
+        return lowNibble(getReg());
     }
 
     public void setLo(int lo) {
         setReg((getHi() << 8 | lo << 0));
     }
     public int getHi() {
-        return highNibble(this.reg);
+        return highNibble(getReg());
     }
     public void setHi(int hi) {
         setReg(((hi << 8) | getLo() << 0));
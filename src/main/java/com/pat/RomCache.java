@@ -0,0 +1,144 @@
+package com.pat;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Process wide cache of ROM images, keyed by a hash of their contents, so every Memory running the same game
+ * shares one read only image however it got the bytes. Images are reference counted: each acquire needs a release,
+ * and an image nobody holds any more is dropped.
+ * Files are only hashed the first time they're seen (or after they change), so loading a game that's already
+ * running is a stat and a map lookup.
+ */
+public final class RomCache {
+
+    private static final RomCache shared = new RomCache();
+
+    private static final class Entry {
+        final String hash;
+        final RomImage image;
+        int references;
+
+        Entry(String hash, RomImage image) {
+            this.hash = hash;
+            this.image = image;
+        }
+    }
+
+    // what a file hashed to, for as long as its size and modified time stay the same
+    private record FileStamp(long size, long modified, String hash) {
+    }
+
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final Map<RomImage, Entry> entriesByImage = new IdentityHashMap<>();
+    private final Map<Path, FileStamp> fileHashes = new HashMap<>();
+
+    private long hits;
+    private long misses;
+    private long bytesSaved;
+
+    /**
+     * The cache Memory uses.
+     */
+    public static RomCache shared() {
+        return shared;
+    }
+
+    /**
+     * The image for the file at path, shared with everything else holding the same bytes.
+     */
+    public synchronized RomImage acquire(Path path) throws IOException {
+        Path key = path.toRealPath();
+        BasicFileAttributes attributes = Files.readAttributes(key, BasicFileAttributes.class);
+        FileStamp stamp = fileHashes.get(key);
+        if (stamp != null && stamp.size() == attributes.size()
+                && stamp.modified() == attributes.lastModifiedTime().toMillis()) {
+            Entry entry = entries.get(stamp.hash());
+            if (entry != null) {
+                return hit(entry);
+            }
+        }
+
+        RomImage image = RomImage.map(key);
+        String hash = image.contentHash();
+        fileHashes.put(key, new FileStamp(attributes.size(), attributes.lastModifiedTime().toMillis(), hash));
+        return acquire(hash, image);
+    }
+
+    /**
+     * The image holding a copy of rom, shared with everything else holding the same bytes.
+     */
+    public synchronized RomImage acquire(byte[] rom) {
+        RomImage image = RomImage.copyOf(rom);
+        return acquire(image.contentHash(), image);
+    }
+
+    // image has just been made from the bytes that hash to hash, it's thrown away if they're already here
+    private RomImage acquire(String hash, RomImage image) {
+        Entry entry = entries.get(hash);
+        if (entry != null) {
+            return hit(entry);
+        }
+        misses++;
+        entry = new Entry(hash, image);
+        entry.references = 1;
+        entries.put(hash, entry);
+        entriesByImage.put(image, entry);
+        return image;
+    }
+
+    private RomImage hit(Entry entry) {
+        hits++;
+        bytesSaved += entry.image.size();
+        entry.references++;
+        return entry.image;
+    }
+
+    /**
+     * Gives back an image from acquire. Images that didn't come from this cache are ignored.
+     */
+    public synchronized void release(RomImage image) {
+        Entry entry = entriesByImage.get(image);
+        if (entry == null) {
+            return;
+        }
+        entry.references--;
+        if (entry.references == 0) {
+            entries.remove(entry.hash);
+            entriesByImage.remove(image);
+            fileHashes.values().removeIf(stamp -> stamp.hash().equals(entry.hash));
+        }
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * ROM bytes not loaded again because an identical image was already held.
+     */
+    public synchronized long getBytesSaved() {
+        return bytesSaved;
+    }
+
+    /**
+     * Distinct images currently held.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized int getReferenceCount(RomImage image) {
+        Entry entry = entriesByImage.get(image);
+        return entry == null ? 0 : entry.references;
+    }
+}
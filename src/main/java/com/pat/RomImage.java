@@ -0,0 +1,99 @@
+package com.pat;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * A cartridge ROM, read only, so one image can be handed to every Memory running the same game.
+ * ROMs loaded from a file are memory mapped and live outside the heap. Sharing is {@link RomCache}'s job.
+ */
+public final class RomImage {
+
+    private static final int BANK_SIZE = 0x4000;
+
+    private final ByteBuffer bytes;
+    private final int bankCount;
+
+    private RomImage(ByteBuffer bytes) {
+        this.bytes = bytes;
+        this.bankCount = bytes.capacity() / BANK_SIZE;
+    }
+
+    /**
+     * A new memory mapped image of the file at path. Go through RomCache to share it.
+     */
+    public static RomImage map(Path path) throws IOException {
+        return new RomImage(mapFile(path));
+    }
+
+    /**
+     * A new image holding a copy of rom, for ROMs built in code. Go through RomCache to share it.
+     */
+    public static RomImage copyOf(byte[] rom) {
+        byte[] padded = new byte[paddedSize(rom.length)];
+        System.arraycopy(rom, 0, padded, 0, rom.length);
+        return new RomImage(ByteBuffer.wrap(padded).asReadOnlyBuffer());
+    }
+
+    private static ByteBuffer mapFile(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("ROM too big to be a Game Boy cartridge: " + path);
+            }
+            if (size == paddedSize((int) size)) {
+                // the mapping stays valid after the channel is closed
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+
+            // not a whole number of banks, so copy it into a padded buffer rather than bounds check every read
+            ByteBuffer padded = ByteBuffer.allocate(paddedSize((int) size));
+            while (padded.position() < size && channel.read(padded) >= 0) {
+                // keep reading
+            }
+            return padded.clear().asReadOnlyBuffer();
+        }
+    }
+
+    // at least the 32kB the CPU can see without switching banks, and a whole number of banks
+    private static int paddedSize(int size) {
+        int banks = Math.max(2, (size + BANK_SIZE - 1) / BANK_SIZE);
+        return banks * BANK_SIZE;
+    }
+
+    public int read(int offset) {
+        return bytes.get(offset) & 0xFF;
+    }
+
+    // the backing buffer, for Memory to point its page table at
+    ByteBuffer buffer() {
+        return bytes;
+    }
+
+    public int size() {
+        return bytes.capacity();
+    }
+
+    public int getBankCount() {
+        return bankCount;
+    }
+
+    /**
+     * SHA-256 of the whole image, padding included, as hex.
+     */
+    public String contentHash() {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(bytes.duplicate().clear());
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Every JVM has SHA-256", e);
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package com.pat;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * An index of the .gb/.gbc files (loose or inside .zip files) under some directories, built from their headers alone.
+ * Files are read in parallel and only as far as the header, a ROM in a zip is inflated no further than that either.
+ * The index is kept in a small binary file, so scanning again only reads files whose size or modified time changed.
+ */
+public class RomLibrary {
+
+    private static final int INDEX_MAGIC = 0x4A42524C; // JBRL
+    private static final int INDEX_VERSION = 1;
+
+    /**
+     * One ROM. location is the file's path, with !/ and the entry name on the end for a ROM inside a zip.
+     */
+    public record Entry(String location, long size, long modified, CartridgeHeader header) {
+    }
+
+    private final Path indexFile;
+    // by file, a zip with several ROMs in it has one entry for each
+    private final Map<String, List<Entry>> entriesByFile = new ConcurrentHashMap<>();
+
+    private int lastScanParsed;
+    private int lastScanReused;
+
+    /**
+     * @param indexFile where the index is kept between runs, read now if it's already there
+     */
+    public RomLibrary(Path indexFile) throws IOException {
+        this.indexFile = indexFile;
+        if (Files.exists(indexFile)) {
+            readIndex();
+        }
+    }
+
+    /**
+     * Brings the index up to date with what's under directories now, and saves it.
+     */
+    public void scan(Path... directories) throws IOException {
+        List<Path> files = new ArrayList<>();
+        for (Path directory : directories) {
+            Files.walkFileTree(directory, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                    // a link's own attributes don't say what it points at
+                    if (isCandidate(file) && (attributes.isRegularFile() || Files.isRegularFile(file))) {
+                        files.add(file);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                // a subdirectory that can't be read is skipped, only a directory asked for that isn't there fails
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) throws IOException {
+                    if (file.equals(directory)) {
+                        throw e;
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        }
+
+        AtomicInteger parsed = new AtomicInteger();
+        AtomicInteger reused = new AtomicInteger();
+        Map<String, List<Entry>> scanned = new ConcurrentHashMap<>();
+        // one bad file mustn't cost the rest of the scan, so nothing in here throws
+        files.parallelStream().forEach(file -> {
+            String key = file.toAbsolutePath().normalize().toString();
+            BasicFileAttributes attributes;
+            try {
+                attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            } catch (IOException e) {
+                // deleted while we were looking, or we can't see it, there's nothing to index either way
+                return;
+            }
+            long modified = attributes.lastModifiedTime().toMillis();
+            List<Entry> known = entriesByFile.get(key);
+            if (known != null && known.get(0).size() == attributes.size() && known.get(0).modified() == modified) {
+                scanned.put(key, known);
+                reused.incrementAndGet();
+                return;
+            }
+            List<Entry> entries;
+            try {
+                entries = readEntries(file, key, attributes.size(), modified);
+            } catch (NoSuchFileException e) {
+                return;
+            } catch (IOException e) {
+                // unreadable, or a corrupt or truncated zip: remembered with no header, so it's only tried again
+                // once it changes
+                entries = List.of(new Entry(key, attributes.size(), modified, null));
+            }
+            scanned.put(key, entries);
+            parsed.incrementAndGet();
+        });
+
+        // anything not seen this time has gone
+        entriesByFile.clear();
+        entriesByFile.putAll(scanned);
+        lastScanParsed = parsed.get();
+        lastScanReused = reused.get();
+        writeIndex();
+    }
+
+    private static boolean isCandidate(Path file) {
+        String name = file.getFileName().toString();
+        return isRomName(name) || name.toLowerCase().endsWith(".zip");
+    }
+
+    private static boolean isRomName(String name) {
+        String lower = name.toLowerCase();
+        return lower.endsWith(".gb") || lower.endsWith(".gbc");
+    }
+
+    private static List<Entry> readEntries(Path file, String key, long size, long modified) throws IOException {
+        if (!file.getFileName().toString().toLowerCase().endsWith(".zip")) {
+            // one too short to be a ROM is remembered with no header, so it isn't read again next time
+            return List.of(new Entry(key, size, modified, readHeader(file)));
+        }
+
+        List<Entry> entries = new ArrayList<>();
+        try (ZipFile zip = new ZipFile(file.toFile())) {
+            Enumeration<? extends ZipEntry> zipEntries = zip.entries();
+            while (zipEntries.hasMoreElements()) {
+                ZipEntry zipEntry = zipEntries.nextElement();
+                if (zipEntry.isDirectory() || !isRomName(zipEntry.getName())) {
+                    continue;
+                }
+                // inflates only as far as the header
+                try (InputStream in = zip.getInputStream(zipEntry)) {
+                    byte[] header = in.readNBytes(CartridgeHeader.HEADER_END);
+                    if (header.length == CartridgeHeader.HEADER_END) {
+                        entries.add(new Entry(key + "!/" + zipEntry.getName(), size, modified, CartridgeHeader.parse(header)));
+                    }
+                }
+            }
+        }
+        // and so is a zip with no ROMs in it
+        return entries.isEmpty() ? List.of(new Entry(key, size, modified, null)) : entries;
+    }
+
+    // null when the file is too short to be a ROM
+    private static CartridgeHeader readHeader(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(CartridgeHeader.HEADER_END);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // keep reading
+            }
+            return header.hasRemaining() ? null : CartridgeHeader.parse(header.array());
+        }
+    }
+
+    /**
+     * Every ROM found, sorted by location.
+     */
+    public List<Entry> getEntries() {
+        return entriesByFile.values().stream()
+                .flatMap(Collection::stream)
+                .filter(entry -> entry.header() != null)
+                .sorted(Comparator.comparing(Entry::location))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Files whose headers were read by the last scan.
+     */
+    public int getLastScanParsed() {
+        return lastScanParsed;
+    }
+
+    /**
+     * Files the last scan found unchanged and took from the index.
+     */
+    public int getLastScanReused() {
+        return lastScanReused;
+    }
+
+    private void writeIndex() throws IOException {
+        Path temporary = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            List<List<Entry>> files = new ArrayList<>(entriesByFile.values());
+            out.writeInt(INDEX_MAGIC);
+            out.writeInt(INDEX_VERSION);
+            out.writeInt(files.stream().mapToInt(List::size).sum());
+            for (List<Entry> entries : files) {
+                for (Entry entry : entries) {
+                    writeEntry(out, entry);
+                }
+            }
+        }
+        Files.move(temporary, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeEntry(DataOutputStream out, Entry entry) throws IOException {
+        out.writeUTF(entry.location());
+        out.writeLong(entry.size());
+        out.writeLong(entry.modified());
+        CartridgeHeader header = entry.header();
+        out.writeBoolean(header != null);
+        if (header != null) {
+            out.writeUTF(header.title());
+            out.writeByte(header.cartridgeType());
+            out.writeByte(header.romSizeCode());
+            out.writeByte(header.ramSizeCode());
+            out.writeByte(header.cgbFlag());
+            out.writeByte(header.headerChecksum());
+            out.writeShort(header.globalChecksum());
+            out.writeBoolean(header.headerChecksumValid());
+        }
+    }
+
+    private void readIndex() throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile)))) {
+            if (in.readInt() != INDEX_MAGIC || in.readInt() != INDEX_VERSION) {
+                // not ours, or an older layout, start again from nothing
+                return;
+            }
+            int count = in.readInt();
+            Map<String, List<Entry>> read = new HashMap<>();
+            for (int i = 0; i < count; i++) {
+                Entry entry = readEntry(in);
+                String location = entry.location();
+                int inZip = location.indexOf("!/");
+                String file = inZip < 0 ? location : location.substring(0, inZip);
+                read.computeIfAbsent(file, f -> new ArrayList<>()).add(entry);
+            }
+            read.forEach((file, entries) -> entriesByFile.put(file, Collections.unmodifiableList(entries)));
+        }
+    }
+
+    private static Entry readEntry(DataInputStream in) throws IOException {
+        String location = in.readUTF();
+        long size = in.readLong();
+        long modified = in.readLong();
+        CartridgeHeader header = null;
+        if (in.readBoolean()) {
+            header = new CartridgeHeader(in.readUTF(), in.readUnsignedByte(), in.readUnsignedByte(),
+                    in.readUnsignedByte(), in.readUnsignedByte(), in.readUnsignedByte(), in.readUnsignedShort(),
+                    in.readBoolean());
+        }
+        return new Entry(location, size, modified, header);
+    }
+}
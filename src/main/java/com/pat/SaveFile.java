@@ -0,0 +1,178 @@
+package com.pat;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Battery backed cartridge RAM, living in a memory mapped .sav file.
+ * The layout is the plain RAM dump other emulators use: every bank in order. Cartridges with a clock follow it with
+ * the 48 byte trailer the same emulators write, see {@link com.pat.mbc.RealTimeClock#writeTrailer}. Anything else
+ * past the RAM is left alone.
+ * Writes land in the mapping straight away, so the OS has them even if the process dies. Which 256 byte pages
+ * have been written is tracked, and {@link #flush()} hands just those to a background thread to force to disk.
+ */
+public final class SaveFile {
+
+    private static final ExecutorService flusher = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "javaboy-save-flush");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Path path;
+    // the RAM and then the trailer, if there is one
+    private final MappedByteBuffer file;
+    private final ByteBuffer ram;
+    private final ByteBuffer trailer;
+    // whether the file already had a trailer, rather than it being grown into one just now
+    private final boolean trailerSaved;
+    // one bit per page written since the last flush, only touched on the emulation thread
+    private final long[] dirtyPages;
+    private boolean trailerDirty;
+    private boolean dirty;
+    private Future<?> lastFlush;
+
+    private SaveFile(Path path, MappedByteBuffer file, int ramSize, boolean trailerSaved) {
+        this.path = path;
+        this.file = file;
+        this.ram = file.slice(0, ramSize);
+        this.trailer = file.capacity() > ramSize ? file.slice(ramSize, file.capacity() - ramSize) : null;
+        this.trailerSaved = trailerSaved;
+        this.dirtyPages = new long[(ramSize / 0x100 + 63) / 64];
+    }
+
+    /**
+     * Maps the first size bytes of path, creating the file (or growing it) if it's smaller.
+     */
+    public static SaveFile open(Path path, int size) throws IOException {
+        return open(path, size, 0);
+    }
+
+    /**
+     * Maps ramSize bytes of RAM followed by a trailerSize byte trailer, creating or growing the file to fit. A
+     * shorter trailer already there is grown with zeros.
+     */
+    public static SaveFile open(Path path, int ramSize, int trailerSize) throws IOException {
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE)) {
+            boolean trailerSaved = trailerSize > 0 && channel.size() > ramSize;
+            // mapping past the end grows the file, new bytes read as 0
+            MappedByteBuffer file = channel.map(FileChannel.MapMode.READ_WRITE, 0, ramSize + trailerSize);
+            return new SaveFile(path, file, ramSize, trailerSaved);
+        }
+    }
+
+    /**
+     * The .sav next to a ROM, game.gb -> game.sav.
+     */
+    public static Path besideRom(Path rom) {
+        String name = rom.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return rom.resolveSibling((dot > 0 ? name.substring(0, dot) : name) + ".sav");
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public ByteBuffer getRam() {
+        return ram;
+    }
+
+    /**
+     * What follows the RAM, or null when it was opened without a trailer.
+     */
+    public ByteBuffer getTrailer() {
+        return trailer;
+    }
+
+    /**
+     * Whether the trailer was in the file before it was opened, a new one is all zeros.
+     */
+    public boolean hasSavedTrailer() {
+        return trailerSaved;
+    }
+
+    /**
+     * The trailer has been written and goes out with the next flush.
+     */
+    public void markTrailerDirty() {
+        trailerDirty = true;
+        dirty = true;
+    }
+
+    public void markDirty(int offset) {
+        int page = offset >> 8;
+        dirtyPages[page >> 6] |= 1L << page;
+        dirty = true;
+    }
+
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    /**
+     * Queues the pages written since last time to be forced to disk, and returns without waiting for it.
+     */
+    public void flush() {
+        if (!dirty) {
+            return;
+        }
+        long[] pages = dirtyPages.clone();
+        boolean withTrailer = trailerDirty;
+        Arrays.fill(dirtyPages, 0);
+        trailerDirty = false;
+        dirty = false;
+        lastFlush = flusher.submit(() -> force(pages, withTrailer));
+    }
+
+    // runs on the flush thread, one force per run of consecutive dirty pages
+    private void force(long[] pages, boolean withTrailer) {
+        if (withTrailer) {
+            file.force(ram.capacity(), trailer.capacity());
+        }
+        int pageCount = ram.capacity() / 0x100;
+        int page = 0;
+        while (page < pageCount) {
+            if ((pages[page >> 6] & 1L << page) == 0) {
+                page++;
+                continue;
+            }
+            int first = page;
+            while (page < pageCount && (pages[page >> 6] & 1L << page) != 0) {
+                page++;
+            }
+            file.force(first * 0x100, (page - first) * 0x100);
+        }
+    }
+
+    /**
+     * Waits for the last flush queued to finish, throwing whatever it ran into.
+     */
+    public void awaitFlush() throws IOException {
+        Future<?> flush = lastFlush;
+        if (flush == null) {
+            return;
+        }
+        try {
+            flush.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException io) {
+                throw io.getCause();
+            }
+            throw new IOException("Couldn't write " + path, e.getCause());
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.pat;
+
+import com.pat.instructions.OpcodeDecoder;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Ring buffer of the last executed instructions, for when the console printing used to be the only way to see
+ * what the CPU was up to. Each record is three longs written into one preallocated array, so recording never
+ * allocates, and nothing is formatted until {@link #dump(Writer)} is asked for.
+ */
+public class Tracer {
+
+    private static final int RECORD_LONGS = 3;
+
+    private final long[] records;
+    private final int mask;
+    private long recorded; // total ever recorded, the oldest ones have been overwritten
+
+    /**
+     * @param capacity records to keep, rounded up to a power of two
+     */
+    public Tracer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        records = new long[size * RECORD_LONGS];
+        mask = size - 1;
+    }
+
+    /**
+     * @param opcode the opcode byte, or 0xCB00 | the second byte for CB prefixed instructions
+     */
+    public void record(long cycle, int pc, int opcode, int af, int bc, int de, int hl, int sp) {
+        int base = (int) (recorded & mask) * RECORD_LONGS;
+        records[base] = cycle;
+        // SP and PC aren't always kept to 16 bits by the instructions, so mask everything into its slot
+        records[base + 1] = (long) (pc & 0xFFFF) << 48 | (long) (opcode & 0xFFFF) << 32 | (long) (af & 0xFFFF) << 16 | (bc & 0xFFFF);
+        records[base + 2] = (long) (de & 0xFFFF) << 32 | (long) (hl & 0xFFFF) << 16 | (sp & 0xFFFF);
+        recorded++;
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Records currently held, at most capacity.
+     */
+    public int size() {
+        return (int) Math.min(recorded, capacity());
+    }
+
+    public long getRecordedCount() {
+        return recorded;
+    }
+
+    public void clear() {
+        recorded = 0;
+    }
+
+    // i counts from the oldest record still held
+    private int base(int i) {
+        return (int) ((recorded - size() + i) & mask) * RECORD_LONGS;
+    }
+
+    public long getCycle(int i) {
+        return records[base(i)];
+    }
+
+    public int getPC(int i) {
+        return (int) (records[base(i) + 1] >>> 48);
+    }
+
+    public int getOpcode(int i) {
+        return (int) (records[base(i) + 1] >>> 32) & 0xFFFF;
+    }
+
+    /**
+     * Writes the held records oldest first, one line each.
+     */
+    public void dump(Writer writer) {
+        PrintWriter out = new PrintWriter(writer);
+        for (int i = 0; i < size(); i++) {
+            int base = base(i);
+            long first = records[base + 1];
+            long second = records[base + 2];
+            int opcode = (int) (first >>> 32) & 0xFFFF;
+            OpcodeDecoder.Opcode instruction = opcode > 0xFF
+                    ? OpcodeDecoder.OpcodeTable.CB_PREFIXED.decode(opcode)
+                    : OpcodeDecoder.OpcodeTable.PRIMARY.decode(opcode);
+
+            out.printf("%12d  PC:%04X  %-6s %-12s AF:%04X BC:%04X DE:%04X HL:%04X SP:%04X%n",
+                    records[base],
+                    first >>> 48,
+                    opcode > 0xFF ? String.format("CB %02X", opcode & 0xFF) : String.format("%02X", opcode),
+                    instruction.mnemonic,
+                    (first >>> 16) & 0xFFFF,
+                    first & 0xFFFF,
+                    (second >>> 32) & 0xFFFF,
+                    (second >>> 16) & 0xFFFF,
+                    second & 0xFFFF);
+        }
+        out.flush();
+    }
+
+    public void dump(Path path) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(path)) {
+            dump(writer);
+        }
+    }
+}
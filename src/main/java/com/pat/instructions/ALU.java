@@ -1,8 +1,152 @@
 package com.pat.instructions;
 
-public class ALU {
+import com.pat.Flags;
+
+/**
+ * Precomputed 8 bit arithmetic.
+ * Every entry holds the result in the low byte and the F register it leaves behind in the high byte,
+ * so an ADD/SUB/INC/DEC/DAA is a single array load instead of a handful of comparisons.
+ */
+public final class ALU {
+    public static final int FLAGS_SHIFT = 8;
+
+    private static final int Z = Flags.Flag.ZERO.mask();
+    private static final int N = Flags.Flag.SUBTRACT.mask();
+    private static final int H = Flags.Flag.HALF_CARRY.mask();
+    private static final int C = Flags.Flag.CARRY.mask();
+
     // 8bit ALU
-    // 16bit ALU
+    // ADD/ADC and SUB/SBC - pages 80-83, indexed by carry << 16 | a << 8 | b
+    private static final char[] ADD = new char[2 * 256 * 256];
+    private static final char[] SUB = new char[2 * 256 * 256];
+    // INC/DEC - pages 88-89, C is left alone so the flags only carry Z/N/H
+    private static final char[] INC = new char[256];
+    private static final char[] DEC = new char[256];
+    // DAA - page 95, indexed by C << 10 | H << 9 | N << 8 | a
+    private static final char[] DAA = new char[8 * 256];
+
+    static {
+        for (int carry = 0; carry < 2; carry++) {
+            for (int a = 0; a < 256; a++) {
+                for (int b = 0; b < 256; b++) {
+                    int index = carry << 16 | a << 8 | b;
+                    ADD[index] = (char) buildAdd(a, b, carry);
+                    SUB[index] = (char) buildSubtract(a, b, carry);
+                }
+            }
+        }
+        for (int a = 0; a < 256; a++) {
+            INC[a] = (char) buildIncrement(a);
+            DEC[a] = (char) buildDecrement(a);
+        }
+        for (int index = 0; index < DAA.length; index++) {
+            DAA[index] = (char) buildDecimalAdjust(index & 0xFF, (index & 0x100) != 0, (index & 0x200) != 0, (index & 0x400) != 0);
+        }
+    }
+
+    private ALU() {
+    }
+
+    public static int add(int a, int b, boolean carry) {
+        return ADD[(carry ? 1 << 16 : 0) | a << 8 | b];
+    }
+
+    public static int subtract(int a, int b, boolean carry) {
+        return SUB[(carry ? 1 << 16 : 0) | a << 8 | b];
+    }
+
+    public static int increment(int a) {
+        return INC[a];
+    }
+
+    public static int decrement(int a) {
+        return DEC[a];
+    }
+
+    public static int decimalAdjust(int a, boolean subtract, boolean halfCarry, boolean carry) {
+        return DAA[(carry ? 0x400 : 0) | (halfCarry ? 0x200 : 0) | (subtract ? 0x100 : 0) | a];
+    }
+
+    /**
+     * Table builders
+     */
+
+    private static int buildAdd(int a, int b, int carry) {
+        int sum = a + b + carry;
+        int result = sum & 0xFF;
+        int f = 0;
+        if (result == 0) {
+            f |= Z;
+        }
+        if (((a ^ b ^ sum) & 0x10) != 0) {
+            f |= H;
+        }
+        if (sum > 0xFF) {
+            f |= C;
+        }
+        return f << FLAGS_SHIFT | result;
+    }
+
+    private static int buildSubtract(int a, int b, int carry) {
+        int difference = a - b - carry;
+        int result = difference & 0xFF;
+        int f = N;
+        if (result == 0) {
+            f |= Z;
+        }
+        if (((a ^ b ^ difference) & 0x10) != 0) {
+            f |= H;
+        }
+        if (difference < 0) {
+            f |= C;
+        }
+        return f << FLAGS_SHIFT | result;
+    }
+
+    private static int buildIncrement(int a) {
+        int result = (a + 1) & 0xFF;
+        int f = 0;
+        if (result == 0) {
+            f |= Z;
+        }
+        if ((result & 0x0F) == 0) {
+            f |= H;
+        }
+        return f << FLAGS_SHIFT | result;
+    }
+
+    private static int buildDecrement(int a) {
+        int result = (a - 1) & 0xFF;
+        int f = N;
+        if (result == 0) {
+            f |= Z;
+        }
+        if ((result & 0x0F) == 0x0F) {
+            f |= H;
+        }
+        return f << FLAGS_SHIFT | result;
+    }
 
+    private static int buildDecimalAdjust(int a, boolean subtract, boolean halfCarry, boolean carry) {
+        int correction = 0;
+        if (halfCarry || (!subtract && (a & 0x0F) > 0x09)) {
+            correction |= 0x06;
+        }
+        if (carry || (!subtract && a > 0x99)) {
+            correction |= 0x60;
+        }
 
+        int result = (subtract ? a - correction : a + correction) & 0xFF;
+        int f = 0;
+        if (result == 0) {
+            f |= Z;
+        }
+        if (subtract) {
+            f |= N;
+        }
+        if ((correction & 0x60) != 0) {
+            f |= C;
+        }
+        return f << FLAGS_SHIFT | result;
+    }
 }
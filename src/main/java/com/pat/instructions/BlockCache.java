@@ -0,0 +1,223 @@
+package com.pat.instructions;
+
+import com.pat.Memory;
+import com.pat.jit.CompiledBlock;
+
+import java.util.Arrays;
+
+/**
+ * Basic blocks decoded ahead of time, keyed by (ROM bank, PC).
+ * A block runs up to and including the first instruction that can change control flow, with every operand already read.
+ * Blocks remember the write version of the pages they were decoded from, so a write over their code
+ * (a DMA routine copied into HRAM, code in WRAM, ...) makes them stale and they get decoded again.
+ * A block whose code really did change when it was decoded again is left to the interpreter from then on, the JIT never compiles it.
+ */
+public class BlockCache {
+
+    // 3 bytes at most per instruction, so a block always fits in its own page plus the start of the next one
+    private static final int MAX_BLOCK_INSTRUCTIONS = 64;
+    private static final int MAX_ROM_BANKS = 0x200;
+
+    public static final class BasicBlock {
+        public final int startAddress;
+        public final int length;
+        public final OpcodeDecoder.Opcode[] instructions;
+        public final int[] operands;
+        // nothing in the block writes memory or touches SP, interrupts or the stack, see isSideEffectFree
+        public final boolean sideEffectFree;
+
+        private final int firstPage;
+        private final int lastPage;
+        private final int firstPageVersion;
+        private final int lastPageVersion;
+
+        // JIT bookkeeping, see CPU.executeBlock
+        private int executions;
+        private CompiledBlock compiled;
+        private boolean compilable = true;
+
+        BasicBlock(int startAddress, int length, OpcodeDecoder.Opcode[] instructions, int[] operands,
+                   int firstPage, int lastPage, Memory memory) {
+            this.startAddress = startAddress;
+            this.length = length;
+            this.instructions = instructions;
+            this.operands = operands;
+            this.sideEffectFree = Arrays.stream(instructions).allMatch(BlockCache::isSideEffectFree);
+            this.firstPage = firstPage;
+            this.lastPage = lastPage;
+            this.firstPageVersion = memory.getPageVersion(firstPage);
+            this.lastPageVersion = memory.getPageVersion(lastPage);
+        }
+
+        public boolean isValid(Memory memory) {
+            return memory.getPageVersion(firstPage) == firstPageVersion && memory.getPageVersion(lastPage) == lastPageVersion;
+        }
+
+        public int countExecution() {
+            return ++executions;
+        }
+
+        public CompiledBlock getCompiled() {
+            return compiled;
+        }
+
+        public void setCompiled(CompiledBlock compiled) {
+            this.compiled = compiled;
+        }
+
+        public boolean isCompilable() {
+            return compilable;
+        }
+
+        public void disableCompilation() {
+            compilable = false;
+            compiled = null;
+        }
+
+        private boolean hasSameCode(BasicBlock other) {
+            return Arrays.equals(instructions, other.instructions) && Arrays.equals(operands, other.operands);
+        }
+
+        // a stale block decoded again, only a write that left the code alone keeps the compiled version
+        private void replaces(BasicBlock stale) {
+            if (!hasSameCode(stale)) {
+                disableCompilation();
+                return;
+            }
+            executions = stale.executions;
+            compiled = stale.compiled;
+            compilable = stale.compilable;
+        }
+    }
+
+    private final Memory memory;
+    // everything outside 0x4000 - 0x7FFF, which doesn't move when the bank changes
+    private final BasicBlock[] fixedBlocks = new BasicBlock[0x10000];
+    // switchable ROM, one 0x4000 array per bank that has been run
+    private final BasicBlock[][] bankedBlocks = new BasicBlock[MAX_ROM_BANKS][];
+
+    public BlockCache(Memory memory) {
+        this.memory = memory;
+    }
+
+    /**
+     * The block starting at address, decoding it first if it isn't cached or has gone stale.
+     * Returns null when nothing sensible can be cached there, in which case the caller should just single step.
+     */
+    public BasicBlock lookup(int address) {
+        BasicBlock[] blocks;
+        int index;
+        if (address >= 0x4000 && address < 0x8000) {
+            int bank = memory.getCurrentRomBank() & (MAX_ROM_BANKS - 1);
+            blocks = bankedBlocks[bank];
+            if (blocks == null) {
+                blocks = new BasicBlock[0x4000];
+                bankedBlocks[bank] = blocks;
+            }
+            index = address - 0x4000;
+        } else {
+            blocks = fixedBlocks;
+            index = address;
+        }
+
+        BasicBlock block = blocks[index];
+        if (block == null || !block.isValid(memory)) {
+            if (memory.isOamDmaActive()) {
+                // anything outside HRAM reads 0xFF until the DMA is done, nothing decoded now is worth keeping
+                return null;
+            }
+            BasicBlock stale = block;
+            block = decode(address);
+            if (block != null && stale != null) {
+                block.replaces(stale);
+            }
+            blocks[index] = block;
+        }
+        return block;
+    }
+
+    public void clear() {
+        Arrays.fill(fixedBlocks, null);
+        Arrays.fill(bankedBlocks, null);
+    }
+
+    private BasicBlock decode(int startAddress) {
+        OpcodeDecoder.Opcode[] instructions = new OpcodeDecoder.Opcode[MAX_BLOCK_INSTRUCTIONS];
+        int[] operands = new int[MAX_BLOCK_INSTRUCTIONS];
+        int firstPage = startAddress >> 8;
+        // blocks don't cross between bank 0, the switchable bank and the rest of memory
+        int region = regionOf(startAddress);
+
+        int address = startAddress;
+        int length = 0;
+        while (length < MAX_BLOCK_INSTRUCTIONS && address >> 8 == firstPage) {
+            int opcode = memory.readByteFromLocation(address);
+            OpcodeDecoder.Opcode instruction = opcode == 0xCB
+                    ? OpcodeDecoder.OpcodeTable.CB_PREFIXED.decode(memory.readByteFromLocation(address + 1))
+                    : OpcodeDecoder.OpcodeTable.PRIMARY.decode(opcode);
+
+            int end = address + instruction.length - 1;
+            if (end > 0xFFFF || regionOf(end) != region) {
+                break;
+            }
+
+            instructions[length] = instruction;
+            operands[length] = switch (instruction.operandLength) {
+                case 1 -> memory.readByteFromLocation(address + 1);
+                case 2 -> memory.readWordFromLocation(address + 1);
+                default -> 0;
+            };
+            length++;
+            address = end + 1;
+
+            if (instruction.endsBlock) {
+                break;
+            }
+        }
+
+        if (length == 0) {
+            return null;
+        }
+
+        return new BasicBlock(startAddress, length, Arrays.copyOf(instructions, length), Arrays.copyOf(operands, length),
+                firstPage, (address - 1) >> 8, memory);
+    }
+
+    /**
+     * True for instructions whose only effects are on registers and flags: loads from memory, ALU ops, bit tests,
+     * and the jumps a polling loop uses to go round again. No stores, stack, SP, interrupt or halt instructions.
+     */
+    static boolean isSideEffectFree(OpcodeDecoder.Opcode instruction) {
+        int c = instruction.code;
+        int target = (c >> 3) & 0x07;
+        if (OpcodeDecoder.OpcodeTable.PRIMARY.decode(c) != instruction) {
+            // CB prefixed: BIT only reads, the rest only count when they don't write back to (HL)
+            return (c >= 0x40 && c < 0x80) || (c & 0x07) != 0x06;
+        }
+        if (c >= 0x40 && c < 0x80) {
+            return c < 0x70 || c > 0x77; // LD r,r' but not LD (HL),r or HALT
+        }
+        if (c >= 0x80 && c < 0xC0) {
+            return true; // ALU ops, (HL) is only read
+        }
+        if ((c & 0xC7) == 0x04 || (c & 0xC7) == 0x05 || (c & 0xC7) == 0x06) {
+            return target != 0x06; // INC r, DEC r, LD r,n
+        }
+        return switch (c) {
+            case 0x00, // NOP
+                 0x01, 0x11, 0x21, 0x03, 0x13, 0x23, 0x0B, 0x1B, 0x2B, // LD rr,nn, INC rr, DEC rr
+                 0x0A, 0x1A, 0x2A, 0x3A, 0xF0, 0xF2, 0xFA, // loads into A
+                 0xC6, 0xCE, 0xD6, 0xE6, 0xEE, 0xF6, 0xFE, // ALU on an immediate
+                 0x07, 0x0F, 0x17, 0x1F, 0x27, 0x2F, 0x37, 0x3F, // rotates on A, DAA, CPL, SCF, CCF
+                 0xC3, 0x18, 0xC2, 0xCA, 0xD2, 0xDA, 0x20, 0x28, 0x30, 0x38 -> true; // JP, JR, JP cc, JR cc
+            default -> false;
+        };
+    }
+
+    private static int regionOf(int address) {
+        if (address < 0x4000) {
+            return 0;
+        }
+        return address < 0x8000 ? 1 : 2;
+    }
+}
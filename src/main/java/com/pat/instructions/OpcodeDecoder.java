@@ -1,8 +1,412 @@
 package com.pat.instructions;
 
+import com.pat.CPU;
+import com.pat.Flags;
+
+/**
+ * Static decode tables for the primary and 0xCB prefixed opcodes.
+ * Each entry knows its length, its cycle count and the handler that executes it, so the CPU
+ * only has to fetch, index and invoke instead of walking one giant switch.
+ */
 public class OpcodeDecoder {
 
+    /**
+     * Executes a single decoded instruction.
+     * The operand is the immediate byte or word following the opcode (0 when the instruction has none).
+     */
+    @FunctionalInterface
+    public interface Handler {
+        void execute(CPU cpu, int operand);
+    }
+
+    public static final class Opcode {
+        public final int code;
+        public final String mnemonic;
+        // number of immediate bytes following the opcode (0, 1 or 2)
+        public final int operandLength;
+        // total bytes including the opcode, and the 0xCB prefix for the CB table
+        public final int length;
+        // cycles when no branch is taken
+        public final int cycles;
+        // cycles when the handler branches (same as cycles for anything that can't branch)
+        public final int branchCycles;
+        public final Handler handler;
+        // jumps, calls, returns and anything touching interrupts or halting end a basic block
+        public final boolean endsBlock;
+
+        Opcode(int code, String mnemonic, int operandLength, int length, int cycles, int branchCycles, Handler handler, boolean endsBlock) {
+            this.code = code;
+            this.mnemonic = mnemonic;
+            this.operandLength = operandLength;
+            this.length = length;
+            this.cycles = cycles;
+            this.branchCycles = branchCycles;
+            this.handler = handler;
+            this.endsBlock = endsBlock;
+        }
+    }
+
     public enum OpcodeTable {
+        PRIMARY(buildPrimaryTable()),
+        CB_PREFIXED(buildCbTable());
+
+        private final Opcode[] entries;
+
+        OpcodeTable(Opcode[] entries) {
+            this.entries = entries;
+        }
+
+        public Opcode decode(int opcode) {
+            return entries[opcode & 0xFF];
+        }
+    }
+
+    // register operand names in opcode encoding order, see CPU.B .. CPU.A
+    private static final String[] REGISTER_NAMES = {"B", "C", "D", "E", "H", "L", "(HL)", "A"};
+
+    private static final String[] ALU_NAMES = {"ADD A,", "ADC A,", "SUB ", "SBC A,", "AND ", "XOR ", "OR ", "CP "};
+
+    private static Opcode op(int code, String mnemonic, int operandLength, int cycles, Handler handler) {
+        return new Opcode(code, mnemonic, operandLength, 1 + operandLength, cycles, cycles, handler, false);
+    }
+
+    // doesn't branch but still has to be the last instruction of a block
+    private static Opcode control(int code, String mnemonic, int operandLength, int cycles, Handler handler) {
+        return new Opcode(code, mnemonic, operandLength, 1 + operandLength, cycles, cycles, handler, true);
+    }
+
+    private static Opcode branch(int code, String mnemonic, int operandLength, int cycles, int branchCycles, Handler handler) {
+        return new Opcode(code, mnemonic, operandLength, 1 + operandLength, cycles, branchCycles, handler, true);
+    }
+
+    private static Opcode missing(int code, int operandLength) {
+        return new Opcode(code, "???", operandLength, 1 + operandLength, 0, 0,
+                (cpu, n) -> cpu.countUnimplementedOpcode(), true);
+    }
+
+    private static boolean zero(CPU cpu) {
+        return cpu.getFlags().isSet(Flags.Flag.ZERO);
+    }
+
+    private static boolean carry(CPU cpu) {
+        return cpu.getFlags().isSet(Flags.Flag.CARRY);
+    }
+
+    private static Opcode[] buildPrimaryTable() {
+        Opcode[] t = new Opcode[256];
+
+        // The regular blocks are laid out by the 3 bit register encoding, so build those straight from the opcode bits.
+        for (int index = 0; index < 8; index++) {
+            final int r = index;
+            String name = REGISTER_NAMES[r];
+            boolean indirect = r == CPU.HL_INDIRECT;
+
+            // LD r,n - page 65
+            int code = 0x06 | r << 3;
+            t[code] = op(code, "LD " + name + ",n", 1, indirect ? 12 : 8, (cpu, n) -> cpu.writeRegister(r, n));
+
+            // INC n - page 88
+            code = 0x04 | r << 3;
+            t[code] = op(code, "INC " + name, 0, indirect ? 12 : 4, (cpu, n) -> cpu.incRegister(r));
+
+            // DEC n - page 89
+            code = 0x05 | r << 3;
+            t[code] = op(code, "DEC " + name, 0, indirect ? 12 : 4, (cpu, n) -> cpu.decRegister(r));
+
+            // LD r1,r2 - page 66. 0x76 would be LD (HL),(HL), which is HALT instead
+            for (int source = 0; source < 8; source++) {
+                final int s = source;
+                code = 0x40 | r << 3 | s;
+                if (code == 0x76) {
+                    continue;
+                }
+                int cycles = indirect || s == CPU.HL_INDIRECT ? 8 : 4;
+                t[code] = op(code, "LD " + name + "," + REGISTER_NAMES[s], 0, cycles, (cpu, n) -> cpu.writeRegister(r, cpu.readRegister(s)));
+            }
+
+            // 8bit ALU - pages 80-87
+            int cycles = indirect ? 8 : 4;
+            t[0x80 | r] = op(0x80 | r, ALU_NAMES[0] + name, 0, cycles, (cpu, n) -> cpu.addIntoA(cpu.readRegister(r)));
+            t[0x88 | r] = op(0x88 | r, ALU_NAMES[1] + name, 0, cycles, (cpu, n) -> cpu.addWithCarryIntoA(cpu.readRegister(r)));
+            t[0x90 | r] = op(0x90 | r, ALU_NAMES[2] + name, 0, cycles, (cpu, n) -> cpu.subtractFromA(cpu.readRegister(r)));
+            t[0x98 | r] = op(0x98 | r, ALU_NAMES[3] + name, 0, cycles, (cpu, n) -> cpu.subtractWithCarryFromA(cpu.readRegister(r)));
+            t[0xA0 | r] = op(0xA0 | r, ALU_NAMES[4] + name, 0, cycles, (cpu, n) -> cpu.andIntoA(cpu.readRegister(r)));
+            t[0xA8 | r] = op(0xA8 | r, ALU_NAMES[5] + name, 0, cycles, (cpu, n) -> cpu.xorIntoA(cpu.readRegister(r)));
+            t[0xB0 | r] = op(0xB0 | r, ALU_NAMES[6] + name, 0, cycles, (cpu, n) -> cpu.orIntoA(cpu.readRegister(r)));
+            t[0xB8 | r] = op(0xB8 | r, ALU_NAMES[7] + name, 0, cycles, (cpu, n) -> cpu.cpToA(cpu.readRegister(r)));
+        }
+
+        // 8 bit immediate ALU - pages 80-87
+        t[0xC6] = op(0xC6, "ADD A,n", 1, 8, (cpu, n) -> cpu.addIntoA(n));
+        t[0xCE] = op(0xCE, "ADC A,n", 1, 8, (cpu, n) -> cpu.addWithCarryIntoA(n));
+        t[0xD6] = op(0xD6, "SUB n", 1, 8, (cpu, n) -> cpu.subtractFromA(n));
+        t[0xDE] = op(0xDE, "SBC A,n", 1, 8, (cpu, n) -> cpu.subtractWithCarryFromA(n));
+        t[0xE6] = op(0xE6, "AND n", 1, 8, (cpu, n) -> cpu.andIntoA(n));
+        t[0xEE] = op(0xEE, "XOR n", 1, 8, (cpu, n) -> cpu.xorIntoA(n));
+        t[0xF6] = op(0xF6, "OR n", 1, 8, (cpu, n) -> cpu.orIntoA(n));
+        t[0xFE] = op(0xFE, "CP n", 1, 8, (cpu, n) -> cpu.cpToA(n));
+
+        // LD A,n - page 68
+        t[0x0A] = op(0x0A, "LD A,(BC)", 0, 8, (cpu, n) -> cpu.writeRegister(CPU.A, cpu.getMemory().readByteFromLocation(cpu.getBC())));
+        t[0x1A] = op(0x1A, "LD A,(DE)", 0, 8, (cpu, n) -> cpu.writeRegister(CPU.A, cpu.getMemory().readByteFromLocation(cpu.getDE())));
+        t[0xFA] = op(0xFA, "LD A,(nn)", 2, 8, (cpu, n) -> cpu.writeRegister(CPU.A, n));
+        // LD n,A - page 69
+        t[0x02] = op(0x02, "LD (BC),A", 0, 8, (cpu, n) -> cpu.getMemory().writeByteToLocation(cpu.readRegister(CPU.A), cpu.getBC()));
+        t[0x12] = op(0x12, "LD (DE),A", 0, 8, (cpu, n) -> cpu.getMemory().writeByteToLocation(cpu.readRegister(CPU.A), cpu.getDE()));
+        t[0xEA] = op(0xEA, "LD (nn),A", 2, 12, (cpu, n) -> cpu.setAF(n));
+
+        // LD A,(C) - page 70
+        t[0xF2] = op(0xF2, "LD A,(C)", 0, 8, (cpu, n) -> cpu.writeRegister(CPU.A, cpu.getMemory().readByteFromLocation(0xFF00 + cpu.readRegister(CPU.C))));
+        // LD (C),A - page 70
+        t[0xE2] = op(0xE2, "LD (C),A", 0, 8, (cpu, n) -> LSM.loadValueIntoLocation(cpu.readRegister(CPU.A), 0xFF00 + cpu.readRegister(CPU.C), cpu.getMemory()));
+
+        // LDD A,(HL) - page 71
+        t[0x3A] = op(0x3A, "LD A,(HL-)", 0, 8, (cpu, n) -> {
+            cpu.writeRegister(CPU.A, cpu.readRegister(CPU.HL_INDIRECT));
+            cpu.setHL(cpu.getHL() - 1);
+        });
+        // LDD (HL),A - page 72
+        t[0x32] = op(0x32, "LD (HL-),A", 0, 8, (cpu, n) -> {
+            cpu.writeRegister(CPU.HL_INDIRECT, cpu.readRegister(CPU.A));
+            cpu.setHL(cpu.getHL() - 1);
+        });
+        // LDI A,(HL) - page 73
+        t[0x2A] = op(0x2A, "LD A,(HL+)", 0, 8, (cpu, n) -> {
+            cpu.writeRegister(CPU.A, cpu.readRegister(CPU.HL_INDIRECT));
+            cpu.setHL(cpu.getHL() + 1);
+        });
+        // LDI (HL),A - page 74
+        t[0x22] = op(0x22, "LD (HL+),A", 0, 8, (cpu, n) -> {
+            cpu.writeRegister(CPU.HL_INDIRECT, cpu.readRegister(CPU.A));
+            cpu.setHL(cpu.getHL() + 1);
+        });
+
+        // LDH (n),A / LDH A,(n) - page 75
+        t[0xE0] = op(0xE0, "LDH (n),A", 1, 12, (cpu, n) -> LSM.loadValueIntoLocation(cpu.readRegister(CPU.A), 0xFF00 + n, cpu.getMemory()));
+        t[0xF0] = op(0xF0, "LDH A,(n)", 1, 12, (cpu, n) -> cpu.writeRegister(CPU.A, 0xFF00 + n));
+
+        // 16 bit loads
+        // LD n,nn - page 76
+        t[0x01] = op(0x01, "LD BC,nn", 2, 12, (cpu, n) -> cpu.setBC(n));
+        t[0x11] = op(0x11, "LD DE,nn", 2, 12, (cpu, n) -> cpu.setDE(n));
+        t[0x21] = op(0x21, "LD HL,nn", 2, 12, (cpu, n) -> cpu.setHL(n));
+        t[0x31] = op(0x31, "LD SP,nn", 2, 12, (cpu, n) -> cpu.setSP(n));
+        // LD SP,HL - page 76
+        t[0xF9] = op(0xF9, "LD SP,HL", 0, 8, (cpu, n) -> cpu.setSP(cpu.getHL()));
+        // LDHL SP,n - page 77
+        t[0xF8] = op(0xF8, "LDHL SP,n", 1, 12, (cpu, n) -> cpu.loadStackOffsetIntoHL(n));
+        // LD (nn),SP - page 78
+        t[0x08] = op(0x08, "LD (nn),SP", 2, 20, (cpu, n) -> LSM.loadValueIntoLocation(cpu.getSP(), n, cpu.getMemory()));
+
+        // PUSH nn - page 78
+        t[0xF5] = op(0xF5, "PUSH AF", 0, 16, (cpu, n) -> cpu.push(cpu.getAF()));
+        t[0xC5] = op(0xC5, "PUSH BC", 0, 16, (cpu, n) -> cpu.push(cpu.getBC()));
+        t[0xD5] = op(0xD5, "PUSH DE", 0, 16, (cpu, n) -> cpu.push(cpu.getDE()));
+        t[0xE5] = op(0xE5, "PUSH HL", 0, 16, (cpu, n) -> cpu.push(cpu.getHL()));
+
+        // POP nn - page 79
+        t[0xF1] = op(0xF1, "POP AF", 0, 12, (cpu, n) -> cpu.setAF(cpu.popWord()));
+        t[0xC1] = op(0xC1, "POP BC", 0, 12, (cpu, n) -> cpu.setBC(cpu.popWord()));
+        t[0xD1] = op(0xD1, "POP DE", 0, 12, (cpu, n) -> cpu.setDE(cpu.popWord()));
+        t[0xE1] = op(0xE1, "POP HL", 0, 12, (cpu, n) -> cpu.setHL(cpu.popWord()));
+
+        // 16 bit arithmetic
+        // ADD HL,n - page 90
+        t[0x09] = op(0x09, "ADD HL,BC", 0, 8, (cpu, n) -> cpu.addIntoHL(cpu.getBC()));
+        t[0x19] = op(0x19, "ADD HL,DE", 0, 8, (cpu, n) -> cpu.addIntoHL(cpu.getDE()));
+        t[0x29] = op(0x29, "ADD HL,HL", 0, 8, (cpu, n) -> cpu.addIntoHL(cpu.getHL()));
+        t[0x39] = op(0x39, "ADD HL,SP", 0, 8, (cpu, n) -> cpu.addIntoHL(cpu.getSP()));
+        // ADD SP,n - page 91
+        t[0xE8] = op(0xE8, "ADD SP,n", 1, 16, (cpu, n) -> cpu.addIntoSP(n));
+
+        // INC nn - page 92
+        t[0x03] = op(0x03, "INC BC", 0, 8, (cpu, n) -> cpu.setBC(cpu.getBC() + 1));
+        t[0x13] = op(0x13, "INC DE", 0, 8, (cpu, n) -> cpu.setDE(cpu.getDE() + 1));
+        t[0x23] = op(0x23, "INC HL", 0, 8, (cpu, n) -> cpu.setHL(cpu.getHL() + 1));
+        t[0x33] = op(0x33, "INC SP", 0, 8, (cpu, n) -> cpu.setSP(cpu.getSP() + 1));
+
+        // DEC nn - page 93
+        t[0x0B] = op(0x0B, "DEC BC", 0, 8, (cpu, n) -> cpu.setBC(cpu.getBC() - 1));
+        t[0x1B] = op(0x1B, "DEC DE", 0, 8, (cpu, n) -> cpu.setDE(cpu.getDE() - 1));
+        t[0x2B] = op(0x2B, "DEC HL", 0, 8, (cpu, n) -> cpu.setHL(cpu.getHL() - 1));
+        t[0x3B] = op(0x3B, "DEC SP", 0, 8, (cpu, n) -> cpu.setSP(cpu.getSP() - 1));
+
+        // Misc
+        // DAA - page 95
+        t[0x27] = op(0x27, "DAA", 0, 4, (cpu, n) -> cpu.decimalAdjustA());
+        // CPL - page 95
+        t[0x2F] = op(0x2F, "CPL", 0, 4, (cpu, n) -> cpu.writeRegister(CPU.A, cpu.readRegister(CPU.A) ^ 0xFF));
+        // CCF - page 96
+        t[0x3F] = op(0x3F, "CCF", 0, 4, (cpu, n) -> {
+            cpu.getFlags().set(Flags.Flag.CARRY, !carry(cpu));
+            cpu.getFlags().set(Flags.Flag.SUBTRACT, false);
+            cpu.getFlags().set(Flags.Flag.HALF_CARRY, false);
+        });
+        // SCF - page 96
+        t[0x37] = op(0x37, "SCF", 0, 4, (cpu, n) -> {
+            cpu.getFlags().set(Flags.Flag.CARRY, true);
+            cpu.getFlags().set(Flags.Flag.SUBTRACT, false);
+            cpu.getFlags().set(Flags.Flag.HALF_CARRY, false);
+        });
+        // NOP / HALT / STOP - page 97
+        t[0x00] = op(0x00, "NOP", 0, 4, (cpu, n) -> { });
+        t[0x76] = control(0x76, "HALT", 0, 4, (cpu, n) -> { });
+        t[0x10] = control(0x10, "STOP", 1, 4, (cpu, n) -> {
+            if (n != 0x00) {
+                cpu.countUnimplementedOpcode();
+            }
+        });
+        // DI / EI - page 98
+        t[0xF3] = control(0xF3, "DI", 0, 4, (cpu, n) -> cpu.setInterruptsEnabled(false));
+        t[0xFB] = control(0xFB, "EI", 0, 4, (cpu, n) -> cpu.setInterruptsEnabled(true));
+
+        // Rotates
+        // RLCA / RLA - page 99
+        t[0x07] = op(0x07, "RLCA", 0, 4, (cpu, n) -> cpu.rotate(CPU.RotateDirection.LEFT, CPU.A, true));
+        t[0x17] = op(0x17, "RLA", 0, 4, (cpu, n) -> cpu.rotate(CPU.RotateDirection.LEFT, CPU.A, false));
+        // RRCA / RRA - page 100
+        t[0x0F] = op(0x0F, "RRCA", 0, 4, (cpu, n) -> cpu.rotate(CPU.RotateDirection.RIGHT, CPU.A, true));
+        t[0x1F] = op(0x1F, "RRA", 0, 4, (cpu, n) -> cpu.rotate(CPU.RotateDirection.RIGHT, CPU.A, false));
+
+        // Jumps
+        // JP nn - page 111
+        t[0xC3] = branch(0xC3, "JP nn", 2, 12, 12, (cpu, n) -> cpu.jump(n));
+        // JP cc,nn - page 111
+        t[0xC2] = branch(0xC2, "JP NZ,nn", 2, 12, 12, (cpu, n) -> { if (!zero(cpu)) cpu.jump(n); });
+        t[0xCA] = branch(0xCA, "JP Z,nn", 2, 12, 12, (cpu, n) -> { if (zero(cpu)) cpu.jump(n); });
+        t[0xD2] = branch(0xD2, "JP NC,nn", 2, 12, 12, (cpu, n) -> { if (!carry(cpu)) cpu.jump(n); });
+        t[0xDA] = branch(0xDA, "JP C,nn", 2, 12, 12, (cpu, n) -> { if (carry(cpu)) cpu.jump(n); });
+        // JP (HL) - page 112
+        t[0xE9] = branch(0xE9, "JP (HL)", 0, 4, 4, (cpu, n) -> cpu.jump(cpu.getHL()));
+        // JR n - page 112
+        t[0x18] = branch(0x18, "JR n", 1, 8, 8, (cpu, n) -> cpu.jump(cpu.getPC() + n));
+        // JR cc,n - page 113
+        t[0x20] = branch(0x20, "JR NZ,n", 1, 8, 8, (cpu, n) -> { if (!zero(cpu)) cpu.jump(n); });
+        t[0x28] = branch(0x28, "JR Z,n", 1, 8, 8, (cpu, n) -> { if (zero(cpu)) cpu.jump(n); });
+        t[0x30] = branch(0x30, "JR NC,n", 1, 8, 8, (cpu, n) -> { if (!carry(cpu)) cpu.jump(n); });
+        t[0x38] = branch(0x38, "JR C,n", 1, 8, 8, (cpu, n) -> { if (carry(cpu)) cpu.jump(n); });
+
+        // Calls
+        // CALL nn - page 114
+        t[0xCD] = branch(0xCD, "CALL nn", 2, 12, 12, (cpu, n) -> cpu.call(n));
+        // CALL cc,nn - page 115
+        t[0xC4] = branch(0xC4, "CALL NZ,nn", 2, 8, 12, (cpu, n) -> { if (!zero(cpu)) cpu.call(n); });
+        t[0xCC] = branch(0xCC, "CALL Z,nn", 2, 8, 12, (cpu, n) -> { if (zero(cpu)) cpu.call(n); });
+        t[0xD4] = branch(0xD4, "CALL NC,nn", 2, 8, 12, (cpu, n) -> { if (!carry(cpu)) cpu.call(n); });
+        t[0xDC] = branch(0xDC, "CALL C,nn", 2, 8, 12, (cpu, n) -> { if (carry(cpu)) cpu.call(n); });
+
+        // Restarts
+        // RST n - page 116
+        t[0xC7] = branch(0xC7, "RST 00H", 0, 32, 32, (cpu, n) -> cpu.call(0x00));
+        t[0xCF] = branch(0xCF, "RST 08H", 0, 32, 32, (cpu, n) -> cpu.call(0x08));
+        t[0xD7] = branch(0xD7, "RST 10H", 0, 32, 32, (cpu, n) -> cpu.call(0x10));
+        t[0xDF] = branch(0xDF, "RST 18H", 0, 32, 32, (cpu, n) -> cpu.call(0x18));
+        t[0xE7] = branch(0xE7, "RST 20H", 0, 32, 32, (cpu, n) -> cpu.call(0x20));
+        t[0xEF] = branch(0xEF, "RST 28H", 0, 32, 32, (cpu, n) -> cpu.call(0x28));
+        t[0xF7] = branch(0xF7, "RST 30H", 0, 32, 32, (cpu, n) -> cpu.call(0x30));
+        t[0xFF] = branch(0xFF, "RST 38H", 0, 32, 32, (cpu, n) -> cpu.call(0x38));
+
+        // Returns
+        // RET - page 117
+        t[0xC9] = branch(0xC9, "RET", 0, 8, 8, (cpu, n) -> {
+            int value = cpu.getSP();
+            cpu.setSP(cpu.getSP() + 2);
+            cpu.jump(value);
+        });
+        // RET cc - page 117
+        t[0xC0] = branch(0xC0, "RET NZ", 0, 8, 8, (cpu, n) -> { if (!zero(cpu)) cpu.jump(cpu.popWord()); });
+        t[0xC8] = branch(0xC8, "RET Z", 0, 8, 8, (cpu, n) -> { if (zero(cpu)) cpu.jump(cpu.popWord()); });
+        t[0xD0] = branch(0xD0, "RET NC", 0, 8, 8, (cpu, n) -> { if (!carry(cpu)) cpu.jump(cpu.popWord()); });
+        t[0xD8] = branch(0xD8, "RET C", 0, 8, 8, (cpu, n) -> { if (carry(cpu)) cpu.jump(cpu.popWord()); });
+        // RETI - page 118
+        t[0xD9] = branch(0xD9, "RETI", 0, 8, 8, (cpu, n) -> {
+            cpu.jump(cpu.popWord());
+            cpu.setInterruptsEnabled(true);
+        });
+
+        // The CPU resolves 0xCB against CB_PREFIXED itself, this entry only exists so the table is complete.
+        t[0xCB] = op(0xCB, "PREFIX CB", 1, 0, (cpu, n) -> { });
+
+        // everything left over is an illegal opcode on the DMG
+        for (int code = 0; code < t.length; code++) {
+            if (t[code] == null) {
+                t[code] = missing(code, 0);
+            }
+        }
+
+        return t;
+    }
+
+    private static Opcode[] buildCbTable() {
+        Opcode[] t = new Opcode[256];
+
+        for (int code = 0; code < t.length; code++) {
+            final int index = code & 0x07;
+            final int bit = (code >> 3) & 0x07;
+            // anything touching (HL) takes 16 cycles, the rest take 8
+            int cycles = index == CPU.HL_INDIRECT ? 16 : 8;
+            String target = REGISTER_NAMES[index];
+
+            Handler handler;
+            String mnemonic;
+            switch (code >> 6) {
+                case 0 -> {
+                    // rotates, shifts and swap, pages 94 and 101-107
+                    switch (bit) {
+                        case 0 -> {
+                            mnemonic = "RLC " + target;
+                            handler = (cpu, n) -> cpu.rotate(CPU.RotateDirection.LEFT, index, true);
+                        }
+                        case 1 -> {
+                            mnemonic = "RRC " + target;
+                            handler = (cpu, n) -> cpu.rotate(CPU.RotateDirection.RIGHT, index, true);
+                        }
+                        case 2 -> {
+                            mnemonic = "RL " + target;
+                            handler = (cpu, n) -> cpu.rotate(CPU.RotateDirection.LEFT, index, false);
+                        }
+                        case 3 -> {
+                            mnemonic = "RR " + target;
+                            handler = (cpu, n) -> cpu.rotate(CPU.RotateDirection.RIGHT, index, false);
+                        }
+                        case 4 -> {
+                            mnemonic = "SLA " + target;
+                            handler = (cpu, n) -> cpu.shift(CPU.RotateDirection.LEFT, index, false);
+                        }
+                        case 5 -> {
+                            mnemonic = "SRA " + target;
+                            handler = (cpu, n) -> cpu.shift(CPU.RotateDirection.RIGHT, index, false);
+                        }
+                        case 6 -> {
+                            mnemonic = "SWAP " + target;
+                            handler = (cpu, n) -> cpu.swapRegister(index);
+                        }
+                        default -> {
+                            mnemonic = "SRL " + target;
+                            handler = (cpu, n) -> cpu.shift(CPU.RotateDirection.RIGHT, index, true);
+                        }
+                    }
+                }
+                case 1 -> {
+                    // BIT b,r - page 108
+                    mnemonic = "BIT " + bit + "," + target;
+                    handler = (cpu, n) -> cpu.testRegisterBit(index, bit);
+                }
+                case 2 -> {
+                    // RES b,r - page 110
+                    mnemonic = "RES " + bit + "," + target;
+                    handler = (cpu, n) -> cpu.resetBit(index, bit);
+                }
+                default -> {
+                    // SET b,r - page 109
+                    mnemonic = "SET " + bit + "," + target;
+                    handler = (cpu, n) -> cpu.setBit(index, bit);
+                }
+            }
+
+            t[code] = new Opcode(code, mnemonic, 0, 2, cycles, cycles, handler, false);
+        }
 
+        return t;
     }
 }
@@ -0,0 +1,498 @@
+package com.pat.jit;
+
+import com.pat.CPU;
+import com.pat.instructions.BlockCache;
+import com.pat.instructions.OpcodeDecoder;
+
+import java.lang.invoke.MethodHandles;
+
+import static com.pat.jit.ClassFileWriter.*;
+
+/**
+ * Turns a decoded basic block into a hidden class implementing {@link CompiledBlock}.
+ * The guest registers and SP are copied into JVM locals on entry and written back on every exit, and the
+ * cycle count of every exit is worked out here, so the generated code only returns a constant.
+ * Loads, 8 bit ALU ops, 16 bit INC/DEC and the plain jumps are emitted inline, anything else
+ * writes the registers back and calls the instruction's interpreter handler.
+ * The generated class is defined as a nestmate of CPU, so it reads the register file and lazy flags directly.
+ */
+public final class BlockCompiler {
+
+    private static final String CPU_CLASS = "com/pat/CPU";
+    private static final String MEMORY_CLASS = "com/pat/Memory";
+    private static final String BLOCK_CLASS = "com/pat/instructions/BlockCache$BasicBlock";
+    private static final String OPCODE_CLASS = "com/pat/instructions/OpcodeDecoder$Opcode";
+    private static final String HANDLER_CLASS = "com/pat/instructions/OpcodeDecoder$Handler";
+    private static final String ALU_CLASS = "com/pat/instructions/ALU";
+    private static final String COMPILED_BLOCK_CLASS = "com/pat/jit/CompiledBlock";
+
+    // locals of the generated execute(CPU, BasicBlock) method
+    private static final int CPU_LOCAL = 1;
+    private static final int BLOCK_LOCAL = 2;
+    private static final int MEMORY_LOCAL = 3;
+    private static final int REGISTER_LOCALS = 4; // B..A by the usual 3 bit encoding, the (HL) slot goes unused
+    private static final int SP_LOCAL = REGISTER_LOCALS + 8;
+    private static final int TEMP_LOCAL = SP_LOCAL + 1;
+    private static final int MAX_LOCALS = TEMP_LOCAL + 1;
+    private static final int MAX_STACK = 6;
+
+    // what emitting an instruction inline left behind
+    private static final int NOT_INLINED = 0;
+    private static final int INLINED = 1;
+    private static final int WROTE_MEMORY = 2; // might have written over the block's own code
+    private static final int EXITED = 3; // every path has already returned
+
+    private final MethodHandles.Lookup lookup;
+    private final String className;
+
+    /**
+     * @param lookup a full privilege lookup on CPU, the compiled blocks are defined next to it
+     */
+    public BlockCompiler(MethodHandles.Lookup lookup) {
+        this.lookup = lookup;
+        this.className = lookup.lookupClass().getName().replace('.', '/') + "$Compiled";
+    }
+
+    public CompiledBlock compile(BlockCache.BasicBlock block) throws ReflectiveOperationException {
+        byte[] classFile = generate(block);
+        Class<?> compiled = lookup.defineHiddenClass(classFile, true, MethodHandles.Lookup.ClassOption.NESTMATE).lookupClass();
+        return (CompiledBlock) compiled.getDeclaredConstructor().newInstance();
+    }
+
+    private byte[] generate(BlockCache.BasicBlock block) {
+        ClassFileWriter writer = new ClassFileWriter(className, "java/lang/Object", COMPILED_BLOCK_CLASS);
+
+        ClassFileWriter.Code constructor = writer.method(ACC_PUBLIC, "<init>", "()V", 1, 1);
+        constructor.local(ALOAD, 0);
+        constructor.invoke(INVOKESPECIAL, "java/lang/Object", "<init>", "()V");
+        constructor.op(RETURN);
+        constructor.end();
+
+        ClassFileWriter.Code code = writer.method(ACC_PUBLIC, "execute",
+                "(L" + CPU_CLASS + ";L" + BLOCK_CLASS + ";)I", MAX_STACK, MAX_LOCALS);
+        String[] frame = new String[MAX_LOCALS];
+        frame[0] = className;
+        frame[CPU_LOCAL] = CPU_CLASS;
+        frame[BLOCK_LOCAL] = BLOCK_CLASS;
+        frame[MEMORY_LOCAL] = MEMORY_CLASS;
+        code.frameLocals(frame);
+        new Emitter(code).emit(block);
+        code.end();
+
+        return writer.toByteArray();
+    }
+
+    private static final class Emitter {
+        private final ClassFileWriter.Code code;
+
+        Emitter(ClassFileWriter.Code code) {
+            this.code = code;
+        }
+
+        void emit(BlockCache.BasicBlock block) {
+            code.local(ALOAD, CPU_LOCAL);
+            code.field(GETFIELD, CPU_CLASS, "memory", "L" + MEMORY_CLASS + ";");
+            code.local(ASTORE, MEMORY_LOCAL);
+            code.iconst(0);
+            code.local(ISTORE, REGISTER_LOCALS + CPU.HL_INDIRECT);
+            code.iconst(0);
+            code.local(ISTORE, TEMP_LOCAL);
+            loadRegisters();
+
+            int address = block.startAddress;
+            int cycles = 0;
+            for (int i = 0; i < block.length; i++) {
+                OpcodeDecoder.Opcode instruction = block.instructions[i];
+                int next = address + instruction.length;
+
+                int result = inline(instruction, block.operands[i], address, next, cycles);
+                if (result == NOT_INLINED) {
+                    result = callHandler(i, instruction, block.operands[i], address, cycles);
+                }
+                if (result == EXITED) {
+                    return;
+                }
+
+                cycles += instruction.cycles;
+                if (result == WROTE_MEMORY && i < block.length - 1) {
+                    exitIfStale(next, cycles);
+                }
+                address = next;
+            }
+            exit(address, cycles);
+        }
+
+        /**
+         * Register file <-> locals
+         */
+
+        private void loadRegisters() {
+            for (int r = 0; r < 8; r++) {
+                if (r == CPU.HL_INDIRECT) {
+                    continue;
+                }
+                code.local(ALOAD, CPU_LOCAL);
+                code.field(GETFIELD, CPU_CLASS, "registers", "[I");
+                code.iconst(r);
+                code.op(IALOAD);
+                code.local(ISTORE, REGISTER_LOCALS + r);
+            }
+            code.local(ALOAD, CPU_LOCAL);
+            code.field(GETFIELD, CPU_CLASS, "stackPointer", "I");
+            code.local(ISTORE, SP_LOCAL);
+        }
+
+        private void storeRegisters() {
+            for (int r = 0; r < 8; r++) {
+                if (r == CPU.HL_INDIRECT) {
+                    continue;
+                }
+                code.local(ALOAD, CPU_LOCAL);
+                code.field(GETFIELD, CPU_CLASS, "registers", "[I");
+                code.iconst(r);
+                code.local(ILOAD, REGISTER_LOCALS + r);
+                code.op(IASTORE);
+            }
+            code.local(ALOAD, CPU_LOCAL);
+            code.local(ILOAD, SP_LOCAL);
+            code.field(PUTFIELD, CPU_CLASS, "stackPointer", "I");
+        }
+
+        // leaves the block with PC at address
+        private void exit(int address, int cycles) {
+            storeRegisters();
+            code.local(ALOAD, CPU_LOCAL);
+            code.iconst(address);
+            code.field(PUTFIELD, CPU_CLASS, "programCounter", "I");
+            code.iconst(cycles);
+            code.op(IRETURN);
+        }
+
+        // same as the interpreter: once a write lands on the block's own pages, carry on from a fresh decode
+        private void exitIfStale(int next, int cycles) {
+            code.local(ALOAD, BLOCK_LOCAL);
+            code.local(ALOAD, MEMORY_LOCAL);
+            code.invoke(INVOKEVIRTUAL, BLOCK_CLASS, "isValid", "(L" + MEMORY_CLASS + ";)Z");
+            int valid = code.branch(IFNE);
+            exit(next, cycles);
+            code.place(valid);
+        }
+
+        /**
+         * Anything not emitted inline runs through the interpreter's handler with the register file written back.
+         */
+        private int callHandler(int index, OpcodeDecoder.Opcode instruction, int operand, int address, int cycles) {
+            storeRegisters();
+            code.local(ALOAD, CPU_LOCAL);
+            code.iconst(address);
+            code.field(PUTFIELD, CPU_CLASS, "programCounter", "I");
+            code.local(ALOAD, CPU_LOCAL);
+            code.iconst(0);
+            code.field(PUTFIELD, CPU_CLASS, "branched", "Z");
+
+            code.local(ALOAD, BLOCK_LOCAL);
+            code.field(GETFIELD, BLOCK_CLASS, "instructions", "[L" + OPCODE_CLASS + ";");
+            code.iconst(index);
+            code.op(AALOAD);
+            code.field(GETFIELD, OPCODE_CLASS, "handler", "L" + HANDLER_CLASS + ";");
+            code.local(ALOAD, CPU_LOCAL);
+            code.iconst(operand);
+            code.invoke(INVOKEINTERFACE, HANDLER_CLASS, "execute", "(L" + CPU_CLASS + ";I)V");
+
+            if (instruction.endsBlock) {
+                // the handler has already moved PC and the register file is up to date
+                code.local(ALOAD, CPU_LOCAL);
+                code.field(GETFIELD, CPU_CLASS, "branched", "Z");
+                int notTaken = code.branch(IFEQ);
+                code.iconst(cycles + instruction.branchCycles);
+                code.op(IRETURN);
+                code.place(notTaken);
+            }
+
+            loadRegisters();
+            return WROTE_MEMORY;
+        }
+
+        private int inline(OpcodeDecoder.Opcode instruction, int n, int address, int next, int cycles) {
+            if (OpcodeDecoder.OpcodeTable.PRIMARY.decode(instruction.code) != instruction) {
+                return NOT_INLINED; // CB prefixed
+            }
+
+            int c = instruction.code;
+            int r = (c >> 3) & 0x07;
+            int s = c & 0x07;
+
+            // LD r,r' and LD r,(HL) / LD (HL),r - 0x76 is HALT
+            if (c >= 0x40 && c < 0x80 && c != 0x76) {
+                if (r == CPU.HL_INDIRECT) {
+                    writeMemory(() -> code.local(ILOAD, REGISTER_LOCALS + s), this::loadHL);
+                    return WROTE_MEMORY;
+                }
+                readRegister(s);
+                mask();
+                code.local(ISTORE, REGISTER_LOCALS + r);
+                return INLINED;
+            }
+
+            // 8 bit ALU on a register or (HL)
+            if (c >= 0x80 && c < 0xC0) {
+                alu(r, () -> readRegister(s));
+                return INLINED;
+            }
+
+            // LD r,n
+            if ((c & 0xC7) == 0x06) {
+                if (r == CPU.HL_INDIRECT) {
+                    writeMemory(() -> code.iconst(n & 0xFF), this::loadHL);
+                    return WROTE_MEMORY;
+                }
+                code.iconst(n & 0xFF);
+                code.local(ISTORE, REGISTER_LOCALS + r);
+                return INLINED;
+            }
+
+            // INC r / DEC r, (HL) goes through the handler
+            if (((c & 0xC7) == 0x04 || (c & 0xC7) == 0x05) && r != CPU.HL_INDIRECT) {
+                code.local(ILOAD, REGISTER_LOCALS + r);
+                code.invoke(INVOKESTATIC, ALU_CLASS, (c & 0x01) == 0 ? "increment" : "decrement", "(I)I");
+                code.local(ISTORE, TEMP_LOCAL);
+                code.local(ILOAD, TEMP_LOCAL);
+                mask();
+                code.local(ISTORE, REGISTER_LOCALS + r);
+                code.local(ALOAD, CPU_LOCAL);
+                code.local(ILOAD, TEMP_LOCAL);
+                code.invoke(INVOKEVIRTUAL, CPU_CLASS, "loadFlagsKeepCarry", "(I)V");
+                return INLINED;
+            }
+
+            switch (c) {
+                case 0x00 -> { // NOP
+                    return INLINED;
+                }
+                case 0xC6, 0xCE, 0xD6, 0xE6, 0xEE, 0xF6, 0xFE -> { // 8 bit ALU on an immediate
+                    alu(r, () -> code.iconst(n));
+                    return INLINED;
+                }
+
+                case 0x01, 0x11, 0x21 -> { // LD rr,nn
+                    code.iconst(n);
+                    storePair(pairHigh(c));
+                    return INLINED;
+                }
+                case 0x31 -> { // LD SP,nn
+                    code.iconst(n);
+                    code.local(ISTORE, SP_LOCAL);
+                    return INLINED;
+                }
+                case 0xF9 -> { // LD SP,HL
+                    loadHL();
+                    code.local(ISTORE, SP_LOCAL);
+                    return INLINED;
+                }
+                case 0x03, 0x13, 0x23, 0x0B, 0x1B, 0x2B -> { // INC rr / DEC rr
+                    int high = pairHigh(c);
+                    loadPair(high);
+                    code.iconst((c & 0x08) == 0 ? 1 : -1);
+                    code.op(IADD);
+                    storePair(high);
+                    return INLINED;
+                }
+                case 0x33, 0x3B -> { // INC SP / DEC SP
+                    code.local(ILOAD, SP_LOCAL);
+                    code.iconst(c == 0x33 ? 1 : -1);
+                    code.op(IADD);
+                    code.local(ISTORE, SP_LOCAL);
+                    return INLINED;
+                }
+
+                case 0x0A, 0x1A -> { // LD A,(BC) / LD A,(DE)
+                    readMemory(() -> loadPair(pairHigh(c)));
+                    mask();
+                    code.local(ISTORE, REGISTER_LOCALS + CPU.A);
+                    return INLINED;
+                }
+                case 0x02, 0x12 -> { // LD (BC),A / LD (DE),A
+                    writeMemory(() -> code.local(ILOAD, REGISTER_LOCALS + CPU.A), () -> loadPair(pairHigh(c)));
+                    return WROTE_MEMORY;
+                }
+                case 0x2A, 0x3A -> { // LD A,(HL+) / LD A,(HL-)
+                    readMemory(this::loadHL);
+                    mask();
+                    code.local(ISTORE, REGISTER_LOCALS + CPU.A);
+                    stepHL(c == 0x2A ? 1 : -1);
+                    return INLINED;
+                }
+                case 0x22, 0x32 -> { // LD (HL+),A / LD (HL-),A
+                    writeMemory(() -> code.local(ILOAD, REGISTER_LOCALS + CPU.A), this::loadHL);
+                    stepHL(c == 0x22 ? 1 : -1);
+                    return WROTE_MEMORY;
+                }
+                case 0xE0 -> { // LDH (n),A
+                    writeMemory(() -> code.local(ILOAD, REGISTER_LOCALS + CPU.A), () -> code.iconst(0xFF00 + n));
+                    return WROTE_MEMORY;
+                }
+                case 0xE2 -> { // LD (C),A
+                    writeMemory(() -> code.local(ILOAD, REGISTER_LOCALS + CPU.A), () -> {
+                        code.iconst(0xFF00);
+                        code.local(ILOAD, REGISTER_LOCALS + CPU.C);
+                        code.op(IADD);
+                    });
+                    return WROTE_MEMORY;
+                }
+                case 0xF0, 0xFA -> { // LDH A,(n) / LD A,(nn), both just load the masked operand the way the handlers do
+                    code.iconst((c == 0xF0 ? 0xFF00 + n : n) & 0xFF);
+                    code.local(ISTORE, REGISTER_LOCALS + CPU.A);
+                    return INLINED;
+                }
+                case 0x2F -> { // CPL
+                    code.local(ILOAD, REGISTER_LOCALS + CPU.A);
+                    code.iconst(0xFF);
+                    code.op(IXOR);
+                    code.local(ISTORE, REGISTER_LOCALS + CPU.A);
+                    return INLINED;
+                }
+
+                case 0xC3 -> { // JP nn
+                    exit(n, cycles + instruction.branchCycles);
+                    return EXITED;
+                }
+                case 0x18 -> { // JR n
+                    exit(address + n, cycles + instruction.branchCycles);
+                    return EXITED;
+                }
+                // JR cc,n jumps straight to n, same as its handler
+                case 0xC2, 0xCA, 0xD2, 0xDA, 0x20, 0x28, 0x30, 0x38 -> { // JP cc,nn / JR cc,n
+                    boolean onCarry = (c & 0x10) != 0;
+                    boolean whenSet = (c & 0x08) != 0;
+                    code.local(ALOAD, CPU_LOCAL);
+                    if (onCarry) {
+                        code.field(GETFIELD, CPU_CLASS, "carry", "Z");
+                    } else {
+                        // zeroSource is 0 when Z is set, so the test runs the other way round
+                        code.field(GETFIELD, CPU_CLASS, "zeroSource", "I");
+                        whenSet = !whenSet;
+                    }
+                    int notTaken = code.branch(whenSet ? IFEQ : IFNE);
+                    exit(n, cycles + instruction.branchCycles);
+                    code.place(notTaken);
+                    exit(next, cycles + instruction.cycles);
+                    return EXITED;
+                }
+                default -> {
+                    return NOT_INLINED;
+                }
+            }
+        }
+
+        /**
+         * Pieces of instructions
+         */
+
+        // pushes the byte at the address the emitter leaves on the stack
+        private void readMemory(Runnable address) {
+            code.local(ALOAD, MEMORY_LOCAL);
+            address.run();
+            code.invoke(INVOKEVIRTUAL, MEMORY_CLASS, "readByteFromLocation", "(I)I");
+        }
+
+        private void writeMemory(Runnable value, Runnable address) {
+            code.local(ALOAD, MEMORY_LOCAL);
+            value.run();
+            mask();
+            address.run();
+            code.invoke(INVOKEVIRTUAL, MEMORY_CLASS, "writeByteToLocation", "(II)V");
+        }
+
+        private void readRegister(int r) {
+            if (r == CPU.HL_INDIRECT) {
+                readMemory(this::loadHL);
+            } else {
+                code.local(ILOAD, REGISTER_LOCALS + r);
+            }
+        }
+
+        private void mask() {
+            code.iconst(0xFF);
+            code.op(IAND);
+        }
+
+        // BC, DE or HL from bits 4-5 of the opcode
+        private static int pairHigh(int c) {
+            return (c >> 4) * 2;
+        }
+
+        private void loadPair(int high) {
+            code.local(ILOAD, REGISTER_LOCALS + high);
+            code.iconst(8);
+            code.op(ISHL);
+            code.local(ILOAD, REGISTER_LOCALS + high + 1);
+            code.op(IOR);
+        }
+
+        private void loadHL() {
+            loadPair(CPU.H);
+        }
+
+        // splits the word on the stack into a pair, keeping 16 bits like CPU.setHL and friends
+        private void storePair(int high) {
+            code.local(ISTORE, TEMP_LOCAL);
+            code.local(ILOAD, TEMP_LOCAL);
+            code.iconst(8);
+            code.op(ISHR);
+            mask();
+            code.local(ISTORE, REGISTER_LOCALS + high);
+            code.local(ILOAD, TEMP_LOCAL);
+            mask();
+            code.local(ISTORE, REGISTER_LOCALS + high + 1);
+        }
+
+        private void stepHL(int step) {
+            loadHL();
+            code.iconst(step);
+            code.op(IADD);
+            storePair(CPU.H);
+        }
+
+        // ADD, ADC, SUB, SBC, AND, XOR, OR, CP in opcode order
+        private void alu(int operation, Runnable value) {
+            if (operation >= 4 && operation <= 6) {
+                code.local(ILOAD, REGISTER_LOCALS + CPU.A);
+                value.run();
+                switch (operation) {
+                    case 4 -> code.op(IAND);
+                    case 5 -> {
+                        code.op(IXOR);
+                        mask();
+                    }
+                    default -> code.op(IOR);
+                }
+                code.local(ISTORE, REGISTER_LOCALS + CPU.A);
+                code.local(ALOAD, CPU_LOCAL);
+                code.local(ILOAD, REGISTER_LOCALS + CPU.A);
+                code.iconst(operation == 4 ? 1 : 0);
+                code.invoke(INVOKEVIRTUAL, CPU_CLASS, "loadLogicFlags", "(IZ)V");
+                return;
+            }
+
+            code.local(ILOAD, REGISTER_LOCALS + CPU.A);
+            value.run();
+            mask();
+            if (operation == 1 || operation == 3) {
+                code.local(ALOAD, CPU_LOCAL);
+                code.field(GETFIELD, CPU_CLASS, "carry", "Z");
+            } else {
+                code.iconst(0);
+            }
+            code.invoke(INVOKESTATIC, ALU_CLASS, operation <= 1 ? "add" : "subtract", "(IIZ)I");
+            code.local(ISTORE, TEMP_LOCAL);
+            if (operation != 7) {
+                code.local(ILOAD, TEMP_LOCAL);
+                mask();
+                code.local(ISTORE, REGISTER_LOCALS + CPU.A);
+            }
+            code.local(ALOAD, CPU_LOCAL);
+            code.local(ILOAD, TEMP_LOCAL);
+            code.invoke(INVOKEVIRTUAL, CPU_CLASS, "loadFlags", "(I)V");
+        }
+    }
+}
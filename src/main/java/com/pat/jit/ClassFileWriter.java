@@ -0,0 +1,373 @@
+package com.pat.jit;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Just enough of a class file writer for the block compiler: one class, a constant pool, and methods
+ * made of straight-line code with forward branches. Every branch target gets the same full stack map frame,
+ * which works because compiled blocks declare all their locals up front and only branch with an empty stack.
+ */
+final class ClassFileWriter {
+
+    private static final int MAGIC = 0xCAFEBABE;
+    private static final int JAVA_17 = 61;
+
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_FINAL = 0x0010;
+    static final int ACC_SUPER = 0x0020;
+
+    // opcodes the compiler uses, JVMS chapter 6
+    static final int ICONST_0 = 0x03;
+    static final int BIPUSH = 0x10;
+    static final int SIPUSH = 0x11;
+    static final int LDC_W = 0x13;
+    static final int ILOAD = 0x15;
+    static final int ALOAD = 0x19;
+    static final int IALOAD = 0x2E;
+    static final int AALOAD = 0x32;
+    static final int ISTORE = 0x36;
+    static final int ASTORE = 0x3A;
+    static final int IASTORE = 0x4F;
+    static final int IADD = 0x60;
+    static final int ISHL = 0x78;
+    static final int ISHR = 0x7A;
+    static final int IAND = 0x7E;
+    static final int IOR = 0x80;
+    static final int IXOR = 0x82;
+    static final int IFEQ = 0x99;
+    static final int IFNE = 0x9A;
+    static final int IRETURN = 0xAC;
+    static final int RETURN = 0xB1;
+    static final int GETFIELD = 0xB4;
+    static final int PUTFIELD = 0xB5;
+    static final int INVOKEVIRTUAL = 0xB6;
+    static final int INVOKESPECIAL = 0xB7;
+    static final int INVOKESTATIC = 0xB8;
+    static final int INVOKEINTERFACE = 0xB9;
+
+    // verification type tags for stack map frames
+    private static final int ITEM_INTEGER = 1;
+    private static final int ITEM_OBJECT = 7;
+    private static final int FULL_FRAME = 255;
+
+    private final ByteArrayOutputStream constantPool = new ByteArrayOutputStream();
+    private final DataOutputStream pool = new DataOutputStream(constantPool);
+    private final Map<String, Integer> constants = new HashMap<>();
+    private int constantCount = 1;
+
+    private final int thisClass;
+    private final int superClass;
+    private final int[] interfaces;
+    private final List<byte[]> methods = new ArrayList<>();
+
+    ClassFileWriter(String name, String superName, String... interfaceNames) {
+        thisClass = classRef(name);
+        superClass = classRef(superName);
+        interfaces = new int[interfaceNames.length];
+        for (int i = 0; i < interfaceNames.length; i++) {
+            interfaces[i] = classRef(interfaceNames[i]);
+        }
+    }
+
+    int thisClass() {
+        return thisClass;
+    }
+
+    /**
+     * Constant pool
+     */
+
+    private interface Entry {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private int constant(String key, Entry entry) {
+        Integer index = constants.get(key);
+        if (index != null) {
+            return index;
+        }
+        try {
+            entry.write(pool);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        constants.put(key, constantCount);
+        return constantCount++;
+    }
+
+    int utf8(String value) {
+        return constant("U" + value, out -> {
+            out.writeByte(1);
+            out.writeUTF(value);
+        });
+    }
+
+    int integer(int value) {
+        return constant("I" + value, out -> {
+            out.writeByte(3);
+            out.writeInt(value);
+        });
+    }
+
+    int classRef(String name) {
+        int nameIndex = utf8(name);
+        return constant("C" + name, out -> {
+            out.writeByte(7);
+            out.writeShort(nameIndex);
+        });
+    }
+
+    private int nameAndType(String name, String descriptor) {
+        int nameIndex = utf8(name);
+        int descriptorIndex = utf8(descriptor);
+        return constant("N" + name + ":" + descriptor, out -> {
+            out.writeByte(12);
+            out.writeShort(nameIndex);
+            out.writeShort(descriptorIndex);
+        });
+    }
+
+    private int memberRef(int tag, String owner, String name, String descriptor) {
+        int ownerIndex = classRef(owner);
+        int nameAndTypeIndex = nameAndType(name, descriptor);
+        return constant("M" + tag + owner + "." + name + ":" + descriptor, out -> {
+            out.writeByte(tag);
+            out.writeShort(ownerIndex);
+            out.writeShort(nameAndTypeIndex);
+        });
+    }
+
+    int fieldRef(String owner, String name, String descriptor) {
+        return memberRef(9, owner, name, descriptor);
+    }
+
+    int methodRef(String owner, String name, String descriptor) {
+        return memberRef(10, owner, name, descriptor);
+    }
+
+    int interfaceMethodRef(String owner, String name, String descriptor) {
+        return memberRef(11, owner, name, descriptor);
+    }
+
+    /**
+     * Methods
+     */
+
+    final class Code {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final ByteArrayOutputStream frames = new ByteArrayOutputStream();
+        private final int access;
+        private final int name;
+        private final int descriptor;
+        private final int maxStack;
+        private final int maxLocals;
+        // the one frame every branch target shares, already encoded
+        private byte[] frameLocals = new byte[0];
+        private int frameLocalCount;
+        private int frameCount;
+        private int lastFrameOffset = -1;
+
+        private Code(int access, String name, String descriptor, int maxStack, int maxLocals) {
+            this.access = access;
+            this.name = utf8(name);
+            this.descriptor = utf8(descriptor);
+            this.maxStack = maxStack;
+            this.maxLocals = maxLocals;
+        }
+
+        /**
+         * Types of the locals at every branch target: a class name for a reference, null for an int.
+         */
+        void frameLocals(String... types) {
+            ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+            for (String type : types) {
+                if (type == null) {
+                    encoded.write(ITEM_INTEGER);
+                } else {
+                    int index = classRef(type);
+                    encoded.write(ITEM_OBJECT);
+                    encoded.write(index >> 8);
+                    encoded.write(index);
+                }
+            }
+            frameLocals = encoded.toByteArray();
+            frameLocalCount = types.length;
+        }
+
+        void op(int opcode) {
+            bytes.write(opcode);
+        }
+
+        private void u2(int value) {
+            bytes.write(value >> 8);
+            bytes.write(value);
+        }
+
+        void iconst(int value) {
+            if (value >= -1 && value <= 5) {
+                op(ICONST_0 + value);
+            } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                op(BIPUSH);
+                bytes.write(value);
+            } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                op(SIPUSH);
+                u2(value);
+            } else {
+                op(LDC_W);
+                u2(integer(value));
+            }
+        }
+
+        void local(int opcode, int slot) {
+            op(opcode);
+            bytes.write(slot);
+        }
+
+        void field(int opcode, String owner, String name, String descriptor) {
+            op(opcode);
+            u2(fieldRef(owner, name, descriptor));
+        }
+
+        void invoke(int opcode, String owner, String name, String descriptor) {
+            op(opcode);
+            if (opcode == INVOKEINTERFACE) {
+                u2(interfaceMethodRef(owner, name, descriptor));
+                bytes.write(argumentSlots(descriptor) + 1);
+                bytes.write(0);
+            } else {
+                u2(methodRef(owner, name, descriptor));
+            }
+        }
+
+        /**
+         * Emits a branch whose target isn't known yet, returns the label to hand to {@link #place(int)}.
+         */
+        int branch(int opcode) {
+            int at = bytes.size();
+            op(opcode);
+            u2(0);
+            return at;
+        }
+
+        /**
+         * Points an earlier branch at the current position and records the shared frame there.
+         */
+        void place(int label) {
+            int target = bytes.size();
+            byte[] code = bytes.toByteArray();
+            int offset = target - label;
+            code[label + 1] = (byte) (offset >> 8);
+            code[label + 2] = (byte) offset;
+            bytes.reset();
+            bytes.write(code, 0, code.length);
+
+            if (target != lastFrameOffset) {
+                int delta = lastFrameOffset < 0 ? target : target - lastFrameOffset - 1;
+                frames.write(FULL_FRAME);
+                frames.write(delta >> 8);
+                frames.write(delta);
+                frames.write(frameLocalCount >> 8);
+                frames.write(frameLocalCount);
+                frames.write(frameLocals, 0, frameLocals.length);
+                frames.write(0); // empty stack
+                frames.write(0);
+                lastFrameOffset = target;
+                frameCount++;
+            }
+        }
+
+        private byte[] toByteArray() throws IOException {
+            ByteArrayOutputStream method = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(method);
+            byte[] code = bytes.toByteArray();
+            byte[] stackMap = frames.toByteArray();
+
+            out.writeShort(access);
+            out.writeShort(name);
+            out.writeShort(descriptor);
+            out.writeShort(1); // attributes
+
+            boolean hasFrames = frameCount > 0;
+            int codeAttributeLength = 12 + code.length + (hasFrames ? 8 + stackMap.length : 0);
+            out.writeShort(utf8("Code"));
+            out.writeInt(codeAttributeLength);
+            out.writeShort(maxStack);
+            out.writeShort(maxLocals);
+            out.writeInt(code.length);
+            out.write(code);
+            out.writeShort(0); // exception table
+            out.writeShort(hasFrames ? 1 : 0);
+            if (hasFrames) {
+                out.writeShort(utf8("StackMapTable"));
+                out.writeInt(2 + stackMap.length);
+                out.writeShort(frameCount);
+                out.write(stackMap);
+            }
+            return method.toByteArray();
+        }
+
+        void end() {
+            try {
+                methods.add(toByteArray());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    Code method(int access, String name, String descriptor, int maxStack, int maxLocals) {
+        return new Code(access, name, descriptor, maxStack, maxLocals);
+    }
+
+    // only ints, booleans and references are ever passed, so every argument takes one slot
+    private static int argumentSlots(String descriptor) {
+        int slots = 0;
+        for (int i = 1; descriptor.charAt(i) != ')'; i++) {
+            char c = descriptor.charAt(i);
+            if (c == 'L') {
+                i = descriptor.indexOf(';', i);
+            }
+            slots++;
+        }
+        return slots;
+    }
+
+    byte[] toByteArray() {
+        try {
+            ByteArrayOutputStream classFile = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(classFile);
+            // utf8 entries for the attribute names have to exist before the pool is written out
+            utf8("Code");
+            utf8("StackMapTable");
+
+            out.writeInt(MAGIC);
+            out.writeShort(0);
+            out.writeShort(JAVA_17);
+            out.writeShort(constantCount);
+            out.write(constantPool.toByteArray());
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(interfaces.length);
+            for (int index : interfaces) {
+                out.writeShort(index);
+            }
+            out.writeShort(0); // fields
+            out.writeShort(methods.size());
+            for (byte[] method : methods) {
+                out.write(method);
+            }
+            out.writeShort(0); // attributes
+            return classFile.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
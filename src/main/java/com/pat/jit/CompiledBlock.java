@@ -0,0 +1,12 @@
+package com.pat.jit;
+
+import com.pat.CPU;
+import com.pat.instructions.BlockCache;
+
+/**
+ * A basic block turned into JVM bytecode by {@link BlockCompiler}.
+ * Does exactly what CPU.executeBlock would do with the same block and returns the cycles it took.
+ */
+public interface CompiledBlock {
+    int execute(CPU cpu, BlockCache.BasicBlock block);
+}
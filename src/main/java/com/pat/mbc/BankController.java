@@ -0,0 +1,61 @@
+package com.pat.mbc;
+
+import com.pat.Memory;
+
+/**
+ * A cartridge's memory bank controller. Writes into ROM space land here, and it answers them by pointing Memory's
+ * page table at other parts of the ROM image and cartridge RAM; nothing is ever copied, so switching costs the same
+ * whether a game does it once a level or thousands of times a frame.
+ */
+public abstract class BankController {
+
+    protected final Memory memory;
+
+    protected BankController(Memory memory) {
+        this.memory = memory;
+    }
+
+    /**
+     * The controller the cartridge header asks for, or null when the ROM has none (or one we don't know).
+     */
+    public static BankController forCartridge(Memory memory) {
+        return switch (memory.getMemoryBankType()) {
+            case MBC1 -> new MBC1(memory);
+            case MBC2 -> new MBC2(memory);
+            case MBC3 -> new MBC3(memory);
+            case MBC5 -> new MBC5(memory);
+            default -> null;
+        };
+    }
+
+    /**
+     * A write to 0x0000 - 0x7FFF.
+     */
+    public abstract void write(int value, int location);
+
+    /**
+     * A read from 0xA000 - 0xBFFF while cartridge RAM isn't mapped there. Open bus unless the controller has
+     * something of its own to show.
+     */
+    public int readRam(int location) {
+        return 0xFF;
+    }
+
+    /**
+     * A write to 0xA000 - 0xBFFF while cartridge RAM isn't mapped there.
+     */
+    public void writeRam(int value, int location) {
+    }
+
+    /**
+     * The cartridge's real time clock, or null when it doesn't have one.
+     */
+    public RealTimeClock getClock() {
+        return null;
+    }
+
+    // 0x0A in the low nibble enables RAM, anything else disables it
+    static boolean enablesRam(int value) {
+        return (value & 0x0F) == 0x0A;
+    }
+}
@@ -0,0 +1,48 @@
+package com.pat.mbc;
+
+import com.pat.Memory;
+
+/**
+ * MBC1: 5 bit ROM bank register plus a 2 bit register that is either the top of the ROM bank or the RAM bank.
+ * In mode 1 the 2 bit register also moves 0x0000 - 0x3FFF to bank 0x20, 0x40 or 0x60 and selects the RAM bank,
+ * in mode 0 those stay at bank 0.
+ */
+class MBC1 extends BankController {
+
+    private int lowBank = 1;
+    private int highBits;
+    private boolean advancedMode;
+
+    MBC1(Memory memory) {
+        super(memory);
+    }
+
+    @Override
+    public void write(int value, int location) {
+        switch (location >> 13) {
+            case 0 -> memory.setCartRamMapped(enablesRam(value));
+            case 1 -> {
+                // 0 can't be selected here, it reads as 1, which is why 0x20, 0x40 and 0x60 can't be reached up top
+                lowBank = value & 0x1F;
+                if (lowBank == 0) {
+                    lowBank = 1;
+                }
+                updateBanks();
+            }
+            case 2 -> {
+                highBits = value & 0x03;
+                updateBanks();
+            }
+            default -> {
+                advancedMode = (value & 0x01) != 0;
+                updateBanks();
+            }
+        }
+    }
+
+    private void updateBanks() {
+        memory.setCurrentRomBank(highBits << 5 | lowBank);
+        memory.setLowerRomBank(advancedMode ? highBits << 5 : 0);
+        memory.setCurrentRamBank(advancedMode ? highBits : 0);
+    }
+}
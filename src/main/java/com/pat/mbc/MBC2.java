@@ -0,0 +1,50 @@
+package com.pat.mbc;
+
+import com.pat.Memory;
+
+/**
+ * MBC2: up to 16 ROM banks and 512 half bytes of RAM built into the controller.
+ * Bit 8 of the address picks the register: clear for RAM enable, set for the ROM bank.
+ * The RAM only stores the low nibble, so it stays off the page table and every access comes through here.
+ */
+class MBC2 extends BankController {
+
+    private boolean ramEnabled;
+
+    MBC2(Memory memory) {
+        super(memory);
+    }
+
+    @Override
+    public void write(int value, int location) {
+        if (location >= 0x4000) {
+            return;
+        }
+        if ((location & 0x100) == 0) {
+            boolean wasEnabled = ramEnabled;
+            ramEnabled = enablesRam(value);
+            if (wasEnabled && !ramEnabled) {
+                memory.flushCartRam();
+            }
+        } else {
+            int bank = value & 0x0F;
+            memory.setCurrentRomBank(bank == 0 ? 1 : bank);
+        }
+    }
+
+    @Override
+    public int readRam(int location) {
+        if (!ramEnabled) {
+            return 0xFF;
+        }
+        // 512 bytes echoed through the whole window, the top nibble isn't wired to anything
+        return memory.getCartRam().get(location & 0x1FF) | 0xF0;
+    }
+
+    @Override
+    public void writeRam(int value, int location) {
+        if (ramEnabled) {
+            memory.writeCartRam(location & 0x1FF, value & 0x0F);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.pat.mbc;
+
+import com.pat.Memory;
+
+/**
+ * MBC3: 7 bit ROM bank, 4 RAM banks, and a real time clock whose registers are selected in place of a RAM bank.
+ */
+class MBC3 extends BankController {
+
+    private boolean ramEnabled;
+    // 0x00 - 0x03 for a RAM bank, 0x08 - 0x0C for a clock register
+    private int ramSelect;
+    // only the 0x0F and 0x10 cartridge types have the clock
+    private final RealTimeClock clock;
+
+    MBC3(Memory memory) {
+        super(memory);
+        int cartridgeType = memory.readRomByte(0x147);
+        this.clock = Memory.hasClock(cartridgeType) ? new RealTimeClock(memory::getCycleCount) : null;
+    }
+
+    @Override
+    public RealTimeClock getClock() {
+        return clock;
+    }
+
+    @Override
+    public void write(int value, int location) {
+        switch (location >> 13) {
+            case 0 -> {
+                boolean wasEnabled = ramEnabled;
+                ramEnabled = enablesRam(value);
+                updateRam();
+                if (wasEnabled && !ramEnabled && clock != null) {
+                    // done with the clock as well as the RAM, it goes in the save with it
+                    memory.storeClock();
+                    memory.flushCartRam();
+                }
+            }
+            case 1 -> {
+                int bank = value & 0x7F;
+                memory.setCurrentRomBank(bank == 0 ? 1 : bank);
+            }
+            case 2 -> {
+                ramSelect = value & 0x0F;
+                updateRam();
+            }
+            default -> {
+                if (clock != null) {
+                    clock.writeLatch(value);
+                }
+            }
+        }
+    }
+
+    private void updateRam() {
+        boolean ramBank = ramSelect < 0x04;
+        if (ramBank) {
+            memory.setCurrentRamBank(ramSelect);
+        }
+        // with a clock register selected the window comes back here instead
+        memory.setCartRamMapped(ramEnabled && ramBank);
+    }
+
+    private boolean clockSelected() {
+        return ramEnabled && clock != null && ramSelect >= RealTimeClock.SECONDS && ramSelect <= RealTimeClock.DAY_HIGH;
+    }
+
+    @Override
+    public int readRam(int location) {
+        return clockSelected() ? clock.read(ramSelect) : 0xFF;
+    }
+
+    @Override
+    public void writeRam(int value, int location) {
+        if (clockSelected()) {
+            clock.write(ramSelect, value);
+        }
+    }
+}
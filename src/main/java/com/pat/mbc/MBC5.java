@@ -0,0 +1,32 @@
+package com.pat.mbc;
+
+import com.pat.Memory;
+
+/**
+ * MBC5: 9 bit ROM bank split over two registers and up to 16 RAM banks. Unlike the others bank 0 can be mapped
+ * at 0x4000.
+ */
+class MBC5 extends BankController {
+
+    private int romBank = 1;
+
+    MBC5(Memory memory) {
+        super(memory);
+    }
+
+    @Override
+    public void write(int value, int location) {
+        if (location < 0x2000) {
+            memory.setCartRamMapped(enablesRam(value));
+        } else if (location < 0x3000) {
+            romBank = (romBank & 0x100) | (value & 0xFF);
+            memory.setCurrentRomBank(romBank);
+        } else if (location < 0x4000) {
+            romBank = (value & 0x01) << 8 | (romBank & 0xFF);
+            memory.setCurrentRomBank(romBank);
+        } else if (location < 0x6000) {
+            // bit 3 drives the motor on rumble carts
+            memory.setCurrentRamBank(value & 0x0F);
+        }
+    }
+}
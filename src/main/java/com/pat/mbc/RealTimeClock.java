@@ -0,0 +1,216 @@
+package com.pat.mbc;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.function.LongSupplier;
+
+/**
+ * MBC3's real time clock, running on emulated time. Nothing ticks: the clock is a cycle count stored at some base
+ * cycle, and the time is worked out from how far the CPU has got since then, only when the game latches it or
+ * writes to it. An instance that never looks at its clock never pays for it, and fast-forwarded or skipped cycles
+ * count exactly like run ones.
+ */
+public class RealTimeClock {
+
+    public static final int CYCLES_PER_SECOND = 4194304;
+    /**
+     * Bytes written by saveState.
+     */
+    public static final int STATE_SIZE = 18;
+    /**
+     * Bytes of the clock other emulators put after the RAM in a .sav, and {@link #writeTrailer} writes.
+     */
+    public static final int TRAILER_SIZE = 48;
+    // older saves end with a 32 bit timestamp instead of 64
+    private static final int SHORT_TRAILER_SIZE = 44;
+
+    private static final int STATE_VERSION = 1;
+    private static final long SECONDS_PER_DAY = 24 * 60 * 60;
+    // the day counter is 9 bits, going past it sets the carry
+    private static final long CYCLES_PER_WRAP = 512 * SECONDS_PER_DAY * CYCLES_PER_SECOND;
+
+    // register numbers, as selected through 0x4000 - 0x5FFF
+    static final int SECONDS = 0x08;
+    static final int MINUTES = 0x09;
+    static final int HOURS = 0x0A;
+    static final int DAY_LOW = 0x0B;
+    static final int DAY_HIGH = 0x0C;
+
+    private final LongSupplier cycleCounter;
+
+    // the clock read clockCycles at cycle baseCycle, and has counted on from there unless halted
+    private long clockCycles;
+    private long baseCycle;
+    private boolean halted;
+    private boolean dayCarry;
+
+    private final int[] latched = new int[5];
+    // 0x00 has been written to the latch register, 0x01 next latches
+    private boolean latchArmed;
+
+    public RealTimeClock(LongSupplier cycleCounter) {
+        this.cycleCounter = cycleCounter;
+        this.baseCycle = cycleCounter.getAsLong();
+    }
+
+    // brings the stored time up to now and moves the base there
+    private long currentSeconds() {
+        long now = cycleCounter.getAsLong();
+        if (!halted) {
+            clockCycles += now - baseCycle;
+        }
+        baseCycle = now;
+        if (clockCycles >= CYCLES_PER_WRAP) {
+            dayCarry = true;
+            clockCycles %= CYCLES_PER_WRAP;
+        }
+        return clockCycles / CYCLES_PER_SECOND;
+    }
+
+    /**
+     * A write to 0x6000 - 0x7FFF, 0x00 then 0x01 copies the time into the registers the game can read.
+     */
+    public void writeLatch(int value) {
+        if (latchArmed && value == 0x01) {
+            latch();
+        }
+        latchArmed = value == 0x00;
+    }
+
+    private void latch() {
+        long seconds = currentSeconds();
+        long days = seconds / SECONDS_PER_DAY;
+        latched[0] = (int) (seconds % 60);
+        latched[1] = (int) (seconds / 60 % 60);
+        latched[2] = (int) (seconds / 3600 % 24);
+        latched[3] = (int) (days & 0xFF);
+        latched[4] = (int) (days >> 8) | (halted ? 0x40 : 0) | (dayCarry ? 0x80 : 0);
+    }
+
+    /**
+     * The latched value of a register, 0x08 - 0x0C.
+     */
+    public int read(int register) {
+        return latched[register - SECONDS];
+    }
+
+    /**
+     * Sets one field of the running time, the others carry on from where they were.
+     */
+    public void write(int register, int value) {
+        long seconds = currentSeconds();
+        long subSecond = clockCycles % CYCLES_PER_SECOND;
+        long second = seconds % 60;
+        long minute = seconds / 60 % 60;
+        long hour = seconds / 3600 % 24;
+        long day = seconds / SECONDS_PER_DAY;
+
+        switch (register) {
+            case SECONDS -> {
+                second = value & 0x3F;
+                // writing the seconds resets the divider feeding them
+                subSecond = 0;
+            }
+            case MINUTES -> minute = value & 0x3F;
+            case HOURS -> hour = value & 0x1F;
+            case DAY_LOW -> day = (day & 0x100) | (value & 0xFF);
+            case DAY_HIGH -> {
+                day = (value & 0x01) << 8 | (day & 0xFF);
+                halted = (value & 0x40) != 0;
+                dayCarry = (value & 0x80) != 0;
+            }
+            default -> {
+                return;
+            }
+        }
+        clockCycles = (((day * 24 + hour) * 60 + minute) * 60 + second) * CYCLES_PER_SECOND + subSecond;
+        // and the register the game wrote reads back
+        latched[register - SECONDS] = value;
+    }
+
+    /**
+     * The clock relative to the current cycle, so it carries on from the same time whatever cycle it's loaded at.
+     */
+    public byte[] saveState() {
+        currentSeconds();
+        ByteBuffer out = ByteBuffer.allocate(STATE_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        out.putInt(STATE_VERSION);
+        out.putLong(clockCycles);
+        out.put((byte) ((halted ? 0x01 : 0) | (dayCarry ? 0x02 : 0) | (latchArmed ? 0x04 : 0)));
+        for (int register : latched) {
+            out.put((byte) register);
+        }
+        return out.array();
+    }
+
+    public void loadState(byte[] state) {
+        if (state.length < STATE_SIZE) {
+            throw new IllegalArgumentException("Clock state is " + state.length + " bytes, expected " + STATE_SIZE);
+        }
+        ByteBuffer in = ByteBuffer.wrap(state).order(ByteOrder.LITTLE_ENDIAN);
+        int version = in.getInt();
+        if (version != STATE_VERSION) {
+            throw new IllegalArgumentException("Not a clock state this version can read: version " + version);
+        }
+        clockCycles = in.getLong();
+        baseCycle = cycleCounter.getAsLong();
+        int flags = in.get();
+        halted = (flags & 0x01) != 0;
+        dayCarry = (flags & 0x02) != 0;
+        latchArmed = (flags & 0x04) != 0;
+        for (int i = 0; i < latched.length; i++) {
+            latched[i] = in.get() & 0xFF;
+        }
+    }
+
+    /**
+     * The clock in the layout battery saves keep after the RAM: the running time as five 32 bit registers, the
+     * latched ones the same way, then the wall clock time in seconds, all little-endian. Anything below a second
+     * is lost.
+     */
+    public void writeTrailer(ByteBuffer trailer, long epochSecond) {
+        long seconds = currentSeconds();
+        long days = seconds / SECONDS_PER_DAY;
+        ByteBuffer out = trailer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        out.putInt((int) (seconds % 60));
+        out.putInt((int) (seconds / 60 % 60));
+        out.putInt((int) (seconds / 3600 % 24));
+        out.putInt((int) (days & 0xFF));
+        out.putInt((int) (days >> 8) | (halted ? 0x40 : 0) | (dayCarry ? 0x80 : 0));
+        for (int register : latched) {
+            out.putInt(register);
+        }
+        out.putLong(epochSecond);
+    }
+
+    /**
+     * Picks the clock up from a battery save's trailer. Like the real cartridge it's kept running while the game
+     * was off, so unless it was halted the wall clock time since the save is added on.
+     */
+    public void readTrailer(ByteBuffer trailer, long epochSecond) {
+        if (trailer.remaining() < SHORT_TRAILER_SIZE) {
+            throw new IllegalArgumentException("Clock trailer is " + trailer.remaining() + " bytes, expected "
+                    + TRAILER_SIZE);
+        }
+        ByteBuffer in = trailer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        long second = in.getInt() & 0x3F;
+        long minute = in.getInt() & 0x3F;
+        long hour = in.getInt() & 0x1F;
+        long dayLow = in.getInt() & 0xFF;
+        int dayHigh = in.getInt();
+        for (int i = 0; i < latched.length; i++) {
+            latched[i] = in.getInt() & 0xFF;
+        }
+        long savedAt = in.remaining() >= 8 ? in.getLong() : in.getInt() & 0xFFFFFFFFL;
+
+        long day = (dayHigh & 0x01) << 8 | dayLow;
+        halted = (dayHigh & 0x40) != 0;
+        dayCarry = (dayHigh & 0x80) != 0;
+        latchArmed = false;
+        long offline = halted ? 0 : Math.max(0, epochSecond - savedAt);
+        clockCycles = (((day * 24 + hour) * 60 + minute) * 60 + second + offline) * CYCLES_PER_SECOND;
+        baseCycle = cycleCounter.getAsLong();
+        // a long enough time off sets the day carry
+        currentSeconds();
+    }
+}
@@ -0,0 +1,95 @@
+package com.pat.ppu;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands finished frames from the emulation thread to whatever puts them on screen, through three buffers: the
+ * producer fills its back buffer and swaps it with the middle one, the consumer swaps the middle one with its front
+ * buffer when there's something new in it. Both swaps are a single getAndSet, so neither side ever waits for the
+ * other, and the consumer always gets the newest frame.
+ * One thread publishes and one takes; each counter is only written by its own side.
+ */
+public class FrameExchange {
+
+    // the middle buffer's index, and whether it's been published since it was last taken
+    private static final int INDEX = 0x3;
+    private static final int FRESH = 0x4;
+
+    private final int[][] buffers;
+    private final AtomicInteger middle = new AtomicInteger(1);
+    private int back = 0;  // the producer's
+    private int front = 2; // the consumer's
+
+    private volatile long published;
+    private volatile long dropped;
+    private volatile long taken;
+    private volatile long duplicated;
+
+    public FrameExchange(int size) {
+        buffers = new int[3][size];
+    }
+
+    /**
+     * Copies a finished frame in and makes it the newest. If the last one was never taken it's dropped.
+     * Only from the producing thread.
+     */
+    public void publish(int[] frame) {
+        System.arraycopy(frame, 0, buffers[back], 0, buffers[back].length);
+        int previous = middle.getAndSet(back | FRESH);
+        back = previous & INDEX;
+        if ((previous & FRESH) != 0) {
+            dropped++;
+        }
+        published++;
+    }
+
+    /**
+     * Moves the newest frame to the front if there's been one since last time. Returns false, and leaves the front
+     * as it was, if not; showing it again counts as a duplicate. Only from the consuming thread.
+     */
+    public boolean take() {
+        if ((middle.get() & FRESH) == 0) {
+            duplicated++;
+            return false;
+        }
+        // only publish sets FRESH, so it's still there and this gets the newest frame whatever happened since
+        front = middle.getAndSet(front) & INDEX;
+        taken++;
+        return true;
+    }
+
+    /**
+     * The frame last taken, only from the consuming thread and only until it next calls take.
+     */
+    public int[] getFront() {
+        return buffers[front];
+    }
+
+    /**
+     * Frames published since it was made.
+     */
+    public long getPublished() {
+        return published;
+    }
+
+    /**
+     * Frames replaced by a newer one before they were taken.
+     */
+    public long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * Frames taken to be shown.
+     */
+    public long getTaken() {
+        return taken;
+    }
+
+    /**
+     * Times take found nothing new, so the same frame went up again.
+     */
+    public long getDuplicated() {
+        return duplicated;
+    }
+}
@@ -0,0 +1,105 @@
+package com.pat.ppu;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Both tile maps (0x9800 and 0x9C00) drawn out in full as 256x256 colour indices, so a line of background or window
+ * is one or two System.arraycopy calls out of them. A cell is painted again only when its map entry, the tile it
+ * shows or the tile addressing mode has changed since, and a row of cells isn't even looked at again until something
+ * in VRAM has changed, so a static screen costs a copy per line.
+ */
+public class LayerCache {
+
+    public static final int SIZE = 256;
+    private static final int CELLS = 32 * 32;
+
+    private final ByteBuffer videoRam;
+    private final TileCache tileCache;
+    private final byte[] tilePixels;
+
+    // one 256x256 layer for each map, a row at a time
+    private final byte[][] layers = {new byte[SIZE * SIZE], new byte[SIZE * SIZE]};
+    // what each cell was last painted with: the tile number (-1 to paint it again) and that tile's version
+    private final int[] cellTiles = new int[2 * CELLS];
+    private final int[] cellVersions = new int[2 * CELLS];
+    // bumped for every change that could need a cell painting again, and the value each row of cells was last
+    // checked at
+    private int changes;
+    private final int[] rowsChecked = new int[2 * 32];
+
+    private long cellsPainted;
+
+    public LayerCache(ByteBuffer videoRam, TileCache tileCache) {
+        this.videoRam = videoRam;
+        this.tileCache = tileCache;
+        this.tilePixels = tileCache.getPixels();
+        Arrays.fill(cellTiles, -1);
+        Arrays.fill(rowsChecked, -1);
+    }
+
+    /**
+     * A map entry has changed, offset is from 0x9800.
+     */
+    public void mapChanged(int offset) {
+        cellTiles[offset] = -1;
+        changes++;
+    }
+
+    /**
+     * Tile data has changed, or the addressing mode has, cells showing the tiles involved get painted again.
+     */
+    public void tilesChanged() {
+        changes++;
+    }
+
+    /**
+     * Makes sure line y of a map's layer is up to date, and returns where it starts in getLayer(map).
+     *
+     * @param map           0 for 0x9800, 1 for 0x9C00
+     * @param unsignedTiles LCDC bit 4, map entries count from 0x8000 rather than either side of 0x9000
+     */
+    public int prepareLine(int map, int y, boolean unsignedTiles) {
+        int row = map * 32 + (y >> 3);
+        if (rowsChecked[row] != changes) {
+            checkRow(map, row, unsignedTiles);
+            rowsChecked[row] = changes;
+        }
+        return y * SIZE;
+    }
+
+    private void checkRow(int map, int row, boolean unsignedTiles) {
+        for (int cell = row * 32; cell < row * 32 + 32; cell++) {
+            int entry = videoRam.get(0x1800 + cell) & 0xFF;
+            int tile = unsignedTiles ? entry : 256 + (byte) entry;
+            if (cellTiles[cell] != tile || cellVersions[cell] != tileCache.getVersion(tile)) {
+                paintCell(layers[map], cell - map * CELLS, tile);
+                cellTiles[cell] = tile;
+                cellVersions[cell] = tileCache.getVersion(tile);
+            }
+        }
+    }
+
+    private void paintCell(byte[] layer, int cell, int tile) {
+        int start = (cell >> 5) * 8 * SIZE + (cell & 31) * 8;
+        for (int row = 0; row < 8; row++) {
+            System.arraycopy(tilePixels, tileCache.rowOffset(tile, row), layer, start + row * SIZE, 8);
+        }
+        cellsPainted++;
+    }
+
+    public byte[] getLayer(int map) {
+        return layers[map];
+    }
+
+    /**
+     * Cells painted since the counters were last reset, which is everything that wasn't served from the cache.
+     */
+    public long getCellsPainted() {
+        return cellsPainted;
+    }
+
+    public void resetCounters() {
+        cellsPainted = 0;
+    }
+}
@@ -0,0 +1,470 @@
+package com.pat.ppu;
+
+import com.pat.ClockedDevice;
+import com.pat.Memory;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * The picture processing unit: runs the LCD through modes 2 (OAM scan), 3 (drawing), 0 (HBlank) and 1 (VBlank),
+ * keeps LY and STAT up to date, raises the VBlank and STAT interrupts, and draws each visible line into one
+ * 160x144 ARGB framebuffer as it goes into HBlank.
+ * It doesn't tick: it's told where the CPU has got to between blocks, and before any of its registers are read or
+ * written, and works through the mode changes since in one go. Nothing is allocated once it's running.
+ */
+public class PPU implements ClockedDevice {
+
+    public static final int WIDTH = 160;
+    public static final int HEIGHT = 144;
+
+    public static final int CYCLES_PER_LINE = 456;
+    static final int OAM_SCAN_CYCLES = 80;
+    static final int DRAWING_CYCLES = 172;
+    static final int HBLANK_CYCLES = CYCLES_PER_LINE - OAM_SCAN_CYCLES - DRAWING_CYCLES;
+    static final int LINES = 154;
+
+    public static final int MODE_HBLANK = 0;
+    public static final int MODE_VBLANK = 1;
+    public static final int MODE_OAM_SCAN = 2;
+    public static final int MODE_DRAWING = 3;
+
+    // the four greens of the original screen, lightest first
+    private static final int[] SHADES = {0xFF9BBC0F, 0xFF8BAC0F, 0xFF306230, 0xFF0F380F};
+
+    private static final int VBLANK_INTERRUPT = 0x01;
+    private static final int STAT_INTERRUPT = 0x02;
+
+    private final Memory memory;
+    private final ByteBuffer videoRam;
+    private final ByteBuffer oam;
+    private final TileCache tileCache;
+    private final byte[] tilePixels;
+    private final LayerCache layerCache;
+    private final SpriteLists spriteLists;
+    private final int[] lineSprites;
+
+    // 0xFF40 - 0xFF4B, less 0xFF46 which is Memory's
+    private int lcdc;
+    private int stat; // only the interrupt enables, 0x78, the rest is worked out when it's read
+    private int scrollY;
+    private int scrollX;
+    private int ly;
+    private int lyc;
+    private int bgp;
+    private int obp0;
+    private int obp1;
+    // the palettes as ARGB for each colour index, redone when they're written
+    private final int[] bgColors = new int[4];
+    private final int[] obp0Colors = new int[4];
+    private final int[] obp1Colors = new int[4];
+    private final PaletteMapper paletteMapper = PaletteMapper.create();
+    private int windowY;
+    private int windowX;
+
+    private int mode = MODE_OAM_SCAN;
+    // the cycle the current mode ends on
+    private long nextEvent;
+    // the STAT interrupt fires when this goes from false to true
+    private boolean statLine;
+    // which line of the window is next, it only moves on for lines the window was drawn on
+    private int windowLine;
+    private long frameCount;
+
+    // ARGB, row after row
+    private final int[] framebuffer = new int[WIDTH * HEIGHT];
+    // the current line's background and window colours before the palette, sprites need them for priority
+    private final byte[] lineColors = new byte[WIDTH];
+    private final boolean[] spriteDrawn = new boolean[WIDTH];
+    // where finished frames go, if anything's showing them
+    private FrameExchange frameExchange;
+
+    /**
+     * Takes its registers from whatever memory holds for them now (the post boot values after a reset), so make it
+     * before memory hands them over with attachPpu.
+     */
+    public PPU(Memory memory) {
+        this.memory = memory;
+        this.videoRam = memory.getVideoRam();
+        this.oam = memory.getOam();
+        this.tileCache = new TileCache(videoRam, 1);
+        this.tilePixels = tileCache.getPixels();
+        this.layerCache = new LayerCache(videoRam, tileCache);
+        this.spriteLists = new SpriteLists(oam);
+        this.lineSprites = spriteLists.getSprites();
+        lcdc = memory.readByteFromLocation(0xFF40);
+        stat = memory.readByteFromLocation(0xFF41) & 0x78;
+        scrollY = memory.readByteFromLocation(0xFF42);
+        scrollX = memory.readByteFromLocation(0xFF43);
+        lyc = memory.readByteFromLocation(0xFF45);
+        bgp = memory.readByteFromLocation(0xFF47);
+        obp0 = memory.readByteFromLocation(0xFF48);
+        obp1 = memory.readByteFromLocation(0xFF49);
+        updatePalette(bgColors, bgp);
+        updatePalette(obp0Colors, obp0);
+        updatePalette(obp1Colors, obp1);
+        windowY = memory.readByteFromLocation(0xFF4A);
+        windowX = memory.readByteFromLocation(0xFF4B);
+        if (isLcdOn()) {
+            startFrame(memory.getCycleCount());
+        } else {
+            mode = MODE_HBLANK;
+            nextEvent = Long.MAX_VALUE;
+        }
+    }
+
+    private boolean isLcdOn() {
+        return (lcdc & 0x80) != 0;
+    }
+
+    private void startFrame(long cycle) {
+        ly = 0;
+        windowLine = 0;
+        mode = MODE_OAM_SCAN;
+        nextEvent = cycle + OAM_SCAN_CYCLES;
+        updateStatLine();
+    }
+
+    @Override
+    public long cyclesUntilNextEvent() {
+        if (nextEvent == Long.MAX_VALUE) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(0, nextEvent - memory.getCycleCount());
+    }
+
+    @Override
+    public void catchUp(long cycle) {
+        while (cycle >= nextEvent) {
+            nextMode();
+        }
+    }
+
+    private void nextMode() {
+        switch (mode) {
+            case MODE_OAM_SCAN -> {
+                mode = MODE_DRAWING;
+                nextEvent += DRAWING_CYCLES;
+            }
+            case MODE_DRAWING -> {
+                renderLine(ly);
+                mode = MODE_HBLANK;
+                nextEvent += HBLANK_CYCLES;
+            }
+            case MODE_HBLANK -> {
+                ly++;
+                if (ly == HEIGHT) {
+                    mode = MODE_VBLANK;
+                    nextEvent += CYCLES_PER_LINE;
+                    frameCount++;
+                    publishFrame();
+                    memory.requestInterrupt(VBLANK_INTERRUPT);
+                } else {
+                    mode = MODE_OAM_SCAN;
+                    nextEvent += OAM_SCAN_CYCLES;
+                }
+            }
+            default -> {
+                ly++;
+                if (ly == LINES) {
+                    ly = 0;
+                    windowLine = 0;
+                    mode = MODE_OAM_SCAN;
+                    nextEvent += OAM_SCAN_CYCLES;
+                } else {
+                    nextEvent += CYCLES_PER_LINE;
+                }
+            }
+        }
+        updateStatLine();
+    }
+
+    // the STAT interrupt sources are ORed into one line, so a second source coming on while another is already on
+    // doesn't interrupt again
+    private void updateStatLine() {
+        boolean line = ((stat & 0x40) != 0 && ly == lyc)
+                || ((stat & 0x08) != 0 && mode == MODE_HBLANK)
+                || ((stat & 0x10) != 0 && mode == MODE_VBLANK)
+                || ((stat & 0x20) != 0 && mode == MODE_OAM_SCAN);
+        if (line && !statLine && isLcdOn()) {
+            memory.requestInterrupt(STAT_INTERRUPT);
+        }
+        statLine = line;
+    }
+
+    /**
+     * A read from one of the LCD registers, after catching up to the CPU.
+     */
+    public int readRegister(int location) {
+        catchUp(memory.getCycleCount());
+        return switch (location) {
+            case 0xFF40 -> lcdc;
+            case 0xFF41 -> 0x80 | stat | (ly == lyc && isLcdOn() ? 0x04 : 0) | mode;
+            case 0xFF42 -> scrollY;
+            case 0xFF43 -> scrollX;
+            case 0xFF44 -> ly;
+            case 0xFF45 -> lyc;
+            case 0xFF47 -> bgp;
+            case 0xFF48 -> obp0;
+            case 0xFF49 -> obp1;
+            case 0xFF4A -> windowY;
+            case 0xFF4B -> windowX;
+            default -> 0xFF;
+        };
+    }
+
+    /**
+     * A write to one of the LCD registers. Catches up first, so lines already drawn keep the old value.
+     */
+    public void writeRegister(int location, int value) {
+        long now = memory.getCycleCount();
+        catchUp(now);
+        switch (location) {
+            case 0xFF40 -> writeLcdc(value, now);
+            case 0xFF41 -> {
+                stat = value & 0x78;
+                updateStatLine();
+            }
+            case 0xFF42 -> scrollY = value;
+            case 0xFF43 -> scrollX = value;
+            case 0xFF44 -> {
+                // read only
+            }
+            case 0xFF45 -> {
+                lyc = value;
+                updateStatLine();
+            }
+            case 0xFF47 -> {
+                bgp = value;
+                updatePalette(bgColors, value);
+            }
+            case 0xFF48 -> {
+                obp0 = value;
+                updatePalette(obp0Colors, value);
+            }
+            case 0xFF49 -> {
+                obp1 = value;
+                updatePalette(obp1Colors, value);
+            }
+            case 0xFF4A -> windowY = value;
+            case 0xFF4B -> windowX = value;
+            default -> {
+            }
+        }
+    }
+
+    // a palette register picks a shade for each colour index, two bits each
+    private static void updatePalette(int[] colors, int palette) {
+        for (int color = 0; color < 4; color++) {
+            colors[color] = SHADES[(palette >> (color << 1)) & 0x03];
+        }
+    }
+
+    private void writeLcdc(int value, long now) {
+        boolean wasOn = isLcdOn();
+        if (((lcdc ^ value) & 0x10) != 0) {
+            // every map entry means another tile now
+            layerCache.tilesChanged();
+        }
+        lcdc = value;
+        if (wasOn && !isLcdOn()) {
+            // LY sits at 0 in HBlank until it comes back on, and the screen goes blank
+            ly = 0;
+            mode = MODE_HBLANK;
+            nextEvent = Long.MAX_VALUE;
+            statLine = false;
+            Arrays.fill(framebuffer, SHADES[0]);
+            publishFrame();
+        } else if (!wasOn && isLcdOn()) {
+            startFrame(now);
+        }
+    }
+
+    private void publishFrame() {
+        if (frameExchange != null) {
+            frameExchange.publish(framebuffer);
+        }
+    }
+
+    private void renderLine(int line) {
+        int rowStart = line * WIDTH;
+        if ((lcdc & 0x01) != 0) {
+            renderBackground(line);
+            renderWindow(line);
+        } else {
+            // background and window off, blank underneath the sprites
+            Arrays.fill(lineColors, (byte) 0);
+        }
+        paletteMapper.map(lineColors, 0, bgColors, framebuffer, rowStart, WIDTH);
+        if ((lcdc & 0x02) != 0) {
+            renderSprites(line, rowStart);
+        }
+    }
+
+    private void renderBackground(int line) {
+        int map = (lcdc >> 3) & 1;
+        int y = (scrollY + line) & 0xFF;
+        byte[] layer = layerCache.getLayer(map);
+        int start = layerCache.prepareLine(map, y, (lcdc & 0x10) != 0);
+        // the layer wraps round, so the line is at most two pieces of it
+        int first = Math.min(WIDTH, LayerCache.SIZE - scrollX);
+        System.arraycopy(layer, start + scrollX, lineColors, 0, first);
+        if (first < WIDTH) {
+            System.arraycopy(layer, start, lineColors, first, WIDTH - first);
+        }
+    }
+
+    private void renderWindow(int line) {
+        if ((lcdc & 0x20) == 0 || line < windowY || windowX > WIDTH + 6) {
+            return;
+        }
+        int map = (lcdc >> 6) & 1;
+        int start = layerCache.prepareLine(map, windowLine, (lcdc & 0x10) != 0);
+        // a window hanging off the left edge starts part way into its first tile
+        int screenX = Math.max(0, windowX - 7);
+        int windowStart = screenX - (windowX - 7);
+        System.arraycopy(layerCache.getLayer(map), start + windowStart, lineColors, screenX, WIDTH - screenX);
+        windowLine++;
+    }
+
+    private void renderSprites(int line, int rowStart) {
+        int height = (lcdc & 0x04) != 0 ? 16 : 8;
+
+        int count = spriteLists.prepareLine(line, height);
+        if (count == 0) {
+            return;
+        }
+        int first = line * SpriteLists.SPRITES_PER_LINE;
+
+        Arrays.fill(spriteDrawn, false);
+        for (int i = first; i < first + count; i++) {
+            int entry = lineSprites[i] * 4;
+            int top = (oam.get(entry) & 0xFF) - 16;
+            int left = (oam.get(entry + 1) & 0xFF) - 8;
+            int tile = oam.get(entry + 2) & 0xFF;
+            int attributes = oam.get(entry + 3) & 0xFF;
+
+            int row = line - top;
+            if ((attributes & 0x40) != 0) {
+                row = height - 1 - row;
+            }
+            if (height == 16) {
+                tile &= 0xFE;
+            }
+            int start = tileCache.rowOffset(tile + (row >> 3), row & 7);
+            int[] palette = (attributes & 0x10) != 0 ? obp1Colors : obp0Colors;
+            boolean flipX = (attributes & 0x20) != 0;
+            boolean behindBackground = (attributes & 0x80) != 0;
+
+            for (int pixel = 0; pixel < 8; pixel++) {
+                int x = left + pixel;
+                if (x < 0 || x >= WIDTH || spriteDrawn[x]) {
+                    continue;
+                }
+                int color = tilePixels[start + (flipX ? 7 - pixel : pixel)];
+                if (color == 0) {
+                    // transparent, a sprite further down the list can still show here
+                    continue;
+                }
+                // the first sprite with a pixel here decides, even when it's hidden behind the background
+                spriteDrawn[x] = true;
+                if (behindBackground && lineColors[x] != 0) {
+                    continue;
+                }
+                framebuffer[rowStart + x] = palette[color];
+            }
+        }
+    }
+
+    /**
+     * The screen, 160 x 144 ARGB pixels a row at a time. Lines are drawn into it as the LCD gets to them, so it only
+     * holds one whole frame between VBlank and the start of the next.
+     */
+    public int[] getFramebuffer() {
+        return framebuffer;
+    }
+
+    /**
+     * Publishes each frame to exchange as VBlank starts, and the blank screen when the LCD goes off. From the
+     * emulation thread, before it runs.
+     */
+    public void setFrameExchange(FrameExchange exchange) {
+        this.frameExchange = exchange;
+    }
+
+    /**
+     * The ARGB colour a shade (0 lightest, 3 darkest) is drawn in.
+     */
+    public static int shadeColor(int shade) {
+        return SHADES[shade];
+    }
+
+    /**
+     * Which mapper turns lines into ARGB, scalar or vector.
+     */
+    public String getPaletteMapperName() {
+        return paletteMapper.getName();
+    }
+
+    /**
+     * A write into VRAM, offset from 0x8000. Catches up first so lines already drawn keep what was there, and only
+     * tells the caches when the byte really changes.
+     */
+    public void writeVideoRam(int offset, int value) {
+        catchUp(memory.getCycleCount());
+        if (videoRam.get(offset) == (byte) value) {
+            return;
+        }
+        videoRam.put(offset, (byte) value);
+        if (offset < 0x1800) {
+            tileCache.markDirty(0, offset);
+            layerCache.tilesChanged();
+        } else {
+            layerCache.mapChanged(offset - 0x1800);
+        }
+    }
+
+    /**
+     * OAM is about to be written, by the CPU or a DMA. Catches up first so lines already drawn keep the old sprites.
+     */
+    public void invalidateSprites() {
+        catchUp(memory.getCycleCount());
+        spriteLists.invalidate();
+    }
+
+    /**
+     * Decoded tiles, for tuning.
+     */
+    public TileCache getTileCache() {
+        return tileCache;
+    }
+
+    /**
+     * Background and window layers, for tuning.
+     */
+    public LayerCache getLayerCache() {
+        return layerCache;
+    }
+
+    /**
+     * Sprites on each line, for tuning.
+     */
+    public SpriteLists getSpriteLists() {
+        return spriteLists;
+    }
+
+    /**
+     * Frames finished since power on, counted at the start of each VBlank.
+     */
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    public int getMode() {
+        return mode;
+    }
+
+    public int getLy() {
+        return ly;
+    }
+}
@@ -0,0 +1,43 @@
+package com.pat.ppu;
+
+/**
+ * Turns a line of colour indices (0 - 3) into ARGB through a four colour palette.
+ * There's a plain loop, and one using the incubating Vector API that's picked when the JVM was started with
+ * --add-modules jdk.incubator.vector and has vectors of at least 8 ints; -Djavaboy.vector=false turns it off.
+ */
+public abstract class PaletteMapper {
+
+    /**
+     * The fastest mapper this JVM can run.
+     */
+    public static PaletteMapper create() {
+        PaletteMapper vector = Boolean.parseBoolean(System.getProperty("javaboy.vector", "true")) ? vector() : null;
+        return vector != null ? vector : scalar();
+    }
+
+    public static PaletteMapper scalar() {
+        return new ScalarPaletteMapper();
+    }
+
+    /**
+     * The Vector API mapper, or null when the module isn't there or the hardware would only emulate it.
+     */
+    public static PaletteMapper vector() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return null;
+        }
+        try {
+            return VectorPaletteMapper.isWorthUsing() ? new VectorPaletteMapper() : null;
+        } catch (LinkageError e) {
+            // the module is there but not readable from here
+            return null;
+        }
+    }
+
+    /**
+     * Writes palette[colors[from + i]] to out[offset + i] for each of the length pixels.
+     */
+    public abstract void map(byte[] colors, int from, int[] palette, int[] out, int offset, int length);
+
+    public abstract String getName();
+}
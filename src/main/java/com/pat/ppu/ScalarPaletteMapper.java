@@ -0,0 +1,16 @@
+package com.pat.ppu;
+
+final class ScalarPaletteMapper extends PaletteMapper {
+
+    @Override
+    public void map(byte[] colors, int from, int[] palette, int[] out, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            out[offset + i] = palette[colors[from + i]];
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "scalar";
+    }
+}
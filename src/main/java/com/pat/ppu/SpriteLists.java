@@ -0,0 +1,88 @@
+package com.pat.ppu;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * For each visible line, the (up to ten) sprites the OAM scan would pick, already in the order they win overlaps:
+ * by X, then by OAM index. Built from the whole of OAM in one pass, and only again after OAM has been written (by
+ * the CPU or a DMA) or the sprite size changed, which for most games is once a frame.
+ */
+public class SpriteLists {
+
+    public static final int SPRITES_PER_LINE = 10;
+    private static final int LINES = PPU.HEIGHT;
+
+    private final ByteBuffer oam;
+    // line l's sprites are OAM indexes from l * SPRITES_PER_LINE, counts[l] of them
+    private final int[] sprites = new int[LINES * SPRITES_PER_LINE];
+    private final int[] counts = new int[LINES];
+    private boolean stale = true;
+    private int height;
+
+    private long rebuilds;
+
+    public SpriteLists(ByteBuffer oam) {
+        this.oam = oam;
+    }
+
+    /**
+     * OAM is about to change, the lists are built again before they're next used.
+     */
+    public void invalidate() {
+        stale = true;
+    }
+
+    /**
+     * How many sprites are on line, building every line's list first if they're out of date. The sprites are
+     * getSprites()[line * SPRITES_PER_LINE] onwards.
+     *
+     * @param height 8 or 16, from LCDC bit 2
+     */
+    public int prepareLine(int line, int height) {
+        if (stale || height != this.height) {
+            rebuild(height);
+        }
+        return counts[line];
+    }
+
+    private void rebuild(int height) {
+        Arrays.fill(counts, 0);
+        // in OAM order, so a line fills up with the first ten that are on it
+        for (int index = 0; index < 40; index++) {
+            int top = (oam.get(index * 4) & 0xFF) - 16;
+            int x = oam.get(index * 4 + 1) & 0xFF;
+            int first = Math.max(0, top);
+            int last = Math.min(LINES, top + height);
+            for (int line = first; line < last; line++) {
+                int count = counts[line];
+                if (count == SPRITES_PER_LINE) {
+                    continue;
+                }
+                // sorted by X as it goes in, after any with the same X since those came earlier in OAM
+                int start = line * SPRITES_PER_LINE;
+                int at = start + count;
+                while (at > start && (oam.get(sprites[at - 1] * 4 + 1) & 0xFF) > x) {
+                    sprites[at] = sprites[at - 1];
+                    at--;
+                }
+                sprites[at] = index;
+                counts[line] = count + 1;
+            }
+        }
+        this.height = height;
+        stale = false;
+        rebuilds++;
+    }
+
+    public int[] getSprites() {
+        return sprites;
+    }
+
+    /**
+     * Times the lists have been built, for tuning.
+     */
+    public long getRebuilds() {
+        return rebuilds;
+    }
+}
@@ -0,0 +1,139 @@
+package com.pat.ppu;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Every tile in VRAM (0x8000 - 0x97FF, 384 of them a bank) already decoded to one colour index (0 - 3) per pixel.
+ * Memory marks a row dirty when a write changes one of its two bytes, and the row is decoded again the next time
+ * the PPU draws it, so a tile that doesn't change is decoded once however many frames show it.
+ */
+public class TileCache {
+
+    public static final int TILES_PER_BANK = 384;
+
+    // every pair of bitplane bytes (high << 8 | low) as its eight colour indices, two bits each, leftmost pixel in
+    // the top two bits
+    private static final char[] ROWS = new char[0x10000];
+
+    static {
+        for (int high = 0; high < 0x100; high++) {
+            for (int low = 0; low < 0x100; low++) {
+                int packed = 0;
+                for (int bit = 7; bit >= 0; bit--) {
+                    packed = packed << 2 | ((high >> bit) & 1) << 1 | ((low >> bit) & 1);
+                }
+                ROWS[high << 8 | low] = (char) packed;
+            }
+        }
+    }
+
+    private final ByteBuffer videoRam;
+    private final int rows;
+    // row r of tile t is the 8 bytes from (t * 8 + r) * 8, left to right
+    private final byte[] pixels;
+    private final boolean[] dirty;
+    // bumped whenever any row of the tile is marked dirty, for anything drawn from whole tiles
+    private final int[] versions;
+
+    private long hits;
+    private long redecodes;
+
+    /**
+     * @param videoRam VRAM, one 8kB bank after another
+     * @param banks    1, or 2 on a Color
+     */
+    public TileCache(ByteBuffer videoRam, int banks) {
+        this.videoRam = videoRam;
+        this.rows = TILES_PER_BANK * banks * 8;
+        this.pixels = new byte[rows * 8];
+        this.dirty = new boolean[rows];
+        this.versions = new int[rows / 8];
+        Arrays.fill(dirty, true);
+    }
+
+    /**
+     * A write to offset (from 0x8000) in the given bank has changed a byte of tile data.
+     */
+    public void markDirty(int bank, int offset) {
+        int index = bank * TILES_PER_BANK * 8 + (offset >> 1);
+        dirty[index] = true;
+        versions[index >> 3]++;
+    }
+
+    public int getVersion(int tile) {
+        return versions[tile];
+    }
+
+    public boolean isDirty(int tile, int row) {
+        return dirty[tile * 8 + row];
+    }
+
+    /**
+     * Where row of tile starts in getPixels(), decoding it first if it's changed. Tiles are numbered by address,
+     * 0 at 0x8000 up to 383 at 0x97F0, then the same again for the second bank.
+     */
+    public int rowOffset(int tile, int row) {
+        int index = tile * 8 + row;
+        if (dirty[index]) {
+            decode(index);
+            dirty[index] = false;
+            redecodes++;
+        } else {
+            hits++;
+        }
+        return index * 8;
+    }
+
+    private void decode(int index) {
+        // the row's two bytes sit at the same offset in the bank's 8kB as in the cache's rows
+        int bank = index / (TILES_PER_BANK * 8);
+        int address = bank * 0x2000 + (index - bank * TILES_PER_BANK * 8) * 2;
+        int packed = decodeRow(videoRam.get(address) & 0xFF, videoRam.get(address + 1) & 0xFF);
+        int start = index * 8;
+        for (int pixel = 0; pixel < 8; pixel++) {
+            pixels[start + pixel] = (byte) ((packed >> (14 - pixel * 2)) & 0x03);
+        }
+    }
+
+    /**
+     * The eight colour indices a row's two bytes make, packed two bits each with the leftmost pixel at the top.
+     */
+    public static int decodeRow(int low, int high) {
+        return ROWS[high << 8 | low];
+    }
+
+    /**
+     * The decoded rows, only up to date for rows that have just been through rowOffset.
+     */
+    public byte[] getPixels() {
+        return pixels;
+    }
+
+    /**
+     * Row lookups that found the row already decoded.
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * Row lookups that had to decode the row first.
+     */
+    public long getRedecodes() {
+        return redecodes;
+    }
+
+    /**
+     * Fraction of row lookups that didn't decode anything, 0 before there have been any.
+     */
+    public double getHitRate() {
+        long lookups = hits + redecodes;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    public void resetCounters() {
+        hits = 0;
+        redecodes = 0;
+    }
+}
@@ -0,0 +1,148 @@
+import com.pat.instructions.ALU;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ALU table lookups against working the flags out with comparisons, the way CPU used to.
+ * Run with the JMH runner, e.g. {@code java -cp <test classpath> org.openjdk.jmh.Main ALUBenchmark}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ALUBenchmark {
+
+    private static final int OPERANDS = 4096;
+
+    private final int[] a = new int[OPERANDS];
+    private final int[] b = new int[OPERANDS];
+    private final boolean[] carry = new boolean[OPERANDS];
+    private final boolean[] halfCarry = new boolean[OPERANDS];
+    private final boolean[] subtract = new boolean[OPERANDS];
+
+    @Setup
+    public void setup() {
+        Random random = new Random(0xA1);
+        for (int i = 0; i < OPERANDS; i++) {
+            a[i] = random.nextInt(256);
+            b[i] = random.nextInt(256);
+            carry[i] = random.nextBoolean();
+            halfCarry[i] = random.nextBoolean();
+            subtract[i] = random.nextBoolean();
+        }
+    }
+
+    @Benchmark
+    public int addWithCarry_arithmetic() {
+        int sum = 0;
+        for (int i = 0; i < OPERANDS; i++) {
+            int x = a[i];
+            int y = b[i];
+            int result = x + y + (carry[i] ? 1 : 0);
+            int f = 0;
+            if ((result & 0xFF) == 0) {
+                f |= 0x80;
+            }
+            if (((x ^ y ^ result) & 0x10) != 0) {
+                f |= 0x20;
+            }
+            if (result > 0xFF) {
+                f |= 0x10;
+            }
+            sum += f << 8 | (result & 0xFF);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int addWithCarry_table() {
+        int sum = 0;
+        for (int i = 0; i < OPERANDS; i++) {
+            sum += ALU.add(a[i], b[i], carry[i]);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int subtractWithCarry_arithmetic() {
+        int sum = 0;
+        for (int i = 0; i < OPERANDS; i++) {
+            int x = a[i];
+            int y = b[i];
+            int result = x - y - (carry[i] ? 1 : 0);
+            int f = 0x40;
+            if ((result & 0xFF) == 0) {
+                f |= 0x80;
+            }
+            if (((x ^ y ^ result) & 0x10) != 0) {
+                f |= 0x20;
+            }
+            if (result < 0) {
+                f |= 0x10;
+            }
+            sum += f << 8 | (result & 0xFF);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int subtractWithCarry_table() {
+        int sum = 0;
+        for (int i = 0; i < OPERANDS; i++) {
+            sum += ALU.subtract(a[i], b[i], carry[i]);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int decimalAdjust_arithmetic() {
+        int sum = 0;
+        for (int i = 0; i < OPERANDS; i++) {
+            int x = a[i];
+            int result = x;
+            boolean carryOut = carry[i];
+            if (!subtract[i]) {
+                if (carry[i] || x > 0x99) {
+                    result += 0x60;
+                    carryOut = true;
+                }
+                if (halfCarry[i] || (x & 0x0F) > 0x09) {
+                    result += 0x06;
+                }
+            } else {
+                if (carry[i]) {
+                    result -= 0x60;
+                }
+                if (halfCarry[i]) {
+                    result -= 0x06;
+                }
+            }
+            result &= 0xFF;
+            int f = (result == 0 ? 0x80 : 0) | (subtract[i] ? 0x40 : 0) | (carryOut ? 0x10 : 0);
+            sum += f << 8 | result;
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int decimalAdjust_table() {
+        int sum = 0;
+        for (int i = 0; i < OPERANDS; i++) {
+            sum += ALU.decimalAdjust(a[i], subtract[i], halfCarry[i], carry[i]);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,115 @@
+import com.pat.instructions.ALU;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Checks every entry of the ALU tables against a straightforward nibble by nibble reference.
+ */
+public class ALUTests {
+
+    private static int pack(int result, boolean zero, boolean subtract, boolean halfCarry, boolean carry) {
+        int f = (zero ? 0x80 : 0) | (subtract ? 0x40 : 0) | (halfCarry ? 0x20 : 0) | (carry ? 0x10 : 0);
+        return f << ALU.FLAGS_SHIFT | result;
+    }
+
+    private static String describe(String op, int a, int b, int carry) {
+        return String.format("%s a=0x%02x b=0x%02x carry=%d", op, a, b, carry);
+    }
+
+    @Test
+    public void testAddTable_matchesReference() {
+        for (int carry = 0; carry < 2; carry++) {
+            for (int a = 0; a < 256; a++) {
+                for (int b = 0; b < 256; b++) {
+                    int lowNibble = (a & 0x0F) + (b & 0x0F) + carry;
+                    int highNibble = (a >> 4) + (b >> 4) + (lowNibble >> 4);
+                    int result = (highNibble & 0x0F) << 4 | (lowNibble & 0x0F);
+                    int expected = pack(result, result == 0, false, lowNibble > 0x0F, highNibble > 0x0F);
+
+                    Assert.assertEquals(describe("ADD", a, b, carry), expected, ALU.add(a, b, carry == 1));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSubtractTable_matchesReference() {
+        for (int carry = 0; carry < 2; carry++) {
+            for (int a = 0; a < 256; a++) {
+                for (int b = 0; b < 256; b++) {
+                    int lowNibble = (a & 0x0F) - (b & 0x0F) - carry;
+                    int borrow = lowNibble < 0 ? 1 : 0;
+                    int highNibble = (a >> 4) - (b >> 4) - borrow;
+                    int result = (highNibble & 0x0F) << 4 | (lowNibble & 0x0F);
+                    int expected = pack(result, result == 0, true, lowNibble < 0, highNibble < 0);
+
+                    Assert.assertEquals(describe("SUB", a, b, carry), expected, ALU.subtract(a, b, carry == 1));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testIncrementAndDecrementTables_matchReference() {
+        for (int a = 0; a < 256; a++) {
+            int incremented = a == 0xFF ? 0 : a + 1;
+            Assert.assertEquals(describe("INC", a, 0, 0),
+                    pack(incremented, incremented == 0, false, (a & 0x0F) == 0x0F, false), ALU.increment(a));
+
+            int decremented = a == 0 ? 0xFF : a - 1;
+            Assert.assertEquals(describe("DEC", a, 0, 0),
+                    pack(decremented, decremented == 0, true, (a & 0x0F) == 0, false), ALU.decrement(a));
+        }
+    }
+
+    @Test
+    public void testDecimalAdjustTable_matchesReference() {
+        for (int flags = 0; flags < 8; flags++) {
+            boolean subtract = (flags & 1) != 0;
+            boolean halfCarry = (flags & 2) != 0;
+            boolean carry = (flags & 4) != 0;
+            for (int a = 0; a < 256; a++) {
+                // the if/else form from the Pan Docs
+                int result = a;
+                boolean carryOut = carry;
+                if (!subtract) {
+                    if (carry || a > 0x99) {
+                        result += 0x60;
+                        carryOut = true;
+                    }
+                    if (halfCarry || (a & 0x0F) > 0x09) {
+                        result += 0x06;
+                    }
+                } else {
+                    if (carry) {
+                        result -= 0x60;
+                    }
+                    if (halfCarry) {
+                        result -= 0x06;
+                    }
+                }
+                result &= 0xFF;
+                int expected = pack(result, result == 0, subtract, false, carryOut);
+
+                Assert.assertEquals(describe("DAA", a, flags, 0), expected, ALU.decimalAdjust(a, subtract, halfCarry, carry));
+            }
+        }
+    }
+
+    @Test
+    public void testDecimalAdjust_afterBcdAdd_givesBcdSum() {
+        for (int x = 0; x < 100; x++) {
+            for (int y = 0; y < 100; y++) {
+                int bcdX = (x / 10) << 4 | (x % 10);
+                int bcdY = (y / 10) << 4 | (y % 10);
+                int sum = ALU.add(bcdX, bcdY, false);
+                int f = sum >> ALU.FLAGS_SHIFT;
+                int adjusted = ALU.decimalAdjust(sum & 0xFF, false, (f & 0x20) != 0, (f & 0x10) != 0);
+
+                int total = (x + y) % 100;
+                Assert.assertEquals((total / 10) << 4 | (total % 10), adjusted & 0xFF);
+                Assert.assertEquals(x + y >= 100, ((adjusted >> ALU.FLAGS_SHIFT) & 0x10) != 0);
+            }
+        }
+    }
+}
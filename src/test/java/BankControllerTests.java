@@ -0,0 +1,156 @@
+import com.pat.CPU;
+import com.pat.Emulator;
+import com.pat.Memory;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class BankControllerTests {
+
+    // every bank starts with its own number, so a read at 0x4000 shows which bank is mapped
+    static byte[] markedRom(int cartridgeType, int banks, int ramSize) {
+        byte[] rom = new byte[banks * 0x4000];
+        for (int bank = 0; bank < banks; bank++) {
+            rom[bank * 0x4000] = (byte) bank;
+            rom[bank * 0x4000 + 1] = (byte) (bank >> 8);
+        }
+        rom[0x147] = (byte) cartridgeType;
+        rom[0x149] = (byte) ramSize;
+        return rom;
+    }
+
+    static Memory memoryWithRom(byte[] rom) throws IOException {
+        Path file = Files.createTempFile("bank", ".gb");
+        file.toFile().deleteOnExit();
+        Files.write(file, rom);
+        Memory memory = new Memory();
+        memory.loadRom(file);
+        return memory;
+    }
+
+    private static int bankAt(Memory memory, int location) {
+        return memory.readWordFromLocation(location);
+    }
+
+    @Test
+    public void testMBC1_romBanks() throws IOException {
+        Memory memory = memoryWithRom(markedRom(0x01, 0x40, 0));
+        Assert.assertEquals(Memory.MemoryBankType.MBC1, memory.getMemoryBankType());
+        Assert.assertEquals(1, bankAt(memory, 0x4000));
+
+        memory.writeByteToLocation(0x05, 0x2000);
+        Assert.assertEquals(5, bankAt(memory, 0x4000));
+
+        // 0 reads as 1
+        memory.writeByteToLocation(0x00, 0x2000);
+        Assert.assertEquals(1, bankAt(memory, 0x4000));
+
+        // the 2 bit register is the top of the bank number
+        memory.writeByteToLocation(0x01, 0x4000);
+        memory.writeByteToLocation(0x02, 0x2000);
+        Assert.assertEquals(0x22, bankAt(memory, 0x4000));
+        Assert.assertEquals(0, bankAt(memory, 0x0000));
+
+        // mode 1 moves bank 0 too
+        memory.writeByteToLocation(0x01, 0x6000);
+        Assert.assertEquals(0x20, bankAt(memory, 0x0000));
+        memory.writeByteToLocation(0x00, 0x6000);
+        Assert.assertEquals(0, bankAt(memory, 0x0000));
+    }
+
+    @Test
+    public void testMBC1_ramBanks() throws IOException {
+        Memory memory = memoryWithRom(markedRom(0x03, 0x04, 0x03));
+
+        // disabled until 0x0A goes to 0x0000 - 0x1FFF
+        memory.writeByteToLocation(0x11, 0xA000);
+        Assert.assertEquals(0xFF, memory.readByteFromLocation(0xA000));
+        memory.writeByteToLocation(0x0A, 0x0000);
+        memory.writeByteToLocation(0x11, 0xA000);
+        Assert.assertEquals(0x11, memory.readByteFromLocation(0xA000));
+
+        // RAM banks only switch in mode 1
+        memory.writeByteToLocation(0x02, 0x4000);
+        Assert.assertEquals(0x11, memory.readByteFromLocation(0xA000));
+        memory.writeByteToLocation(0x01, 0x6000);
+        Assert.assertEquals(0x00, memory.readByteFromLocation(0xA000));
+        memory.writeByteToLocation(0x22, 0xA000);
+        memory.writeByteToLocation(0x00, 0x6000);
+        Assert.assertEquals(0x11, memory.readByteFromLocation(0xA000));
+        Assert.assertEquals(0x22, memory.getCartRam().get(0x4000));
+
+        memory.writeByteToLocation(0x00, 0x0000);
+        Assert.assertEquals(0xFF, memory.readByteFromLocation(0xA000));
+    }
+
+    @Test
+    public void testMBC2() throws IOException {
+        Memory memory = memoryWithRom(markedRom(0x06, 0x10, 0));
+        Assert.assertEquals(0x200, memory.getCartRamSize());
+
+        // bit 8 of the address set selects the ROM bank
+        memory.writeByteToLocation(0x07, 0x2100);
+        Assert.assertEquals(7, bankAt(memory, 0x4000));
+        // and clear is RAM enable, which leaves the bank alone
+        memory.writeByteToLocation(0x0A, 0x2000);
+        Assert.assertEquals(7, bankAt(memory, 0x4000));
+
+        // half bytes, echoed every 512 bytes
+        memory.writeByteToLocation(0xAB, 0xA001);
+        Assert.assertEquals(0xFB, memory.readByteFromLocation(0xA001));
+        Assert.assertEquals(0xFB, memory.readByteFromLocation(0xA201));
+    }
+
+    @Test
+    public void testMBC3() throws IOException {
+        Memory memory = memoryWithRom(markedRom(0x13, 0x80, 0x03));
+
+        memory.writeByteToLocation(0x7F, 0x2000);
+        Assert.assertEquals(0x7F, bankAt(memory, 0x4000));
+
+        memory.writeByteToLocation(0x0A, 0x0000);
+        memory.writeByteToLocation(0x03, 0x4000);
+        memory.writeByteToLocation(0x33, 0xA123);
+        Assert.assertEquals(0x33, memory.getCartRam().get(3 * 0x2000 + 0x123));
+
+        // a clock register takes the RAM's place
+        memory.writeByteToLocation(0x08, 0x4000);
+        Assert.assertNotEquals(0x33, memory.readByteFromLocation(0xA123));
+        memory.writeByteToLocation(0x03, 0x4000);
+        Assert.assertEquals(0x33, memory.readByteFromLocation(0xA123));
+    }
+
+    @Test
+    public void testMBC5_nineBitBanks() throws IOException {
+        Memory memory = memoryWithRom(markedRom(0x19, 0x200, 0));
+
+        memory.writeByteToLocation(0x05, 0x2000);
+        memory.writeByteToLocation(0x01, 0x3000);
+        Assert.assertEquals(0x105, bankAt(memory, 0x4000));
+
+        // bank 0 is allowed at 0x4000
+        memory.writeByteToLocation(0x00, 0x2000);
+        memory.writeByteToLocation(0x00, 0x3000);
+        Assert.assertEquals(0, bankAt(memory, 0x4000));
+    }
+
+    @Test
+    public void testBankSwitchingLoop_interpretedAndCompiled() throws IOException {
+        for (boolean jit : new boolean[]{false, true}) {
+            Memory memory = memoryWithRom(BankSwitchBenchmark.buildRom(0x19, 0x100));
+            Emulator emulator = new Emulator(memory);
+            CPU cpu = emulator.getCpu();
+            cpu.setJitEnabled(jit);
+            cpu.forceProgramCounterToPosition(0x0000, false);
+
+            for (int frame = 0; frame < 10; frame++) {
+                emulator.runFrame();
+                // the loop leaves A holding the marker read out of the bank it just selected
+                Assert.assertEquals(memory.getCurrentRomBank(), cpu.readRegister(CPU.A));
+            }
+        }
+    }
+}
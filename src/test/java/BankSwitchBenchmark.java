@@ -0,0 +1,85 @@
+import com.pat.CPU;
+import com.pat.Emulator;
+import com.pat.Memory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Bank switching as fast as a game can do it: a loop in bank 0 that selects a new ROM bank and reads from it,
+ * about 1950 switches per frame.
+ * Not a unit test, run the main method directly.
+ * Arguments: [frames per round] [mbc1|mbc5] [interpreter|jit]
+ */
+public class BankSwitchBenchmark {
+
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int MEASURED_ROUNDS = 5;
+    // INC A, LD (HL),A, LD A,(DE), JP
+    private static final int CYCLES_PER_SWITCH = 4 + 8 + 8 + 16;
+
+    /**
+     * A ROM whose bank 0 loops forever writing A to the bank register and reading the new bank's number back into A.
+     */
+    static byte[] buildRom(int cartridgeType, int banks) {
+        byte[] rom = new byte[banks * 0x4000];
+        int[] code = {
+                0x21, 0x00, 0x20, // LD HL,0x2000, the ROM bank register
+                0x11, 0x00, 0x60, // LD DE,0x6000
+                0x3C,             // INC A
+                0x77,             // LD (HL),A
+                0x1A,             // LD A,(DE)
+                0xC3, 0x06, 0x00  // JP 0x0006
+        };
+        for (int i = 0; i < code.length; i++) {
+            rom[i] = (byte) code[i];
+        }
+        for (int bank = 0; bank < banks; bank++) {
+            rom[bank * 0x4000 + 0x2000] = (byte) bank;
+        }
+        rom[0x147] = (byte) cartridgeType;
+        return rom;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int framesPerRound = args.length > 0 ? Integer.parseInt(args[0]) : 600;
+        boolean mbc1 = args.length > 1 && args[1].equals("mbc1");
+        boolean jit = args.length > 2 && args[2].equals("jit");
+
+        Path file = Files.createTempFile("bankswitch", ".gb");
+        file.toFile().deleteOnExit();
+        Files.write(file, mbc1 ? buildRom(0x01, 0x20) : buildRom(0x19, 0x100));
+
+        Memory memory = new Memory();
+        memory.loadRom(file);
+        Emulator emulator = new Emulator(memory);
+        CPU cpu = emulator.getCpu();
+        cpu.setJitEnabled(jit);
+        cpu.forceProgramCounterToPosition(0x0000, false);
+
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            run(emulator, framesPerRound);
+        }
+
+        double best = 0;
+        for (int round = 0; round < MEASURED_ROUNDS; round++) {
+            best = Math.max(best, run(emulator, framesPerRound));
+        }
+
+        System.err.printf("%s (%s): %.1f frames/sec, %.2f million bank switches/sec (%d per frame, best of %d)%n",
+                mbc1 ? "MBC1" : "MBC5", jit ? "jit" : "interpreter", best,
+                best * CPU.CYCLES_PER_FRAME / CYCLES_PER_SWITCH / 1_000_000,
+                CPU.CYCLES_PER_FRAME / CYCLES_PER_SWITCH, MEASURED_ROUNDS);
+    }
+
+    // frames per second
+    private static double run(Emulator emulator, int frames) {
+        long start = System.nanoTime();
+        for (int frame = 0; frame < frames; frame++) {
+            emulator.runFrame();
+        }
+        long elapsed = System.nanoTime() - start;
+        return frames * 1_000_000_000.0 / elapsed;
+    }
+}
@@ -0,0 +1,120 @@
+import com.pat.CPU;
+import com.pat.Memory;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+
+public class BlockCacheTests {
+
+    @Test
+    public void testBlocks_matchSingleStepping_onTestRom() throws IOException {
+        Memory blockMemory = new Memory();
+        blockMemory.loadTestRom();
+        CPU blocks = new CPU(blockMemory);
+
+        Memory stepMemory = new Memory();
+        stepMemory.loadTestRom();
+        CPU steps = new CPU(stepMemory);
+
+        long blockCycles = 0;
+        long stepCycles = 0;
+        for (int i = 0; i < 20000; i++) {
+            blockCycles += blocks.executeBlock();
+            // a block is made of whole instructions, so single stepping lands on the same boundary
+            while (stepCycles < blockCycles || steps.getPC() != blocks.getPC()) {
+                stepCycles += steps.fetchDecodeExecute();
+            }
+
+            Assert.assertEquals("cycles after block " + i, blockCycles, stepCycles);
+            Assert.assertEquals("AF after block " + i, steps.getAF(), blocks.getAF());
+            Assert.assertEquals("BC after block " + i, steps.getBC(), blocks.getBC());
+            Assert.assertEquals("DE after block " + i, steps.getDE(), blocks.getDE());
+            Assert.assertEquals("HL after block " + i, steps.getHL(), blocks.getHL());
+            Assert.assertEquals("SP after block " + i, steps.getSP(), blocks.getSP());
+        }
+    }
+
+    @Test
+    public void testWriteIntoWorkRam_redecodesBlock() throws IOException {
+        CPU cpu = RomFixture.cpuWithCode(new int[0x100]);
+        Memory memory = cpu.getMemory();
+        memory.writeByteToLocation(0x3E, 0xC000); // LD A,0x11
+        memory.writeByteToLocation(0x11, 0xC001);
+        memory.writeByteToLocation(0x76, 0xC002); // HALT
+
+        cpu.forceProgramCounterToPosition(0xC000, false);
+        cpu.executeBlock();
+        Assert.assertEquals(0x11, cpu.readRegister(CPU.A));
+
+        memory.writeByteToLocation(0x22, 0xC001);
+        cpu.forceProgramCounterToPosition(0xC000, false);
+        cpu.executeBlock();
+        Assert.assertEquals(0x22, cpu.readRegister(CPU.A));
+    }
+
+    @Test
+    public void testBlockWritingOverItsOwnCode_seesTheNewOperand() throws IOException {
+        CPU cpu = RomFixture.cpuWithCode(new int[0x100]);
+        Memory memory = cpu.getMemory();
+        int[] code = {
+                0x21, 0x06, 0xC0, // LD HL,0xC006
+                0x36, 0x22,       // LD (HL),0x22 - patches the operand of the next instruction
+                0x3E, 0x11,       // LD A,0x11
+                0x76,             // HALT
+        };
+        for (int i = 0; i < code.length; i++) {
+            memory.writeByteToLocation(code[i], 0xC000 + i);
+        }
+
+        cpu.forceProgramCounterToPosition(0xC000, false);
+        // the block is decoded with the old operand, stops after the patch, then the rest is decoded again
+        cpu.executeBlock();
+        cpu.executeBlock();
+
+        Assert.assertEquals(0x22, cpu.readRegister(CPU.A));
+        Assert.assertEquals(0xC008, cpu.getPC());
+    }
+
+    @Test
+    public void testRomBankSwitch_runsTheOtherBanksBlock() throws IOException {
+        int[] rom = new int[0xC000];
+        // bank 1: LD A,0x11 / HALT
+        rom[0x4000] = 0x3E;
+        rom[0x4001] = 0x11;
+        rom[0x4002] = 0x76;
+        // bank 2: LD A,0x22 / HALT
+        rom[0x8000] = 0x3E;
+        rom[0x8001] = 0x22;
+        rom[0x8002] = 0x76;
+        CPU cpu = RomFixture.cpuWithCode(rom);
+        Memory memory = cpu.getMemory();
+
+        int[] expected = {0x11, 0x22, 0x11};
+        int[] banks = {1, 2, 1};
+        for (int i = 0; i < banks.length; i++) {
+            memory.setCurrentRomBank(banks[i]);
+            cpu.forceProgramCounterToPosition(0x4000, false);
+            cpu.executeBlock();
+            Assert.assertEquals("bank " + banks[i], expected[i], cpu.readRegister(CPU.A));
+        }
+    }
+
+    @Test
+    public void testBreakpoint_fallsBackToSingleStep() throws IOException {
+        int[] rom = new int[0x100];
+        rom[0x00] = 0x3C; // INC A
+        rom[0x01] = 0x3C; // INC A
+        rom[0x02] = 0x3C; // INC A
+        rom[0x03] = 0x76; // HALT
+        CPU cpu = RomFixture.cpuWithCode(rom);
+
+        cpu.addBreakpoint(0x02);
+        cpu.executeBlock();
+        Assert.assertEquals(0x01, cpu.getPC());
+
+        cpu.removeBreakpoint(0x02);
+        cpu.executeBlock();
+        Assert.assertEquals(0x04, cpu.getPC());
+    }
+}
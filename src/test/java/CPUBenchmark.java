@@ -0,0 +1,54 @@
+import com.pat.CPU;
+import com.pat.Emulator;
+
+import java.io.IOException;
+
+/**
+ * Rough emulated cycles/sec number for the interpreter running cpu_instrs.gb.
+ * Not a unit test, run the main method directly.
+ * Arguments: [cycles per round] [step|block|jit], single stepping is the default.
+ * block and jit go through Emulator.runCycles, jit with the compiler turned on.
+ */
+public class CPUBenchmark {
+
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int MEASURED_ROUNDS = 5;
+
+    public static void main(String[] args) throws IOException {
+        long cyclesPerRound = args.length > 0 ? Long.parseLong(args[0]) : 50_000_000L;
+        String mode = args.length > 1 ? args[1] : "step";
+
+        Emulator emulator = new Emulator();
+        emulator.getMemory().loadTestRom();
+        CPU cpu = emulator.getCpu();
+        cpu.setJitEnabled(mode.equals("jit"));
+
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            run(emulator, cyclesPerRound, mode);
+        }
+
+        double best = 0;
+        for (int round = 0; round < MEASURED_ROUNDS; round++) {
+            best = Math.max(best, run(emulator, cyclesPerRound, mode));
+        }
+
+        System.err.printf("cpu_instrs.gb (%s): %.2f million cycles/sec (best of %d, %d blocks compiled)%n",
+                mode, best / 1_000_000, MEASURED_ROUNDS, cpu.getCompiledBlockCount());
+    }
+
+    private static double run(Emulator emulator, long cyclesToRun, String mode) {
+        long cycles = 0;
+        long start = System.nanoTime();
+        if (mode.equals("step")) {
+            CPU cpu = emulator.getCpu();
+            while (cycles < cyclesToRun) {
+                cycles += cpu.fetchDecodeExecute();
+            }
+        } else {
+            cycles = emulator.runCycles(cyclesToRun);
+        }
+        long elapsed = System.nanoTime() - start;
+
+        return cycles * 1_000_000_000.0 / elapsed;
+    }
+}
@@ -0,0 +1,108 @@
+import com.pat.CPU;
+import com.pat.Flags;
+import com.pat.Memory;
+import com.pat.Register;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class CPUConcurrencyTests {
+
+    private static final int INSTANCES = 200;
+    private static final int THREADS = 16;
+
+    /**
+     * Each instance loads its own seed into A, then runs a different number of INC A / INC B.
+     * If any state were shared between CPUs the registers would end up mixed together.
+     */
+    private static int[] buildRom(int seed, int increments) {
+        int[] rom = new int[0x200];
+        rom[0x00] = 0x3E; // LD A,n
+        rom[0x01] = seed;
+        for (int i = 0; i < increments; i++) {
+            rom[0x02 + i * 2] = 0x3C; // INC A
+            rom[0x03 + i * 2] = 0x04; // INC B
+        }
+        return rom;
+    }
+
+    private static int incrementsFor(int instance) {
+        return 20 + instance % 37;
+    }
+
+    @Test
+    public void testManyInstances_steppedInParallel_keepTheirOwnState() throws Exception {
+        List<CPU> cpus = new ArrayList<>();
+        for (int i = 0; i < INSTANCES; i++) {
+            Memory memory = new Memory();
+            memory.loadTestRomByteArray(buildRom(i & 0xFF, incrementsFor(i)));
+            CPU cpu = new CPU(memory);
+            cpu.forceProgramCounterToPosition(0x00, false);
+            cpus.add(cpu);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> results = new ArrayList<>();
+        for (int i = 0; i < INSTANCES; i++) {
+            CPU cpu = cpus.get(i);
+            int steps = 1 + incrementsFor(i) * 2;
+            results.add(executor.submit(() -> {
+                start.await();
+                for (int step = 0; step < steps; step++) {
+                    cpu.fetchDecodeExecute();
+                    // give the other instances a chance to interleave with this one
+                    Thread.yield();
+                }
+                return null;
+            }));
+        }
+
+        start.countDown();
+        for (Future<?> result : results) {
+            result.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        for (int i = 0; i < INSTANCES; i++) {
+            CPU cpu = cpus.get(i);
+            int increments = incrementsFor(i);
+            Register.RegisterHash registers = cpu.sampleRegisters();
+
+            Assert.assertEquals("A of instance " + i, ((i & 0xFF) + increments) & 0xFF, registers.AF.getHi());
+            Assert.assertEquals("B of instance " + i, increments, registers.BC.getHi());
+            Assert.assertEquals("PC of instance " + i, 0x02 + increments * 2, cpu.getPC());
+        }
+    }
+
+    @Test
+    public void testTwoInstances_doNotShareRegistersOrFlags() throws IOException {
+        Memory firstMemory = new Memory();
+        firstMemory.loadTestRomByteArray(buildRom(0x11, 1));
+        CPU first = new CPU(firstMemory);
+
+        Memory secondMemory = new Memory();
+        secondMemory.loadTestRomByteArray(buildRom(0x22, 1));
+        CPU second = new CPU(secondMemory);
+
+        first.forceProgramCounterToPosition(0x00, true);
+        second.forceProgramCounterToPosition(0x00, true);
+
+        Assert.assertEquals(0x11, first.sampleRegisters().AF.getHi());
+        Assert.assertEquals(0x22, second.sampleRegisters().AF.getHi());
+        Assert.assertNotSame(first.sampleRegisters().AF, second.sampleRegisters().AF);
+
+        first.getFlags().set(Flags.Flag.CARRY, true);
+        second.getFlags().set(Flags.Flag.CARRY, false);
+        Assert.assertTrue(first.getFlags().isSet(Flags.Flag.CARRY));
+        Assert.assertFalse(second.getFlags().isSet(Flags.Flag.CARRY));
+    }
+}
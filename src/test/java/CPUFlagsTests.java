@@ -0,0 +1,92 @@
+import com.pat.CPU;
+import com.pat.Flags;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+
+public class CPUFlagsTests {
+
+    private static CPU runProgram(int[] program) throws IOException {
+        CPU cpu = RomFixture.cpuWithCode(program);
+        while (cpu.getPC() < program.length) {
+            cpu.fetchDecodeExecute();
+        }
+        return cpu;
+    }
+
+    private static void assertFlags(CPU cpu, boolean zero, boolean subtract, boolean halfCarry, boolean carry) {
+        Flags flags = cpu.getFlags();
+        Assert.assertEquals("Z", zero, flags.isSet(Flags.Flag.ZERO));
+        Assert.assertEquals("N", subtract, flags.isSet(Flags.Flag.SUBTRACT));
+        Assert.assertEquals("H", halfCarry, flags.isSet(Flags.Flag.HALF_CARRY));
+        Assert.assertEquals("C", carry, flags.isSet(Flags.Flag.CARRY));
+    }
+
+    @Test
+    public void testSubtract_setsAllFlagsFromOperands() throws IOException {
+        // LD A,0x10 / SUB 0x20
+        CPU cpu = runProgram(new int[]{0x3E, 0x10, 0xD6, 0x20});
+
+        Assert.assertEquals(0xF0, cpu.readRegister(CPU.A));
+        assertFlags(cpu, false, true, false, true);
+        Assert.assertEquals(0xF050, cpu.getAF());
+    }
+
+    @Test
+    public void testSubtractWithCarry_immediate_borrowsCarryIn() throws IOException {
+        // LD A,0x10 / SCF / SBC A,0x05
+        CPU cpu = runProgram(new int[]{0x3E, 0x10, 0x37, 0xDE, 0x05});
+
+        Assert.assertEquals(0x0A, cpu.readRegister(CPU.A));
+        assertFlags(cpu, false, true, true, false);
+    }
+
+    @Test
+    public void testCompare_equalValues_setsZero() throws IOException {
+        // LD A,0x3C / CP 0x3C
+        CPU cpu = runProgram(new int[]{0x3E, 0x3C, 0xFE, 0x3C});
+
+        assertFlags(cpu, true, true, false, false);
+    }
+
+    @Test
+    public void testIncrement_keepsCarryFromEarlierAdd() throws IOException {
+        // LD A,0xFF / ADD A,0x01 / INC A
+        CPU cpu = runProgram(new int[]{0x3E, 0xFF, 0xC6, 0x01, 0x3C});
+
+        Assert.assertEquals(0x01, cpu.readRegister(CPU.A));
+        Assert.assertTrue(cpu.getFlags().isSet(Flags.Flag.CARRY));
+        Assert.assertFalse(cpu.getFlags().isSet(Flags.Flag.ZERO));
+    }
+
+    @Test
+    public void testAddIntoHL_leavesZeroAlone() throws IOException {
+        // XOR A / LD HL,0x0FFF / LD BC,0x0001 / ADD HL,BC
+        CPU cpu = runProgram(new int[]{0xAF, 0x21, 0xFF, 0x0F, 0x01, 0x01, 0x00, 0x09});
+
+        Assert.assertEquals(0x1000, cpu.getHL());
+        assertFlags(cpu, true, false, true, false);
+    }
+
+    @Test
+    public void testSetAF_overwritesPendingFlags() throws IOException {
+        // XOR A
+        CPU cpu = runProgram(new int[]{0xAF});
+        cpu.setAF(0x1230);
+
+        assertFlags(cpu, false, false, true, true);
+        Assert.assertEquals(0x1230, cpu.sampleRegisters().AF.getReg());
+    }
+
+    @Test
+    public void testRegisterHash_AFView_seesLazyFlags() throws IOException {
+        // XOR A
+        CPU cpu = runProgram(new int[]{0xAF});
+
+        Assert.assertEquals(0x0080, cpu.sampleRegisters().AF.getReg());
+
+        cpu.sampleRegisters().AF.setLo(0x10);
+        assertFlags(cpu, false, false, false, true);
+    }
+}
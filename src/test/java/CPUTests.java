@@ -66,7 +66,7 @@ public class CPUTests {
         memory.loadTestRom();
 
         // Test memory was loaded right. 0x00 will be 60
-        Assert.assertEquals(60, memory.generalMemory[0x00]);
+        Assert.assertEquals(60, memory.readByteFromLocation(0x00));
 
         int cycles;
 
@@ -123,13 +123,13 @@ public class CPUTests {
         memory.writeByteToLocation(0xFF, 0x80BB);
 
         // test memory was set
-        Assert.assertEquals(0xFF, memory.generalMemory[0x80BB]);
+        Assert.assertEquals(0xFF, memory.readByteFromLocation(0x80BB));
 
         // run 0x06, load reg B into memory location at PC
         cpu.forceProgramCounterToPosition(0x01, true);
 
         // test that the load worked, and set it back to reg b (which is 0x00)
-        Assert.assertEquals(0x00, memory.generalMemory[0xBB]);
+        Assert.assertEquals(0x00, memory.readByteFromLocation(0xBB));
     }
 
 
@@ -300,4 +300,70 @@ public class CPUTests {
 
 
 
+
+    @Test
+    public void testPushPop_roundTripThroughTheStack() throws IOException {
+        // LD BC,0x1234 / PUSH BC / POP DE
+        CPU cpu = RomFixture.cpuWithCode(new int[]{0x01, 0x34, 0x12, 0xC5, 0xD1});
+        Memory memory = cpu.getMemory();
+        cpu.setSP(0xC010);
+        cpu.fetchDecodeExecute();
+        cpu.fetchDecodeExecute();
+        Assert.assertEquals(0xC00E, cpu.getSP());
+        Assert.assertEquals(0x12, memory.readByteFromLocation(0xC00F));
+        Assert.assertEquals(0x34, memory.readByteFromLocation(0xC00E));
+
+        cpu.fetchDecodeExecute();
+        Assert.assertEquals(0x1234, cpu.getDE());
+        Assert.assertEquals(0xC010, cpu.getSP());
+    }
+
+    @Test
+    public void testUnimplementedOpcodes_countedAndSkipped() throws IOException {
+        // illegal 0xD3 / STOP 0x01 / STOP 0x00 / NOP
+        CPU cpu = RomFixture.cpuWithCode(new int[]{0xD3, 0x10, 0x01, 0x10, 0x00, 0x00});
+        cpu.fetchDecodeExecute();
+        Assert.assertEquals(1, cpu.getUnimplementedOpcodeCount());
+        Assert.assertEquals(0x01, cpu.getPC());
+
+        cpu.fetchDecodeExecute();
+        cpu.fetchDecodeExecute();
+        Assert.assertEquals(2, cpu.getUnimplementedOpcodeCount());
+        Assert.assertEquals(0x05, cpu.getPC());
+    }
+
+    @Test
+    public void testInterrupt_dispatchedToItsVector() throws IOException {
+        int[] rom = new int[0x8000];
+        rom[0x40] = 0xD9; // RETI
+        rom[0x100] = 0xFB; // EI
+        rom[0x101] = 0x00; // NOP
+        rom[0x102] = 0xC3; // JP 0x0101
+        rom[0x103] = 0x01;
+        rom[0x104] = 0x01;
+        CPU cpu = RomFixture.cpuWithCode(rom);
+        Memory memory = cpu.getMemory();
+        cpu.forceProgramCounterToPosition(0x100, false);
+        memory.writeByteToLocation(0x05, 0xFFFF);
+        // VBlank and the timer together, VBlank goes first
+        memory.requestInterrupt(0x05);
+        Assert.assertFalse(cpu.isInterruptPending());
+
+        cpu.executeBlock();
+        Assert.assertTrue(cpu.isInterruptPending());
+        cpu.executeBlock();
+        Assert.assertEquals(0x40, cpu.getPC());
+        Assert.assertEquals(0x04, memory.readByteFromLocation(0xFF0F) & 0x1F);
+        Assert.assertEquals(0x101, memory.readWordFromLocation(cpu.getSP()));
+        // IME is off until the RETI, so the timer waits
+        Assert.assertFalse(cpu.isInterruptPending());
+
+        cpu.executeBlock();
+        Assert.assertEquals(0x101, cpu.getPC());
+        Assert.assertEquals(0xFFFE, cpu.getSP());
+        Assert.assertTrue(cpu.isInterruptPending());
+        cpu.executeBlock();
+        Assert.assertEquals(0x50, cpu.getPC());
+        Assert.assertEquals(0, memory.readByteFromLocation(0xFF0F) & 0x1F);
+    }
 }
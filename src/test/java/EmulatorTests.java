@@ -0,0 +1,90 @@
+import com.pat.CPU;
+import com.pat.Emulator;
+import com.pat.RomCache;
+import com.pat.RomImage;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+
+public class EmulatorTests {
+
+    @Test
+    public void testRunCycles_returnsExactlyWhatRan() throws IOException {
+        try (Emulator emulator = new Emulator()) {
+            emulator.getMemory().loadTestRom();
+
+            long total = 0;
+            for (int i = 0; i < 100; i++) {
+                long ran = emulator.runCycles(1000);
+                Assert.assertTrue(ran >= 1000);
+                total += ran;
+                Assert.assertEquals(total, emulator.getCycleCount());
+                Assert.assertEquals(Emulator.StopReason.BUDGET, emulator.getStopReason());
+            }
+        }
+    }
+
+    @Test
+    public void testRunFrame_keepsToFrameBoundaries() throws IOException {
+        try (Emulator emulator = new Emulator()) {
+            emulator.getMemory().loadTestRom();
+
+            for (int frame = 1; frame <= 10; frame++) {
+                emulator.runFrame();
+                long count = emulator.getCycleCount();
+                // a run only ever goes over by part of a block, never into the frame after
+                Assert.assertTrue(count >= (long) frame * CPU.CYCLES_PER_FRAME);
+                Assert.assertTrue(count < (long) frame * CPU.CYCLES_PER_FRAME + 100);
+            }
+        }
+    }
+
+    @Test
+    public void testRunCycles_doesNotFastForwardPastTheBudget() throws IOException {
+        // LD A,(BC) / AND A / JP Z,0x0000 on an empty WRAM byte spins until the end of the frame
+        try (Emulator emulator = RomFixture.emulatorWithCode(new int[]{0x0A, 0xA7, 0xCA, 0x00, 0x00})) {
+            emulator.getCpu().setBC(0xC000);
+
+            long ran = emulator.runCycles(1000);
+            Assert.assertTrue(ran >= 1000);
+            Assert.assertTrue(ran < 1000 + 24);
+            Assert.assertTrue(emulator.getCpu().getIdleCyclesTotal() > 0);
+
+            Assert.assertEquals(CPU.CYCLES_PER_FRAME - ran, emulator.runFrame());
+        }
+    }
+
+    @Test
+    public void testRunCycles_stopsOnBreakpoint() throws IOException {
+        // INC A until 0x0004, where the breakpoint is
+        try (Emulator emulator = RomFixture.emulatorWithCode(new int[]{0x3C, 0x3C, 0x3C, 0x3C, 0x3C, 0x3C})) {
+            emulator.getCpu().addBreakpoint(0x0004);
+
+            Assert.assertEquals(16, emulator.runCycles(CPU.CYCLES_PER_FRAME));
+            Assert.assertEquals(Emulator.StopReason.BREAKPOINT, emulator.getStopReason());
+            Assert.assertEquals(0x0004, emulator.getCpu().getPC());
+        }
+    }
+
+    @Test
+    public void testRequestStop_endsTheNextRunAfterOneBlock() throws IOException {
+        try (Emulator emulator = RomFixture.emulatorWithCode(new int[]{0x3C, 0x76})) {
+            emulator.requestStop();
+
+            Assert.assertEquals(8, emulator.runCycles(CPU.CYCLES_PER_FRAME));
+            Assert.assertEquals(Emulator.StopReason.STOP_REQUESTED, emulator.getStopReason());
+            Assert.assertTrue(emulator.runCycles(100) >= 100);
+        }
+    }
+
+    @Test
+    public void testClose_releasesTheRom() throws IOException {
+        RomImage image;
+        try (Emulator emulator = RomFixture.emulatorWithCode(new int[]{0x3C, 0x3C, 0x3C, 0x44, 0x55})) {
+            image = emulator.getMemory().getRom();
+            Assert.assertEquals(1, RomCache.shared().getReferenceCount(image));
+        }
+        Assert.assertEquals(0, RomCache.shared().getReferenceCount(image));
+    }
+}
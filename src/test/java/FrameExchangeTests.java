@@ -0,0 +1,83 @@
+import com.pat.ppu.FrameExchange;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+public class FrameExchangeTests {
+
+    private static final int SIZE = 160 * 144;
+
+    private static int[] frame(int value) {
+        int[] frame = new int[SIZE];
+        Arrays.fill(frame, value);
+        return frame;
+    }
+
+    @Test
+    public void testTake_newestFrame() {
+        FrameExchange frames = new FrameExchange(SIZE);
+        Assert.assertFalse(frames.take());
+        Assert.assertEquals(1, frames.getDuplicated());
+
+        frames.publish(frame(1));
+        Assert.assertTrue(frames.take());
+        Assert.assertEquals(1, frames.getFront()[0]);
+
+        // two before the next take: the first is dropped, the second is shown
+        frames.publish(frame(2));
+        frames.publish(frame(3));
+        Assert.assertTrue(frames.take());
+        Assert.assertEquals(3, frames.getFront()[SIZE - 1]);
+        Assert.assertEquals(1, frames.getDropped());
+
+        // nothing new, the front stays as it was
+        Assert.assertFalse(frames.take());
+        Assert.assertEquals(3, frames.getFront()[0]);
+        Assert.assertEquals(2, frames.getDuplicated());
+        Assert.assertEquals(3, frames.getPublished());
+        Assert.assertEquals(2, frames.getTaken());
+    }
+
+    @Test
+    public void testPublish_copiesSoTheSourceCanBeReused() {
+        FrameExchange frames = new FrameExchange(SIZE);
+        int[] source = frame(7);
+        frames.publish(source);
+        Arrays.fill(source, 8);
+        frames.take();
+        Assert.assertEquals(7, frames.getFront()[0]);
+    }
+
+    @Test
+    public void testThreads_framesWholeAndInOrder() throws InterruptedException {
+        FrameExchange frames = new FrameExchange(SIZE);
+        int count = 2000;
+        Thread producer = new Thread(() -> {
+            int[] source = new int[SIZE];
+            for (int i = 1; i <= count; i++) {
+                Arrays.fill(source, i);
+                frames.publish(source);
+            }
+        });
+        producer.start();
+
+        int last = 0;
+        while (producer.isAlive() || last < count) {
+            if (!frames.take()) {
+                continue;
+            }
+            int[] front = frames.getFront();
+            int value = front[0];
+            // a frame that was still being written into would have more than one value in it
+            Assert.assertEquals(value, front[SIZE / 2]);
+            Assert.assertEquals(value, front[SIZE - 1]);
+            Assert.assertTrue(value > last);
+            last = value;
+        }
+        producer.join();
+
+        Assert.assertEquals(count, frames.getPublished());
+        Assert.assertEquals(count, frames.getTaken() + frames.getDropped());
+    }
+}
@@ -0,0 +1,69 @@
+import com.pat.FramePresenter;
+import com.pat.ppu.PPU;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+public class FramePresenterTests {
+
+    private static final int PANEL = 512;
+    private static final int LIGHT = 0xFF9BBC0F;
+    private static final int DARK = 0xFF0F380F;
+
+    // dark in the top left Game Boy pixel, light everywhere else
+    private static int[] frame() {
+        int[] framebuffer = new int[PPU.WIDTH * PPU.HEIGHT];
+        Arrays.fill(framebuffer, LIGHT);
+        framebuffer[0] = DARK;
+        return framebuffer;
+    }
+
+    private static BufferedImage present(FramePresenter presenter) {
+        BufferedImage panel = new BufferedImage(PANEL, PANEL, BufferedImage.TYPE_INT_RGB);
+        Graphics g = panel.getGraphics();
+        presenter.update(frame());
+        presenter.draw(g, PANEL, PANEL);
+        g.dispose();
+        return panel;
+    }
+
+    private static int rgb(BufferedImage image, int x, int y) {
+        return image.getRGB(x, y) & 0xFFFFFF;
+    }
+
+    @Test
+    public void testUpdate_copiesIntoImage() {
+        FramePresenter presenter = new FramePresenter(false);
+        presenter.update(frame());
+        Assert.assertEquals(DARK & 0xFFFFFF, rgb(presenter.getImage(), 0, 0));
+        Assert.assertEquals(LIGHT & 0xFFFFFF, rgb(presenter.getImage(), 1, 0));
+        Assert.assertEquals(LIGHT & 0xFFFFFF, rgb(presenter.getImage(), PPU.WIDTH - 1, PPU.HEIGHT - 1));
+    }
+
+    @Test
+    public void testDraw_stretchesOverPanel() {
+        BufferedImage panel = present(new FramePresenter(false));
+        // 512/160 and 512/144 aren't whole, but the first Game Boy pixel is at least 3 panel pixels each way
+        Assert.assertEquals(DARK & 0xFFFFFF, rgb(panel, 0, 0));
+        Assert.assertEquals(DARK & 0xFFFFFF, rgb(panel, 2, 2));
+        Assert.assertEquals(LIGHT & 0xFFFFFF, rgb(panel, 4, 4));
+        Assert.assertEquals(LIGHT & 0xFFFFFF, rgb(panel, PANEL - 1, PANEL - 1));
+    }
+
+    @Test
+    public void testDraw_integerScaleCentresOnBlack() {
+        BufferedImage panel = present(new FramePresenter(true));
+        // 3x fits, 480x432 leaves 16 either side and 40 above and below
+        Assert.assertEquals(0, rgb(panel, 15, 40));
+        Assert.assertEquals(0, rgb(panel, 16, 39));
+        Assert.assertEquals(DARK & 0xFFFFFF, rgb(panel, 16, 40));
+        Assert.assertEquals(DARK & 0xFFFFFF, rgb(panel, 18, 42));
+        Assert.assertEquals(LIGHT & 0xFFFFFF, rgb(panel, 19, 42));
+        Assert.assertEquals(LIGHT & 0xFFFFFF, rgb(panel, 16 + 479, 40 + 431));
+        Assert.assertEquals(0, rgb(panel, 16 + 480, 40 + 431));
+        Assert.assertEquals(0, rgb(panel, 16 + 479, 40 + 432));
+    }
+}
@@ -0,0 +1,90 @@
+import com.pat.CPU;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+
+public class IdleLoopTests {
+
+    // waits for the byte at BC to go non zero: LD A,(BC) / AND A / JP Z,0x0000, 24 cycles a time round
+    private static final int[] WAIT_FOR_FLAG = {0x0A, 0xA7, 0xCA, 0x00, 0x00, 0x76};
+    private static final int ITERATION_CYCLES = 24;
+
+    // with BC pointing at the flag the loops wait on
+    private static CPU cpuWithRom(int[] code) throws IOException {
+        CPU cpu = RomFixture.cpuWithCode(code);
+        cpu.setBC(0xC000);
+        return cpu;
+    }
+
+    @Test
+    public void testPollingLoop_skipsToTheEndOfTheFrame() throws IOException {
+        CPU cpu = cpuWithRom(WAIT_FOR_FLAG);
+
+        // the first time round loads A, the second one finds nothing changed and skips the rest of the frame
+        Assert.assertEquals(ITERATION_CYCLES, cpu.executeBlock());
+        Assert.assertEquals(CPU.CYCLES_PER_FRAME - ITERATION_CYCLES, cpu.executeBlock());
+        Assert.assertEquals(CPU.CYCLES_PER_FRAME, cpu.getCycleCount());
+        Assert.assertEquals(CPU.CYCLES_PER_FRAME - 2 * ITERATION_CYCLES, cpu.getIdleCyclesLastFrame());
+        Assert.assertEquals(0x0000, cpu.getPC());
+    }
+
+    @Test
+    public void testPollingLoop_matchesStepping() throws IOException {
+        CPU skipping = cpuWithRom(WAIT_FOR_FLAG);
+        CPU stepping = cpuWithRom(WAIT_FOR_FLAG);
+        stepping.setIdleLoopSkipping(false);
+
+        while (skipping.getCycleCount() < 3 * CPU.CYCLES_PER_FRAME) {
+            skipping.executeBlock();
+        }
+        while (stepping.getCycleCount() < skipping.getCycleCount()) {
+            stepping.executeBlock();
+        }
+
+        Assert.assertEquals(skipping.getCycleCount(), stepping.getCycleCount());
+        Assert.assertEquals(stepping.getAF(), skipping.getAF());
+        Assert.assertEquals(stepping.getPC(), skipping.getPC());
+        Assert.assertEquals(0, stepping.getIdleCyclesTotal());
+    }
+
+    @Test
+    public void testPollingLoop_stopsBeforeTheNextDeviceEvent() throws IOException {
+        CPU cpu = cpuWithRom(WAIT_FOR_FLAG);
+        cpu.getMemory().addClockedDevice(() -> 1000);
+
+        cpu.executeBlock();
+        int cycles = cpu.executeBlock();
+        Assert.assertTrue(cycles <= 1000);
+        Assert.assertTrue(cycles > 1000 - ITERATION_CYCLES);
+        Assert.assertEquals(0, cycles % ITERATION_CYCLES);
+
+        // the device sets the flag and the loop falls through to the HALT
+        cpu.getMemory().writeByteToLocation(0x01, 0xC000);
+        cpu.executeBlock();
+        Assert.assertEquals(0x0005, cpu.getPC());
+    }
+
+    @Test
+    public void testCountingLoop_isNotSkipped() throws IOException {
+        // LD B,0x10 then DEC B / JP NZ,0x0002 changes B every time round
+        CPU cpu = cpuWithRom(new int[]{0x06, 0x10, 0x05, 0xC2, 0x02, 0x00, 0x76});
+        cpu.executeBlock(); // B is already 0x0F after the first block
+        for (int i = 0; i < 0x0F; i++) {
+            Assert.assertEquals(16, cpu.executeBlock());
+        }
+        Assert.assertEquals(0x0006, cpu.getPC());
+        Assert.assertEquals(0, cpu.getIdleCyclesTotal());
+    }
+
+    @Test
+    public void testLoopThatStores_isNotSkipped() throws IOException {
+        // LD (HL),A / JP 0x0000 spins forever but writes every time round
+        CPU cpu = cpuWithRom(new int[]{0x77, 0xC3, 0x00, 0x00});
+        cpu.setHL(0xC000);
+        for (int i = 0; i < 10; i++) {
+            Assert.assertEquals(20, cpu.executeBlock());
+        }
+        Assert.assertEquals(0, cpu.getIdleCyclesTotal());
+    }
+}
@@ -0,0 +1,190 @@
+import com.pat.CPU;
+import com.pat.Memory;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Random;
+
+public class JitTests {
+
+    // more than enough runs of the same block for the JIT to pick it up
+    private static final int RUNS = 64;
+
+    private static void assertSameState(String message, CPU expected, CPU actual) {
+        Assert.assertEquals("AF " + message, expected.getAF(), actual.getAF());
+        Assert.assertEquals("BC " + message, expected.getBC(), actual.getBC());
+        Assert.assertEquals("DE " + message, expected.getDE(), actual.getDE());
+        Assert.assertEquals("HL " + message, expected.getHL(), actual.getHL());
+        Assert.assertEquals("SP " + message, expected.getSP(), actual.getSP());
+        Assert.assertEquals("PC " + message, expected.getPC(), actual.getPC());
+    }
+
+    @Test
+    public void testJit_matchesInterpreter_onTestRom() throws IOException {
+        Memory jitMemory = new Memory();
+        jitMemory.loadTestRom();
+        CPU jit = new CPU(jitMemory);
+        jit.setJitEnabled(true);
+
+        Memory interpretedMemory = new Memory();
+        interpretedMemory.loadTestRom();
+        CPU interpreted = new CPU(interpretedMemory);
+        interpreted.setJitEnabled(false);
+
+        for (int i = 0; i < 50000; i++) {
+            Assert.assertEquals("cycles of block " + i, interpreted.executeBlock(), jit.executeBlock());
+            assertSameState("after block " + i, interpreted, jit);
+        }
+
+        Assert.assertTrue(jit.getCompiledBlockCount() > 0);
+        Assert.assertEquals(0, jit.getCompileFailureCount());
+        Assert.assertEquals(0, interpreted.getCompiledBlockCount());
+    }
+
+    /**
+     * Random straight-line code made of the instructions the compiler emits inline.
+     * Only stores through HL, which is kept in WRAM, so the code never writes over itself.
+     * Ends on a conditional jump, so both ways out of a compiled branch get compared.
+     */
+    @Test
+    public void testJit_matchesInterpreter_onRandomBlocks() throws IOException {
+        int[] inlined = {
+                0x00, 0x2F, 0x0A, 0x1A, 0x22, 0x2A, 0x32, 0x3A, 0x03, 0x13, 0x23, 0x0B, 0x1B, 0x2B, 0x33, 0x3B,
+                0x04, 0x0C, 0x14, 0x1C, 0x3C, 0x05, 0x0D, 0x15, 0x1D, 0x3D, 0xF9,
+        };
+        int[] withByte = {0x06, 0x0E, 0x16, 0x1E, 0x3E, 0x36, 0xC6, 0xCE, 0xD6, 0xE6, 0xEE, 0xF6, 0xFE, 0xF0};
+        Random random = new Random(0x1B);
+
+        for (int program = 0; program < 50; program++) {
+            // a full 32kB so loads through BC and DE can land anywhere
+            int[] rom = new int[0x8000];
+            int pc = 0;
+            // LD BC,nn / LD DE,nn / LD HL,nn, somewhere in WRAM
+            for (int pair = 0; pair < 3; pair++) {
+                rom[pc++] = 0x01 | pair << 4;
+                rom[pc++] = random.nextInt(256);
+                rom[pc++] = 0xD0 + random.nextInt(0x0E);
+            }
+            while (pc < 0xF0) {
+                switch (random.nextInt(4)) {
+                    case 0 -> rom[pc++] = inlined[random.nextInt(inlined.length)];
+                    case 1 -> {
+                        rom[pc++] = withByte[random.nextInt(withByte.length)];
+                        rom[pc++] = random.nextInt(256);
+                    }
+                    case 2 -> {
+                        // LD r,r' and the ALU ops on registers, not touching H or L so HL stays in WRAM
+                        int code = 0x40 + random.nextInt(0x80);
+                        rom[pc++] = code == 0x76 || (code < 0x80 && ((code >> 3) & 0x07) >= CPU.H && ((code >> 3) & 0x07) <= CPU.L) ? 0x00 : code;
+                    }
+                    default -> rom[pc++] = 0x80 + random.nextInt(0x40);
+                }
+            }
+            // finish on a conditional jump, JP cc,0x0100 or JR cc to the HALT at 0xFF
+            int[] conditionalJumps = {0xC2, 0xCA, 0xD2, 0xDA, 0x20, 0x28, 0x30, 0x38};
+            int jump = conditionalJumps[random.nextInt(conditionalJumps.length)];
+            rom[pc++] = jump;
+            if (jump >= 0xC0) {
+                rom[pc++] = 0x00;
+                rom[pc++] = 0x01;
+            } else {
+                rom[pc++] = 0xFF;
+            }
+            rom[0xFF] = 0x76; // HALT
+
+            CPU jit = RomFixture.cpuWithCode(rom);
+            jit.setJitEnabled(true);
+            CPU interpreted = RomFixture.cpuWithCode(rom);
+            interpreted.setJitEnabled(false);
+            for (int run = 0; run < RUNS; run++) {
+                jit.forceProgramCounterToPosition(0x00, false);
+                interpreted.forceProgramCounterToPosition(0x00, false);
+                // 0xF0 bytes of code can't fit in one page worth of block, so keep going until the HALT
+                while (interpreted.getPC() < 0x100) {
+                    Assert.assertEquals("cycles, program " + program, interpreted.executeBlock(), jit.executeBlock());
+                    assertSameState("program " + program + " run " + run, interpreted, jit);
+                }
+            }
+            for (int address = 0xC000; address < 0xE000; address++) {
+                Assert.assertEquals("memory at " + address + ", program " + program,
+                        interpreted.getMemory().readByteFromLocation(address), jit.getMemory().readByteFromLocation(address));
+            }
+            Assert.assertTrue(jit.getCompiledBlockCount() > 0);
+        }
+    }
+
+    @Test
+    public void testCompiledBlock_writingOverItsOwnCode_fallsBackToInterpreter() throws IOException {
+        CPU cpu = RomFixture.cpuWithCode(new int[0x100]);
+        cpu.setJitEnabled(true);
+        Memory memory = cpu.getMemory();
+        int[] code = {
+                0x77,       // LD (HL),A
+                0x3E, 0x11, // LD A,0x11
+                0x76,       // HALT
+        };
+        for (int i = 0; i < code.length; i++) {
+            memory.writeByteToLocation(code[i], 0xC000 + i);
+        }
+
+        // hot while HL points somewhere else
+        for (int run = 0; run < RUNS; run++) {
+            cpu.setHL(0xD000);
+            cpu.writeRegister(CPU.A, 0x22);
+            cpu.forceProgramCounterToPosition(0xC000, false);
+            cpu.executeBlock();
+            Assert.assertEquals(0x11, cpu.readRegister(CPU.A));
+        }
+        Assert.assertEquals(1, cpu.getCompiledBlockCount());
+
+        // now the store lands on the LD A,n operand
+        cpu.setHL(0xC002);
+        cpu.writeRegister(CPU.A, 0x33);
+        cpu.forceProgramCounterToPosition(0xC000, false);
+        cpu.executeBlock();
+        Assert.assertEquals(0xC001, cpu.getPC());
+        cpu.executeBlock();
+        Assert.assertEquals(0x33, cpu.readRegister(CPU.A));
+        Assert.assertEquals(0xC004, cpu.getPC());
+
+        // the patched block stays with the interpreter
+        for (int run = 0; run < RUNS; run++) {
+            cpu.setHL(0xD000);
+            cpu.forceProgramCounterToPosition(0xC000, false);
+            cpu.executeBlock();
+            Assert.assertEquals(0x33, cpu.readRegister(CPU.A));
+        }
+        Assert.assertEquals(1, cpu.getCompiledBlockCount());
+    }
+
+    @Test
+    public void testInterrupt_dispatchedThenBlocksStillCompile() throws IOException {
+        int[] rom = new int[0x8000];
+        rom[0x40] = 0xD9; // RETI
+        rom[0x100] = 0xFB; // EI
+        rom[0x101] = 0x04; // INC B
+        rom[0x102] = 0xC3; // JP 0x0101
+        rom[0x103] = 0x01;
+        rom[0x104] = 0x01;
+        CPU cpu = RomFixture.cpuWithCode(rom);
+        cpu.setJitEnabled(true);
+        Memory memory = cpu.getMemory();
+        cpu.forceProgramCounterToPosition(0x100, false);
+        memory.writeByteToLocation(0x01, 0xFFFF);
+        memory.requestInterrupt(0x01);
+
+        // EI, the dispatch and the RETI, see CPUTests for what the dispatch does
+        cpu.executeBlock();
+        cpu.executeBlock();
+        cpu.executeBlock();
+        Assert.assertEquals(0x101, cpu.getPC());
+
+        // acknowledged, so the loop goes back to running as blocks and gets compiled
+        for (int i = 0; i < RUNS; i++) {
+            cpu.executeBlock();
+        }
+        Assert.assertEquals(1, cpu.getCompiledBlockCount());
+        Assert.assertEquals(0x101, cpu.getPC());
+    }
+}
@@ -0,0 +1,131 @@
+import com.pat.CPU;
+import com.pat.Memory;
+import com.pat.ppu.LayerCache;
+import com.pat.ppu.PPU;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LayerCacheTests {
+
+    private PPUFixture fixture;
+    private Memory memory;
+
+    private PPU ppu() {
+        fixture = new PPUFixture();
+        memory = fixture.memory;
+        PPU ppu = fixture.ppu;
+        memory.writeByteToLocation(0x91, 0xFF40);
+        memory.writeByteToLocation(0xE4, 0xFF47);
+        return ppu;
+    }
+
+    @Test
+    public void testStaticScreen_paintsNothingAfterTheFirstFrame() {
+        PPU ppu = ppu();
+        LayerCache layers = ppu.getLayerCache();
+        fixture.runFrames(1);
+        // the 18 rows of 32 cells on screen
+        Assert.assertEquals(18 * 32, layers.getCellsPainted());
+
+        layers.resetCounters();
+        ppu.getTileCache().resetCounters();
+        fixture.runFrames(5);
+        Assert.assertEquals(0, layers.getCellsPainted());
+        Assert.assertEquals(0, ppu.getTileCache().getRedecodes() + ppu.getTileCache().getHits());
+    }
+
+    @Test
+    public void testMapWrite_repaintsOneCell() {
+        PPU ppu = ppu();
+        LayerCache layers = ppu.getLayerCache();
+        memory.writeByteToLocation(0xFF, 0x8010);
+        fixture.runFrames(1);
+        layers.resetCounters();
+
+        memory.writeByteToLocation(1, 0x9800 + 2 * 32 + 3);
+        fixture.runFrames(1);
+        Assert.assertEquals(1, layers.getCellsPainted());
+        Assert.assertEquals(1, fixture.pixel(3 * 8, 2 * 8));
+        Assert.assertEquals(0, fixture.pixel(3 * 8, 2 * 8 - 1));
+
+        // writing what's already there changes nothing
+        layers.resetCounters();
+        memory.writeByteToLocation(1, 0x9800 + 2 * 32 + 3);
+        fixture.runFrames(1);
+        Assert.assertEquals(0, layers.getCellsPainted());
+    }
+
+    @Test
+    public void testTileWrite_repaintsOnlyCellsShowingIt() {
+        PPU ppu = ppu();
+        LayerCache layers = ppu.getLayerCache();
+        for (int cell = 0; cell < 4; cell++) {
+            memory.writeByteToLocation(7, 0x9800 + cell * 33);
+        }
+        fixture.runFrames(1);
+        layers.resetCounters();
+
+        memory.writeByteToLocation(0xFF, 0x8000 + 7 * 16 + 1);
+        fixture.runFrames(1);
+        Assert.assertEquals(4, layers.getCellsPainted());
+        Assert.assertEquals(2, fixture.pixel(0, 0));
+        Assert.assertEquals(2, fixture.pixel(3 * 8 + 7, 3 * 8));
+        Assert.assertEquals(0, fixture.pixel(8, 0));
+    }
+
+    @Test
+    public void testAddressingModeSwitch_repaintsWithTheOtherTiles() {
+        ppu();
+        // tile 0 is blank at 0x8000 and solid at 0x9000
+        for (int i = 0; i < 16; i++) {
+            memory.writeByteToLocation(0xFF, 0x9000 + i);
+        }
+        fixture.runFrames(1);
+        Assert.assertEquals(0, fixture.pixel(0, 0));
+
+        memory.writeByteToLocation(0x81, 0xFF40);
+        fixture.runFrames(1);
+        Assert.assertEquals(3, fixture.pixel(0, 0));
+        Assert.assertEquals(3, fixture.pixel(159, 143));
+    }
+
+    @Test
+    public void testScroll_wrapsAcrossTheLayerEdge() {
+        PPU ppu = ppu();
+        LayerCache layers = ppu.getLayerCache();
+        for (int row = 0; row < 8; row++) {
+            memory.writeByteToLocation(0xFF, 0x8010 + row * 2);
+        }
+        // column 31 of row 31, the bottom right corner of the map
+        memory.writeByteToLocation(1, 0x9800 + 31 * 32 + 31);
+        memory.writeByteToLocation(250, 0xFF43);
+        memory.writeByteToLocation(250, 0xFF42);
+        fixture.runFrames(1);
+        // map x 248 - 255 lands on screen -2 - 5, map y the same
+        Assert.assertEquals(1, fixture.pixel(5, 5));
+        Assert.assertEquals(0, fixture.pixel(6, 5));
+        Assert.assertEquals(0, fixture.pixel(5, 6));
+
+        layers.resetCounters();
+        fixture.runFrames(3);
+        Assert.assertEquals(0, layers.getCellsPainted());
+    }
+
+    @Test
+    public void testWindow_usesTheOtherMap() {
+        ppu();
+        memory.writeByteToLocation(0xFF, 0x8010);
+        memory.writeByteToLocation(0xFF, 0x8011);
+        memory.writeByteToLocation(1, 0x9C00);
+        // window on, from map 0x9C00, at the top left and starting 3 pixels into it
+        memory.writeByteToLocation(0xF1, 0xFF40);
+        memory.writeByteToLocation(0, 0xFF4A);
+        memory.writeByteToLocation(4, 0xFF4B);
+        fixture.runFrames(1);
+        Assert.assertEquals(3, fixture.pixel(0, 0));
+        Assert.assertEquals(3, fixture.pixel(4, 0));
+        Assert.assertEquals(0, fixture.pixel(5, 0));
+        // rows 1 - 7 of the tile are empty
+        Assert.assertEquals(0, fixture.pixel(0, 1));
+    }
+}
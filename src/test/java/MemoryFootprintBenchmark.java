@@ -0,0 +1,92 @@
+import com.pat.Memory;
+import com.pat.RomCache;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Heap bytes per emulator memory with cpu_instrs.gb loaded, for sizing how many instances fit on a box.
+ * Not a unit test, run the main method directly.
+ * Arguments: [instances]
+ * "before" allocates the arrays the old int[] backed Memory held per instance (the whole 2MB cartridge buffer,
+ * the 64kB memory map and 32kB of RAM banks, all as ints), "after" is the current Memory.
+ * Also times loading the ROM into the first instance against the ones after it, which find it in the RomCache.
+ */
+public class MemoryFootprintBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int instances = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+
+        long before = bytesPerInstance(instances, () -> new int[][]{
+                new int[0x200000], new int[0x10000], new int[0x8000]
+        });
+        long after = bytesPerInstance(instances, () -> {
+            Memory memory = new Memory();
+            try {
+                memory.loadTestRom();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            return memory;
+        });
+
+        Memory memory = new Memory();
+        memory.loadTestRom();
+        RomCache cache = RomCache.shared();
+        System.err.printf("%d instances%n", instances);
+        System.err.printf("before: %,d bytes per instance%n", before);
+        System.err.printf("after:  %,d bytes per instance, plus one shared %,d byte ROM mapping (%d held)%n",
+                after, memory.getRom().size(), cache.size());
+        System.err.printf("ROM cache: %d hits, %d misses, %,d bytes saved%n",
+                cache.getHits(), cache.getMisses(), cache.getBytesSaved());
+        timeLoads(instances);
+    }
+
+    // the first load into an empty cache, then the average of the rest
+    private static void timeLoads(int instances) throws IOException {
+        Path rom = Files.createTempFile("footprint", ".gb");
+        rom.toFile().deleteOnExit();
+        Files.write(rom, new byte[0x100000]);
+
+        List<Memory> keep = new ArrayList<>(instances);
+        long start = System.nanoTime();
+        Memory first = new Memory();
+        first.loadRom(rom);
+        keep.add(first);
+        long firstLoad = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 1; i < instances; i++) {
+            Memory memory = new Memory();
+            memory.loadRom(rom);
+            keep.add(memory);
+        }
+        long rest = (System.nanoTime() - start) / (instances - 1);
+        System.err.printf("1MB ROM: first load %,d us, later loads %,d us each%n", firstLoad / 1000, rest / 1000);
+    }
+
+    private static long bytesPerInstance(int instances, Supplier<Object> factory) {
+        List<Object> keep = new ArrayList<>(instances);
+        long start = usedHeap();
+        for (int i = 0; i < instances; i++) {
+            keep.add(factory.get());
+        }
+        long end = usedHeap();
+        if (keep.size() != instances) {
+            throw new IllegalStateException();
+        }
+        return (end - start) / instances;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
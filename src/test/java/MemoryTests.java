@@ -8,19 +8,54 @@ public class MemoryTests {
 
 
     @Test
-    public void testLoadingRom_testCopyToGeneralMemory() throws IOException {
+    public void testLoadingRom_readsThroughToRom() throws IOException {
         Memory memory = new Memory();
         memory.loadTestRom();
-        Assert.assertEquals(memory.cartMemory[0x0000], memory.generalMemory[0x0000]);
-        Assert.assertEquals(memory.cartMemory[0x1000], memory.generalMemory[0x1000]);
-        Assert.assertEquals(memory.cartMemory[0x0300], memory.generalMemory[0x0300]);
+        Assert.assertEquals(memory.readRomByte(0x0000), memory.readByteFromLocation(0x0000));
+        Assert.assertEquals(memory.readRomByte(0x1000), memory.readByteFromLocation(0x1000));
+        Assert.assertEquals(memory.readRomByte(0x0300), memory.readByteFromLocation(0x0300));
+        // bank 1 sits at 0x4000 until something switches it
+        Assert.assertEquals(memory.readRomByte(0x4100), memory.readByteFromLocation(0x4100));
+    }
+
+    @Test
+    public void testLoadingRom_sharedBetweenInstances() throws IOException {
+        Memory first = new Memory();
+        Memory second = new Memory();
+        first.loadTestRom();
+        second.loadTestRom();
+        Assert.assertSame(first.getRom(), second.getRom());
+
+        // RAM is still each instance's own
+        first.writeByteToLocation(0x12, 0xC000);
+        Assert.assertEquals(0x00, second.readByteFromLocation(0xC000));
+    }
+
+    @Test
+    public void testCartRamSizedFromHeader() throws IOException {
+        Memory memory = new Memory();
+        int[] rom = new int[0x8000];
+        rom[0x147] = 0x03; // MBC1 + RAM + battery
+        rom[0x149] = 0x01; // 2kB
+        memory.loadTestRomByteArray(rom);
+        Assert.assertEquals(0x800, memory.getCartRamSize());
+        memory.writeByteToLocation(0x0A, 0x0000); // enable RAM
+
+        // 2kB mirrors across the whole 8kB window
+        memory.writeByteToLocation(0x5A, 0xA010);
+        Assert.assertEquals(0x5A, memory.readByteFromLocation(0xA810));
+
+        // no RAM at all reads as open bus and ignores writes
+        memory.loadTestRomByteArray(new int[0x8000]);
+        memory.writeByteToLocation(0x5A, 0xA010);
+        Assert.assertEquals(0xFF, memory.readByteFromLocation(0xA010));
     }
 
     @Test
     public void testMemoryInit() {
         Memory memory = new Memory();
-        Assert.assertEquals(0x00, memory.generalMemory[0xFF05]);
-        Assert.assertEquals(0xBF, memory.generalMemory[0xFF11]);
+        Assert.assertEquals(0x00, memory.readByteFromLocation(0xFF05));
+        Assert.assertEquals(0xBF, memory.readByteFromLocation(0xFF11));
     }
 
     @Test
@@ -42,5 +77,38 @@ public class MemoryTests {
         Assert.assertEquals(0xDD, memory.readByteFromLocation(0xE200));
     }
 
+    @Test
+    public void testEchoSharesPageVersions() {
+        Memory memory = new Memory();
+        int echoVersion = memory.getPageVersion(0xE1);
+        memory.writeByteToLocation(0x42, 0xC100);
+        Assert.assertNotEquals(echoVersion, memory.getPageVersion(0xE1));
+
+        int workVersion = memory.getPageVersion(0xC2);
+        memory.writeByteToLocation(0x42, 0xE200);
+        Assert.assertNotEquals(workVersion, memory.getPageVersion(0xC2));
+    }
+
+    @Test
+    public void testProtectedArea() {
+        Memory memory = new Memory();
+        memory.writeByteToLocation(0x42, 0xFE9F);
+        memory.writeByteToLocation(0x42, 0xFEA0);
+        Assert.assertEquals(0x42, memory.readByteFromLocation(0xFE9F));
+        Assert.assertEquals(0x00, memory.readByteFromLocation(0xFEA0));
+    }
 
+    @Test
+    public void testRomBankSwitch() throws IOException {
+        Memory memory = new Memory();
+        int[] rom = new int[0x10000];
+        for (int bank = 0; bank < 4; bank++) {
+            rom[bank * 0x4000 + 0x123] = bank;
+        }
+        memory.loadTestRomByteArray(rom);
+        Assert.assertEquals(1, memory.readByteFromLocation(0x4123));
+        memory.setCurrentRomBank(3);
+        Assert.assertEquals(3, memory.readByteFromLocation(0x4123));
+        Assert.assertEquals(0, memory.readByteFromLocation(0x0123));
+    }
 }
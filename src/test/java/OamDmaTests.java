@@ -0,0 +1,102 @@
+import com.pat.Memory;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class OamDmaTests {
+
+    private final long[] now = {0};
+
+    private Memory memory() {
+        Memory memory = new Memory();
+        memory.setCycleCounter(() -> now[0]);
+        return memory;
+    }
+
+    @Test
+    public void testDma_copiesSourcePageIntoOam() {
+        Memory memory = memory();
+        for (int i = 0; i < 0xA0; i++) {
+            memory.writeByteToLocation(i ^ 0x5A, 0xC100 + i);
+        }
+        memory.writeByteToLocation(0xC1, 0xFF46);
+
+        now[0] += Memory.OAM_DMA_CYCLES;
+        for (int i = 0; i < 0xA0; i++) {
+            Assert.assertEquals(i ^ 0x5A, memory.readByteFromLocation(0xFE00 + i));
+        }
+        Assert.assertEquals(0xC1, memory.readByteFromLocation(0xFF46));
+    }
+
+    @Test
+    public void testDma_busRestrictedUntilDone() {
+        Memory memory = memory();
+        memory.writeByteToLocation(0x11, 0xC000);
+        memory.writeByteToLocation(0x22, 0xFF80);
+        memory.writeByteToLocation(0xC0, 0xFF46);
+        Assert.assertTrue(memory.isOamDmaActive());
+        Assert.assertEquals(Memory.OAM_DMA_CYCLES, memory.cyclesUntilNextEvent());
+
+        // only 0xFF00 and up answers
+        Assert.assertEquals(0xFF, memory.readByteFromLocation(0xC000));
+        Assert.assertEquals(0xFF, memory.readByteFromLocation(0xFE00));
+        Assert.assertEquals(0x22, memory.readByteFromLocation(0xFF80));
+        memory.writeByteToLocation(0x33, 0xC000);
+        memory.writeByteToLocation(0x44, 0xFF81);
+
+        now[0] += Memory.OAM_DMA_CYCLES - 1;
+        Assert.assertTrue(memory.isOamDmaActive());
+        Assert.assertEquals(1, memory.cyclesUntilNextEvent());
+
+        now[0]++;
+        Assert.assertEquals(0x11, memory.readByteFromLocation(0xC000));
+        Assert.assertEquals(0x11, memory.readByteFromLocation(0xFE00));
+        Assert.assertEquals(0x44, memory.readByteFromLocation(0xFF81));
+        Assert.assertFalse(memory.isOamDmaActive());
+        Assert.assertEquals(Long.MAX_VALUE, memory.cyclesUntilNextEvent());
+    }
+
+    @Test
+    public void testRanges_acrossPagesAndRegions() {
+        Memory memory = memory();
+        byte[] data = new byte[0x300];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i * 7);
+        }
+        // work RAM read back through the echo, straddling three pages
+        memory.writeRange(0xC080, data, 0, data.length);
+        byte[] back = new byte[data.length];
+        memory.readRange(0xE080, back, 0, back.length);
+        Assert.assertArrayEquals(data, back);
+
+        // the protected area and IO go a byte at a time, so the protected area stays 0
+        memory.writeRange(0xFE90, data, 0, 0x20);
+        memory.readRange(0xFE90, back, 0, 0x20);
+        Assert.assertEquals(data[0x0F], back[0x0F]);
+        Assert.assertEquals(0, back[0x10]);
+    }
+
+    @Test
+    public void testWriteRange_invalidatesPages() {
+        Memory memory = memory();
+        int version = memory.getPageVersion(0xE1);
+        memory.writeRange(0xC100, new byte[4], 0, 4);
+        Assert.assertNotEquals(version, memory.getPageVersion(0xE1));
+    }
+
+    @Test
+    public void testDma_writeRightAfterItEnds() {
+        Memory memory = memory();
+        memory.writeByteToLocation(0xC0, 0xFF46);
+
+        // the first write after the DMA's time is up is the one that finds it over
+        now[0] += Memory.OAM_DMA_CYCLES;
+        memory.writeByteToLocation(0x12, 0xC000);
+        Assert.assertEquals(0x12, memory.readByteFromLocation(0xC000));
+
+        memory.writeByteToLocation(0xC0, 0xFF46);
+        now[0] += Memory.OAM_DMA_CYCLES;
+        memory.writeByteToLocation(0x34, 0xE000);
+        Assert.assertEquals(0x34, memory.readByteFromLocation(0xE000));
+        Assert.assertEquals(0x34, memory.readByteFromLocation(0xC000));
+    }
+}
@@ -0,0 +1,112 @@
+import com.pat.CPU;
+import com.pat.Emulator;
+import com.pat.Memory;
+import com.pat.ppu.LayerCache;
+import com.pat.ppu.PPU;
+import com.pat.ppu.TileCache;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Headless frames/sec, nothing is put on screen.
+ * Not a unit test, run the main method directly.
+ * Arguments: [frames per round] [ppu|emulator], ppu is the default.
+ * ppu clocks the PPU on its own through frames of a busy screen (every tile different, the window up and ten sprites
+ * on each line), emulator runs cpu_instrs.gb with the JIT on and the PPU along with it.
+ * Also prints the bytes allocated per frame, which should be nothing, and how much the tile and layer caches had to
+ * redo.
+ */
+public class PPUBenchmark {
+
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int MEASURED_ROUNDS = 5;
+
+    private static PPU ppu;
+
+    public static void main(String[] args) throws IOException {
+        int framesPerRound = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        String mode = args.length > 1 ? args[1] : "ppu";
+
+        Runner runner = mode.equals("emulator") ? emulator() : ppuOnly();
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            runner.run(framesPerRound);
+        }
+
+        TileCache tileCache = ppu.getTileCache();
+        tileCache.resetCounters();
+        LayerCache layerCache = ppu.getLayerCache();
+        layerCache.resetCounters();
+        double best = 0;
+        long allocated = 0;
+        for (int round = 0; round < MEASURED_ROUNDS; round++) {
+            long bytesBefore = allocatedBytes();
+            long start = System.nanoTime();
+            runner.run(framesPerRound);
+            long elapsed = System.nanoTime() - start;
+            allocated = allocatedBytes() - bytesBefore;
+            best = Math.max(best, framesPerRound * 1e9 / elapsed);
+        }
+
+        System.err.printf("%s: %.0f frames/sec (best of %d, %.1fx real time), %d bytes allocated per frame%n",
+                mode, best, MEASURED_ROUNDS, best / 59.73, allocated / framesPerRound);
+        System.err.printf("tile cache: %.2f%% hits, %d rows decoded again; %d layer cells painted again%n",
+                tileCache.getHitRate() * 100, tileCache.getRedecodes(), layerCache.getCellsPainted());
+    }
+
+    private interface Runner {
+        void run(int frames);
+    }
+
+    private static Runner emulator() throws IOException {
+        Emulator emulator = new Emulator();
+        emulator.getMemory().loadTestRom();
+        emulator.getCpu().setJitEnabled(true);
+        ppu = emulator.getPpu();
+        return frames -> {
+            for (int i = 0; i < frames; i++) {
+                emulator.runFrame();
+            }
+        };
+    }
+
+    private static Runner ppuOnly() {
+        long[] now = {0};
+        Memory memory = new Memory();
+        memory.setCycleCounter(() -> now[0]);
+        ppu = new PPU(memory);
+        memory.attachPpu(ppu);
+
+        // tile data that isn't all one colour, a map using every tile, and a window over the bottom right
+        for (int i = 0; i < 0x1800; i++) {
+            memory.writeByteToLocation((i * 37) ^ (i >> 3), 0x8000 + i);
+        }
+        for (int i = 0; i < 0x800; i++) {
+            memory.writeByteToLocation(i, 0x9800 + i);
+        }
+        // ten sprites on every line, 16 pixels tall, some flipped and some behind the background
+        for (int i = 0; i < 40; i++) {
+            memory.writeByteToLocation(16 + (i % 10) * 16, 0xFE00 + i * 4);
+            memory.writeByteToLocation(8 + i * 4, 0xFE00 + i * 4 + 1);
+            memory.writeByteToLocation(i * 2, 0xFE00 + i * 4 + 2);
+            memory.writeByteToLocation((i & 7) << 5, 0xFE00 + i * 4 + 3);
+        }
+        memory.writeByteToLocation(0xF7, 0xFF40);
+        memory.writeByteToLocation(72, 0xFF4A);
+        memory.writeByteToLocation(87, 0xFF4B);
+
+        return frames -> {
+            for (int i = 0; i < frames; i++) {
+                // scroll a little every frame, as games do
+                memory.writeByteToLocation(i & 0xFF, 0xFF43);
+                now[0] += CPU.CYCLES_PER_FRAME;
+                memory.catchUpClockedDevices(now[0]);
+            }
+        };
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().threadId());
+    }
+}
@@ -0,0 +1,50 @@
+import com.pat.CPU;
+import com.pat.Memory;
+import com.pat.ppu.PPU;
+
+/**
+ * A PPU attached to its own Memory, with the cycle count set by the test rather than a CPU.
+ */
+class PPUFixture {
+
+    final Memory memory = new Memory();
+    final PPU ppu;
+    private long now;
+
+    PPUFixture() {
+        memory.setCycleCounter(() -> now);
+        ppu = new PPU(memory);
+        memory.attachPpu(ppu);
+    }
+
+    long getNow() {
+        return now;
+    }
+
+    /**
+     * Moves the clock without catching anything up, as if the CPU were part way through a block.
+     */
+    void setNow(long cycle) {
+        now = cycle;
+    }
+
+    void runTo(long cycle) {
+        now = cycle;
+        memory.catchUpClockedDevices(cycle);
+    }
+
+    void runFrames(int frames) {
+        runTo(now + (long) frames * CPU.CYCLES_PER_FRAME);
+    }
+
+    // the shade the pixel was drawn in
+    int pixel(int x, int y) {
+        int color = ppu.getFramebuffer()[y * PPU.WIDTH + x];
+        for (int shade = 0; shade < 4; shade++) {
+            if (PPU.shadeColor(shade) == color) {
+                return shade;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,297 @@
+import com.pat.CPU;
+import com.pat.Memory;
+import com.pat.ppu.FrameExchange;
+import com.pat.ppu.PPU;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PPUTests {
+
+    private PPUFixture fixture;
+    private Memory memory;
+
+    private PPU ppu() {
+        fixture = new PPUFixture();
+        memory = fixture.memory;
+        PPU ppu = fixture.ppu;
+        // tiles at 0x8000, nothing on but the LCD and background until a test says otherwise
+        memory.writeByteToLocation(0x91, 0xFF40);
+        memory.writeByteToLocation(0xE4, 0xFF47);
+        return ppu;
+    }
+
+    private void clearInterrupts() {
+        memory.writeByteToLocation(0x00, 0xFF0F);
+    }
+
+    // a tile whose every row is low, high
+    private void writeTile(int tile, int low, int high) {
+        for (int row = 0; row < 8; row++) {
+            memory.writeByteToLocation(low, 0x8000 + tile * 16 + row * 2);
+            memory.writeByteToLocation(high, 0x8000 + tile * 16 + row * 2 + 1);
+        }
+    }
+
+    @Test
+    public void testTiming_modesThroughALine() {
+        PPU ppu = ppu();
+        Assert.assertEquals(PPU.MODE_OAM_SCAN, memory.readByteFromLocation(0xFF41) & 0x03);
+        fixture.runTo(80);
+        Assert.assertEquals(PPU.MODE_DRAWING, memory.readByteFromLocation(0xFF41) & 0x03);
+        fixture.runTo(80 + 172);
+        Assert.assertEquals(PPU.MODE_HBLANK, memory.readByteFromLocation(0xFF41) & 0x03);
+        Assert.assertEquals(0, memory.readByteFromLocation(0xFF44));
+        fixture.runTo(PPU.CYCLES_PER_LINE);
+        Assert.assertEquals(PPU.MODE_OAM_SCAN, ppu.getMode());
+        Assert.assertEquals(1, memory.readByteFromLocation(0xFF44));
+    }
+
+    @Test
+    public void testTiming_vblankAtLine144AndFrameWraps() {
+        PPU ppu = ppu();
+        clearInterrupts();
+        fixture.runTo(144L * PPU.CYCLES_PER_LINE - 1);
+        Assert.assertEquals(0, memory.readByteFromLocation(0xFF0F) & 0x01);
+
+        fixture.runTo(144L * PPU.CYCLES_PER_LINE);
+        Assert.assertEquals(144, memory.readByteFromLocation(0xFF44));
+        Assert.assertEquals(PPU.MODE_VBLANK, ppu.getMode());
+        Assert.assertEquals(0x01, memory.readByteFromLocation(0xFF0F) & 0x01);
+        Assert.assertEquals(1, ppu.getFrameCount());
+
+        fixture.runTo(CPU.CYCLES_PER_FRAME - 1);
+        Assert.assertEquals(153, ppu.getLy());
+        fixture.runTo(CPU.CYCLES_PER_FRAME);
+        Assert.assertEquals(0, ppu.getLy());
+        Assert.assertEquals(PPU.MODE_OAM_SCAN, ppu.getMode());
+    }
+
+    @Test
+    public void testNextEvent_isTheNextModeChange() {
+        PPU ppu = ppu();
+        Assert.assertEquals(80, ppu.cyclesUntilNextEvent());
+        fixture.runTo(100);
+        Assert.assertEquals(152, ppu.cyclesUntilNextEvent());
+        Assert.assertEquals(152, memory.cyclesUntilNextEvent());
+    }
+
+    @Test
+    public void testStat_lycInterruptOnce() {
+        ppu();
+        memory.writeByteToLocation(5, 0xFF45);
+        memory.writeByteToLocation(0x40, 0xFF41);
+        clearInterrupts();
+
+        fixture.runTo(5L * PPU.CYCLES_PER_LINE - 1);
+        Assert.assertEquals(0, memory.readByteFromLocation(0xFF0F) & 0x02);
+        fixture.runTo(5L * PPU.CYCLES_PER_LINE);
+        Assert.assertEquals(0x02, memory.readByteFromLocation(0xFF0F) & 0x02);
+        Assert.assertEquals(0x04, memory.readByteFromLocation(0xFF41) & 0x04);
+        Assert.assertEquals(0x80, memory.readByteFromLocation(0xFF41) & 0x80);
+
+        // still line 5 through the other modes, no second interrupt
+        clearInterrupts();
+        fixture.runTo(6L * PPU.CYCLES_PER_LINE - 1);
+        Assert.assertEquals(0, memory.readByteFromLocation(0xFF0F) & 0x02);
+        fixture.runTo(6L * PPU.CYCLES_PER_LINE);
+        Assert.assertEquals(0, memory.readByteFromLocation(0xFF41) & 0x04);
+    }
+
+    @Test
+    public void testStat_hblankInterruptEachLine() {
+        ppu();
+        memory.writeByteToLocation(0x08, 0xFF41);
+        clearInterrupts();
+        fixture.runTo(80 + 172);
+        Assert.assertEquals(0x02, memory.readByteFromLocation(0xFF0F) & 0x02);
+        clearInterrupts();
+        fixture.runTo(PPU.CYCLES_PER_LINE + 80 + 172);
+        Assert.assertEquals(0x02, memory.readByteFromLocation(0xFF0F) & 0x02);
+    }
+
+    @Test
+    public void testLcdOff_holdsLyAtZero() {
+        PPU ppu = ppu();
+        fixture.runTo(10L * PPU.CYCLES_PER_LINE);
+        memory.writeByteToLocation(0x11, 0xFF40);
+        Assert.assertEquals(0, memory.readByteFromLocation(0xFF44));
+        Assert.assertEquals(Long.MAX_VALUE, ppu.cyclesUntilNextEvent());
+
+        fixture.runTo(CPU.CYCLES_PER_FRAME * 3L);
+        Assert.assertEquals(0, memory.readByteFromLocation(0xFF44));
+        Assert.assertEquals(0, ppu.getFrameCount());
+
+        // back on, from the top of a frame
+        memory.writeByteToLocation(0x91, 0xFF40);
+        Assert.assertEquals(PPU.MODE_OAM_SCAN, ppu.getMode());
+        fixture.runTo(CPU.CYCLES_PER_FRAME * 3L + PPU.CYCLES_PER_LINE);
+        Assert.assertEquals(1, memory.readByteFromLocation(0xFF44));
+    }
+
+    @Test
+    public void testBackground_tilesPaletteAndScroll() {
+        ppu();
+        // tile 1 is colour 1 on the left half and colour 2 on the right, in the top left of the map
+        writeTile(1, 0xF0, 0x0F);
+        memory.writeByteToLocation(1, 0x9800);
+        // colour 1 -> shade 3, colour 2 -> shade 1
+        memory.writeByteToLocation(0x1C, 0xFF47);
+
+        fixture.runTo(PPU.CYCLES_PER_LINE);
+        Assert.assertEquals(3, fixture.pixel(0, 0));
+        Assert.assertEquals(3, fixture.pixel(3, 0));
+        Assert.assertEquals(1, fixture.pixel(4, 0));
+        Assert.assertEquals(0, fixture.pixel(8, 0));
+
+        memory.writeByteToLocation(4, 0xFF43);
+        fixture.runTo(2L * PPU.CYCLES_PER_LINE);
+        Assert.assertEquals(1, fixture.pixel(0, 1));
+        Assert.assertEquals(0, fixture.pixel(4, 1));
+        // the map wraps round, x 252 onwards is back at the start
+        memory.writeByteToLocation(252, 0xFF43);
+        fixture.runTo(3L * PPU.CYCLES_PER_LINE);
+        Assert.assertEquals(3, fixture.pixel(4, 2));
+        Assert.assertEquals(1, fixture.pixel(8, 2));
+    }
+
+    @Test
+    public void testBackground_signedTileData() {
+        ppu();
+        memory.writeByteToLocation(0x81, 0xFF40);
+        // tile 0xFF from 0x9000 is 0x8FF0
+        for (int row = 0; row < 8; row++) {
+            memory.writeByteToLocation(0xFF, 0x8FF0 + row * 2);
+        }
+        memory.writeByteToLocation(0xFF, 0x9800);
+        fixture.runTo(PPU.CYCLES_PER_LINE);
+        Assert.assertEquals(1, fixture.pixel(0, 0));
+        // and tile 0 is 0x9000, empty
+        Assert.assertEquals(0, fixture.pixel(8, 0));
+    }
+
+    @Test
+    public void testWindow_coversBackgroundFromWxWy() {
+        ppu();
+        writeTile(2, 0xFF, 0xFF);
+        // the window map at 0x9C00 is all tile 2
+        for (int i = 0; i < 0x400; i++) {
+            memory.writeByteToLocation(2, 0x9C00 + i);
+        }
+        memory.writeByteToLocation(0xF1, 0xFF40);
+        memory.writeByteToLocation(2, 0xFF4A);
+        memory.writeByteToLocation(17, 0xFF4B);
+
+        fixture.runTo(3L * PPU.CYCLES_PER_LINE);
+        Assert.assertEquals(0, fixture.pixel(20, 1));
+        Assert.assertEquals(0, fixture.pixel(9, 2));
+        Assert.assertEquals(3, fixture.pixel(10, 2));
+        Assert.assertEquals(3, fixture.pixel(159, 2));
+    }
+
+    @Test
+    public void testSprites_flipPaletteAndBackgroundPriority() {
+        ppu();
+        memory.writeByteToLocation(0x93, 0xFF40);
+        memory.writeByteToLocation(0xE4, 0xFF48);
+        memory.writeByteToLocation(0xDB, 0xFF49);
+        // sprite tile 3: only the leftmost pixel, colour 3
+        writeTile(3, 0x80, 0x80);
+        // background tile 1 at map x 2 (screen 16 - 23), colour 1
+        writeTile(1, 0xFF, 0x00);
+        memory.writeByteToLocation(1, 0x9802);
+
+        int[] oam = {
+                // screen 0, OBP0
+                16, 8, 3, 0x00,
+                // screen 8, flipped, OBP1
+                16, 16, 3, 0x30,
+                // screen 16, behind the background, which is colour 1 there
+                16, 24, 3, 0x80,
+        };
+        for (int i = 0; i < oam.length; i++) {
+            memory.writeByteToLocation(oam[i], 0xFE00 + i);
+        }
+
+        fixture.runTo(PPU.CYCLES_PER_LINE);
+        Assert.assertEquals(3, fixture.pixel(0, 0));
+        Assert.assertEquals(0, fixture.pixel(1, 0));
+        // flipped, so the pixel is on the right, and colour 3 is shade 3 through OBP1 too
+        Assert.assertEquals(0, fixture.pixel(8, 0));
+        Assert.assertEquals(3, fixture.pixel(15, 0));
+        // behind colour 1, the background shows
+        Assert.assertEquals(1, fixture.pixel(16, 0));
+
+        // OBP1 colour 3 -> shade 0
+        memory.writeByteToLocation(0x1B, 0xFF49);
+        fixture.runTo(2L * PPU.CYCLES_PER_LINE);
+        Assert.assertEquals(0, fixture.pixel(15, 1));
+    }
+
+    @Test
+    public void testSprites_leftmostWinsThenOamOrder() {
+        ppu();
+        memory.writeByteToLocation(0x93, 0xFF40);
+        memory.writeByteToLocation(0xE4, 0xFF48);
+        memory.writeByteToLocation(0x00, 0xFF49);
+        writeTile(3, 0xFF, 0xFF);
+        int[] oam = {
+                // OBP0 at screen 4, after a sprite further left in OAM order
+                16, 12, 3, 0x00,
+                // OBP1 at screen 2, so it's on top where they overlap
+                16, 10, 3, 0x10,
+                // the same X as the first but later in OAM, never shows
+                16, 12, 3, 0x10,
+        };
+        for (int i = 0; i < oam.length; i++) {
+            memory.writeByteToLocation(oam[i], 0xFE00 + i);
+        }
+        fixture.runTo(PPU.CYCLES_PER_LINE);
+        Assert.assertEquals(0, fixture.pixel(9, 0));
+        Assert.assertEquals(3, fixture.pixel(10, 0));
+        Assert.assertEquals(3, fixture.pixel(11, 0));
+    }
+
+    @Test
+    public void testSprites_tenPerLine() {
+        ppu();
+        memory.writeByteToLocation(0x93, 0xFF40);
+        writeTile(3, 0xFF, 0xFF);
+        for (int i = 0; i < 12; i++) {
+            memory.writeByteToLocation(16, 0xFE00 + i * 4);
+            memory.writeByteToLocation(8 + i * 8, 0xFE00 + i * 4 + 1);
+            memory.writeByteToLocation(3, 0xFE00 + i * 4 + 2);
+        }
+        fixture.runTo(PPU.CYCLES_PER_LINE);
+        Assert.assertEquals(3, fixture.pixel(79, 0));
+        Assert.assertEquals(0, fixture.pixel(80, 0));
+    }
+
+    @Test
+    public void testFrame_noAllocation() {
+        PPU ppu = ppu();
+        int[] framebuffer = ppu.getFramebuffer();
+        fixture.runTo(CPU.CYCLES_PER_FRAME * 2L);
+        Assert.assertSame(framebuffer, ppu.getFramebuffer());
+        Assert.assertEquals(2, ppu.getFrameCount());
+    }
+
+    @Test
+    public void testFrameExchange_publishedAtVblankAndLcdOff() {
+        PPU ppu = ppu();
+        FrameExchange frames = new FrameExchange(PPU.WIDTH * PPU.HEIGHT);
+        ppu.setFrameExchange(frames);
+        writeTile(0, 0xFF, 0xFF);
+
+        fixture.runTo(143L * PPU.CYCLES_PER_LINE + PPU.CYCLES_PER_LINE - 1);
+        Assert.assertFalse(frames.take());
+        fixture.runTo(144L * PPU.CYCLES_PER_LINE);
+        Assert.assertTrue(frames.take());
+        Assert.assertEquals(PPU.shadeColor(3), frames.getFront()[PPU.WIDTH * PPU.HEIGHT - 1]);
+
+        // off blanks the screen, and the blank screen goes out straight away
+        memory.writeByteToLocation(0x11, 0xFF40);
+        Assert.assertTrue(frames.take());
+        Assert.assertEquals(PPU.shadeColor(0), frames.getFront()[0]);
+        Assert.assertEquals(2, frames.getPublished());
+    }
+}
@@ -0,0 +1,44 @@
+import com.pat.ppu.PaletteMapper;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+public class PaletteMapperTests {
+
+    private static final int[] PALETTE = {0xFF9BBC0F, 0xFF8BAC0F, 0xFF306230, 0xFF0F380F};
+
+    private static void checkAgainstLoop(PaletteMapper mapper) {
+        Random random = new Random(0x23);
+        byte[] colors = new byte[200];
+        for (int i = 0; i < colors.length; i++) {
+            colors[i] = (byte) random.nextInt(4);
+        }
+        // lengths that aren't a whole number of vectors, at offsets that aren't aligned
+        for (int length : new int[]{0, 1, 7, 8, 9, 160, 163}) {
+            int[] out = new int[length + 20];
+            mapper.map(colors, 3, PALETTE, out, 5, length);
+            for (int i = 0; i < length; i++) {
+                Assert.assertEquals(PALETTE[colors[3 + i]], out[5 + i]);
+            }
+            Assert.assertEquals(0, out[4]);
+            Assert.assertEquals(0, out[5 + length]);
+        }
+    }
+
+    @Test
+    public void testScalar() {
+        checkAgainstLoop(PaletteMapper.scalar());
+    }
+
+    @Test
+    public void testVector_whenAvailable() {
+        PaletteMapper vector = PaletteMapper.vector();
+        if (vector == null) {
+            // no jdk.incubator.vector on this JVM, create() falls back to the loop
+            Assert.assertEquals("scalar", PaletteMapper.create().getName());
+            return;
+        }
+        checkAgainstLoop(vector);
+    }
+}
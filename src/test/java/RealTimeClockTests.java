@@ -0,0 +1,179 @@
+import com.pat.Memory;
+import com.pat.mbc.RealTimeClock;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+public class RealTimeClockTests {
+
+    private static final long SECOND = RealTimeClock.CYCLES_PER_SECOND;
+    private static final long DAY = 24 * 60 * 60 * SECOND;
+
+    private final long[] now = {0};
+
+    private Memory memoryWithClock() throws IOException {
+        Memory memory = BankControllerTests.memoryWithRom(BankControllerTests.markedRom(0x10, 0x04, 0x03));
+        memory.setCycleCounter(() -> now[0]);
+        memory.writeByteToLocation(0x0A, 0x0000); // enable RAM and clock
+        return memory;
+    }
+
+    private static void latch(Memory memory) {
+        memory.writeByteToLocation(0x00, 0x6000);
+        memory.writeByteToLocation(0x01, 0x6000);
+    }
+
+    private static int readRegister(Memory memory, int register) {
+        memory.writeByteToLocation(register, 0x4000);
+        return memory.readByteFromLocation(0xA000);
+    }
+
+    private static void writeRegister(Memory memory, int register, int value) {
+        memory.writeByteToLocation(register, 0x4000);
+        memory.writeByteToLocation(value, 0xA000);
+    }
+
+    @Test
+    public void testCountsEmulatedTime_onlyWhenLatched() throws IOException {
+        Memory memory = memoryWithClock();
+
+        now[0] = 3 * DAY + (2 * 3600 + 5 * 60 + 7) * SECOND + SECOND / 2;
+        Assert.assertEquals(0, readRegister(memory, 0x08));
+
+        latch(memory);
+        Assert.assertEquals(7, readRegister(memory, 0x08));
+        Assert.assertEquals(5, readRegister(memory, 0x09));
+        Assert.assertEquals(2, readRegister(memory, 0x0A));
+        Assert.assertEquals(3, readRegister(memory, 0x0B));
+        Assert.assertEquals(0, readRegister(memory, 0x0C));
+
+        // the latched registers hold still while time goes on
+        now[0] += 10 * SECOND;
+        Assert.assertEquals(7, readRegister(memory, 0x08));
+        latch(memory);
+        Assert.assertEquals(17, readRegister(memory, 0x08));
+
+        // 0x01 on its own doesn't latch
+        now[0] += 10 * SECOND;
+        memory.writeByteToLocation(0x01, 0x6000);
+        Assert.assertEquals(17, readRegister(memory, 0x08));
+    }
+
+    @Test
+    public void testHalt() throws IOException {
+        Memory memory = memoryWithClock();
+        now[0] = 30 * SECOND;
+        writeRegister(memory, 0x0C, 0x40);
+
+        now[0] += 100 * SECOND;
+        latch(memory);
+        Assert.assertEquals(30, readRegister(memory, 0x08));
+        Assert.assertEquals(0x40, readRegister(memory, 0x0C));
+
+        writeRegister(memory, 0x0C, 0x00);
+        now[0] += 5 * SECOND;
+        latch(memory);
+        Assert.assertEquals(35, readRegister(memory, 0x08));
+    }
+
+    @Test
+    public void testWritesSetTheTime() throws IOException {
+        Memory memory = memoryWithClock();
+        writeRegister(memory, 0x09, 59);
+        writeRegister(memory, 0x0A, 23);
+        writeRegister(memory, 0x0B, 0xFF);
+        writeRegister(memory, 0x0C, 0x01);
+        writeRegister(memory, 0x08, 59);
+
+        // one more second rolls everything over, and past day 511 sets the carry
+        now[0] += SECOND;
+        latch(memory);
+        Assert.assertEquals(0, readRegister(memory, 0x08));
+        Assert.assertEquals(0, readRegister(memory, 0x09));
+        Assert.assertEquals(0, readRegister(memory, 0x0A));
+        Assert.assertEquals(0, readRegister(memory, 0x0B));
+        Assert.assertEquals(0x80, readRegister(memory, 0x0C));
+
+        // the carry stays until it's written back to 0
+        now[0] += DAY;
+        latch(memory);
+        Assert.assertEquals(0x80, readRegister(memory, 0x0C));
+        writeRegister(memory, 0x0C, 0x00);
+        latch(memory);
+        Assert.assertEquals(0x00, readRegister(memory, 0x0C));
+        Assert.assertEquals(1, readRegister(memory, 0x0B));
+    }
+
+    @Test
+    public void testSaveState_carriesOnFromAnyCycle() throws IOException {
+        Memory memory = memoryWithClock();
+        now[0] = 1000 * SECOND + SECOND / 2;
+        byte[] state = memory.getBankController().getClock().saveState();
+        Assert.assertEquals(RealTimeClock.STATE_SIZE, state.length);
+
+        // restored into an instance whose CPU is somewhere else entirely
+        now[0] = 77 * DAY;
+        Memory restored = memoryWithClock();
+        restored.getBankController().getClock().loadState(state);
+
+        now[0] += SECOND / 2;
+        latch(restored);
+        Assert.assertEquals(1001 % 60, readRegister(restored, 0x08));
+        Assert.assertEquals(1001 / 60, readRegister(restored, 0x09));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testLoadState_tooShort() throws IOException {
+        memoryWithClock().getBankController().getClock().loadState(new byte[3]);
+    }
+
+    @Test
+    public void testTrailer_addsTimeSpentOff() throws IOException {
+        Memory memory = memoryWithClock();
+        now[0] = DAY + 90 * SECOND;
+        latch(memory);
+        ByteBuffer trailer = ByteBuffer.allocate(RealTimeClock.TRAILER_SIZE);
+        memory.getBankController().getClock().writeTrailer(trailer, 1_000_000);
+        Assert.assertEquals(30, trailer.order(ByteOrder.LITTLE_ENDIAN).getInt(0));
+        Assert.assertEquals(1, trailer.getInt(12));
+        Assert.assertEquals(30, trailer.getInt(20));
+        Assert.assertEquals(1_000_000, trailer.getLong(40));
+
+        // an hour later, somewhere else in emulated time
+        now[0] = 5 * DAY;
+        Memory restored = memoryWithClock();
+        restored.getBankController().getClock().readTrailer(trailer, 1_000_000 + 3600);
+        Assert.assertEquals(30, readRegister(restored, 0x08));
+        latch(restored);
+        Assert.assertEquals(30, readRegister(restored, 0x08));
+        Assert.assertEquals(1, readRegister(restored, 0x09));
+        Assert.assertEquals(1, readRegister(restored, 0x0A));
+        Assert.assertEquals(1, readRegister(restored, 0x0B));
+    }
+
+    @Test
+    public void testTrailer_haltedClockStaysPut() throws IOException {
+        Memory memory = memoryWithClock();
+        now[0] = 42 * SECOND;
+        writeRegister(memory, 0x0C, 0x40);
+        ByteBuffer trailer = ByteBuffer.allocate(RealTimeClock.TRAILER_SIZE);
+        memory.getBankController().getClock().writeTrailer(trailer, 1_000_000);
+
+        Memory restored = memoryWithClock();
+        restored.getBankController().getClock().readTrailer(trailer, 2_000_000);
+        latch(restored);
+        Assert.assertEquals(42, readRegister(restored, 0x08));
+        Assert.assertEquals(0x40, readRegister(restored, 0x0C));
+    }
+
+    @Test
+    public void testNoClockWithoutTimer() throws IOException {
+        Memory memory = BankControllerTests.memoryWithRom(BankControllerTests.markedRom(0x13, 0x04, 0x03));
+        Assert.assertNull(memory.getBankController().getClock());
+        memory.writeByteToLocation(0x0A, 0x0000);
+        Assert.assertEquals(0xFF, readRegister(memory, 0x08));
+    }
+}
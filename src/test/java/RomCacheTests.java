@@ -0,0 +1,96 @@
+import com.pat.Memory;
+import com.pat.RomCache;
+import com.pat.RomImage;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class RomCacheTests {
+
+    private static Path romFile(Path directory, String name, int marker) throws IOException {
+        byte[] rom = new byte[0x8000];
+        rom[0x134] = (byte) marker;
+        Path file = directory.resolve(name);
+        Files.write(file, rom);
+        return file;
+    }
+
+    @Test
+    public void testSameFile_sharedAndCounted() throws IOException {
+        RomCache cache = new RomCache();
+        Path rom = romFile(Files.createTempDirectory("roms"), "game.gb", 1);
+
+        RomImage first = cache.acquire(rom);
+        RomImage second = cache.acquire(rom);
+        Assert.assertSame(first, second);
+        Assert.assertEquals(1, cache.getMisses());
+        Assert.assertEquals(1, cache.getHits());
+        Assert.assertEquals(0x8000, cache.getBytesSaved());
+        Assert.assertEquals(2, cache.getReferenceCount(first));
+    }
+
+    @Test
+    public void testSameBytes_differentFilesAndArrays() throws IOException {
+        RomCache cache = new RomCache();
+        Path directory = Files.createTempDirectory("roms");
+        RomImage fromFile = cache.acquire(romFile(directory, "a.gb", 7));
+        RomImage fromCopy = cache.acquire(romFile(directory, "b.gb", 7));
+        Assert.assertSame(fromFile, fromCopy);
+
+        byte[] bytes = Files.readAllBytes(directory.resolve("a.gb"));
+        Assert.assertSame(fromFile, cache.acquire(bytes));
+
+        Assert.assertNotSame(fromFile, cache.acquire(romFile(directory, "c.gb", 8)));
+        Assert.assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testEvictedWhenReleased() throws IOException {
+        RomCache cache = new RomCache();
+        Path rom = romFile(Files.createTempDirectory("roms"), "game.gb", 1);
+
+        RomImage first = cache.acquire(rom);
+        RomImage second = cache.acquire(rom);
+        cache.release(first);
+        Assert.assertEquals(1, cache.size());
+        cache.release(second);
+        Assert.assertEquals(0, cache.size());
+
+        // gone, so the next one maps it again
+        Assert.assertNotSame(first, cache.acquire(rom));
+        Assert.assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void testChangedFile_hashedAgain() throws IOException {
+        RomCache cache = new RomCache();
+        Path directory = Files.createTempDirectory("roms");
+        RomImage before = cache.acquire(romFile(directory, "game.gb", 1));
+
+        Files.write(directory.resolve("game.gb"), new byte[0xC000]);
+        RomImage after = cache.acquire(directory.resolve("game.gb"));
+        Assert.assertNotSame(before, after);
+        Assert.assertEquals(3, after.getBankCount());
+    }
+
+    @Test
+    public void testMemory_releasesOnUnload() throws IOException {
+        RomCache cache = RomCache.shared();
+        Path rom = romFile(Files.createTempDirectory("roms"), "game.gb", 0x42);
+
+        Memory first = new Memory();
+        Memory second = new Memory();
+        first.loadRom(rom);
+        second.loadRom(rom);
+        Assert.assertSame(first.getRom(), second.getRom());
+        RomImage image = first.getRom();
+        Assert.assertEquals(2, cache.getReferenceCount(image));
+
+        first.unloadRom();
+        second.loadTestRomByteArray(new int[0x100]);
+        Assert.assertEquals(0, cache.getReferenceCount(image));
+    }
+}
@@ -0,0 +1,32 @@
+import com.pat.CPU;
+import com.pat.Emulator;
+import com.pat.Memory;
+
+import java.io.IOException;
+
+/**
+ * Fresh machines running a few bytes of code from 0x0000, the rest of a 32kB ROM is NOPs.
+ */
+class RomFixture {
+
+    static CPU cpuWithCode(int[] code) throws IOException {
+        Memory memory = new Memory();
+        memory.loadTestRomByteArray(rom(code));
+        CPU cpu = new CPU(memory);
+        cpu.forceProgramCounterToPosition(0x00, false);
+        return cpu;
+    }
+
+    static Emulator emulatorWithCode(int[] code) throws IOException {
+        Emulator emulator = new Emulator();
+        emulator.getMemory().loadTestRomByteArray(rom(code));
+        emulator.getCpu().forceProgramCounterToPosition(0x00, false);
+        return emulator;
+    }
+
+    private static int[] rom(int[] code) {
+        int[] rom = new int[Math.max(0x8000, code.length)];
+        System.arraycopy(code, 0, rom, 0, code.length);
+        return rom;
+    }
+}
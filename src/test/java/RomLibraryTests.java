@@ -0,0 +1,187 @@
+import com.pat.CartridgeHeader;
+import com.pat.Memory;
+import com.pat.RomLibrary;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+public class RomLibraryTests {
+
+    static byte[] romWithHeader(String title, int cartridgeType, int romSizeCode, int ramSizeCode, int cgbFlag) {
+        byte[] rom = new byte[0x8000 << romSizeCode];
+        byte[] name = title.getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(name, 0, rom, 0x134, name.length);
+        rom[0x143] = (byte) cgbFlag;
+        rom[0x147] = (byte) cartridgeType;
+        rom[0x148] = (byte) romSizeCode;
+        rom[0x149] = (byte) ramSizeCode;
+        int checksum = 0;
+        for (int i = 0x134; i <= 0x14C; i++) {
+            checksum = checksum - (rom[i] & 0xFF) - 1;
+        }
+        rom[0x14D] = (byte) checksum;
+        rom[0x14E] = 0x12;
+        rom[0x14F] = 0x34;
+        return rom;
+    }
+
+    private static void writeZip(Path zip, String[] names, byte[][] roms) throws IOException {
+        try (OutputStream file = Files.newOutputStream(zip); ZipOutputStream out = new ZipOutputStream(file)) {
+            for (int i = 0; i < names.length; i++) {
+                out.putNextEntry(new ZipEntry(names[i]));
+                out.write(roms[i]);
+                out.closeEntry();
+            }
+        }
+    }
+
+    @Test
+    public void testParseHeader() {
+        CartridgeHeader header = CartridgeHeader.parse(romWithHeader("POKEMON RED", 0x13, 5, 3, 0x00));
+        Assert.assertEquals("POKEMON RED", header.title());
+        Assert.assertEquals(Memory.MemoryBankType.MBC3, header.memoryBankType());
+        Assert.assertEquals(0x100000, header.romSize());
+        Assert.assertEquals(0x8000, header.ramSize());
+        Assert.assertTrue(header.hasBattery());
+        Assert.assertFalse(header.supportsCgb());
+        Assert.assertTrue(header.headerChecksumValid());
+        Assert.assertEquals(0x1234, header.globalChecksum());
+
+        // the CGB flag isn't part of the title
+        CartridgeHeader colour = CartridgeHeader.parse(romWithHeader("ABCDEFGHIJKLMNO", 0x19, 0, 0, 0x80));
+        Assert.assertEquals("ABCDEFGHIJKLMNO", colour.title());
+        Assert.assertTrue(colour.supportsCgb());
+    }
+
+    @Test
+    public void testScan_filesZipsAndSubdirectories() throws IOException {
+        Path roms = Files.createTempDirectory("library");
+        Files.write(roms.resolve("tetris.gb"), romWithHeader("TETRIS", 0x00, 0, 0, 0x00));
+        Files.createDirectories(roms.resolve("colour"));
+        Files.write(roms.resolve("colour/zelda.gbc"), romWithHeader("ZELDA", 0x1B, 2, 3, 0xC0));
+        writeZip(roms.resolve("pack.zip"), new String[]{"a.gb", "readme.txt", "b.gb"}, new byte[][]{
+                romWithHeader("ALPHA", 0x01, 1, 0, 0x00), "hello".getBytes(), romWithHeader("BETA", 0x06, 0, 0, 0x00)});
+        Files.write(roms.resolve("notes.txt"), "not a rom".getBytes());
+        Files.write(roms.resolve("short.gb"), new byte[0x20]);
+
+        RomLibrary library = new RomLibrary(Files.createTempDirectory("index").resolve("roms.idx"));
+        library.scan(roms);
+
+        List<RomLibrary.Entry> entries = library.getEntries();
+        Assert.assertEquals(4, entries.size());
+        Assert.assertEquals(List.of("ZELDA", "ALPHA", "BETA", "TETRIS"),
+                entries.stream().map(entry -> entry.header().title()).toList());
+        Assert.assertTrue(entries.get(1).location().endsWith("pack.zip!/a.gb"));
+        Assert.assertEquals(Memory.MemoryBankType.MBC2, entries.get(2).header().memoryBankType());
+    }
+
+    @Test
+    public void testRescan_onlyReadsChangedFiles() throws IOException {
+        Path roms = Files.createTempDirectory("library");
+        Path index = Files.createTempDirectory("index").resolve("roms.idx");
+        Files.write(roms.resolve("one.gb"), romWithHeader("ONE", 0x00, 0, 0, 0x00));
+        Files.write(roms.resolve("two.gb"), romWithHeader("TWO", 0x00, 0, 0, 0x00));
+        writeZip(roms.resolve("three.zip"), new String[]{"three.gb"}, new byte[][]{romWithHeader("THREE", 0x01, 0, 0, 0)});
+
+        RomLibrary library = new RomLibrary(index);
+        library.scan(roms);
+        Assert.assertEquals(3, library.getLastScanParsed());
+
+        // a new library picks the index up from disk
+        Path two = roms.resolve("two.gb");
+        Files.write(two, romWithHeader("TWO AGAIN", 0x00, 0, 0, 0x00));
+        Files.setLastModifiedTime(two, FileTime.fromMillis(Files.getLastModifiedTime(two).toMillis() + 2000));
+        Files.delete(roms.resolve("one.gb"));
+
+        RomLibrary reloaded = new RomLibrary(index);
+        Assert.assertEquals(3, reloaded.getEntries().size());
+        reloaded.scan(roms);
+        Assert.assertEquals(1, reloaded.getLastScanParsed());
+        Assert.assertEquals(1, reloaded.getLastScanReused());
+        Assert.assertEquals(List.of("THREE", "TWO AGAIN"),
+                reloaded.getEntries().stream().map(entry -> entry.header().title()).toList());
+    }
+
+    @Test
+    public void testScan_corruptZipDoesNotStopTheRest() throws IOException {
+        Path roms = Files.createTempDirectory("library");
+        Path index = Files.createTempDirectory("index").resolve("roms.idx");
+        Files.write(roms.resolve("tetris.gb"), romWithHeader("TETRIS", 0x00, 0, 0, 0x00));
+        Files.write(roms.resolve("garbage.zip"), "PK not really a zip".getBytes());
+        // cut off half way, so the central directory is missing
+        Path whole = roms.resolve("truncated.zip");
+        writeZip(whole, new String[]{"a.gb"}, new byte[][]{romWithHeader("ALPHA", 0x01, 1, 0, 0x00)});
+        byte[] zip = Files.readAllBytes(whole);
+        Files.write(whole, Arrays.copyOf(zip, zip.length / 2));
+
+        RomLibrary library = new RomLibrary(index);
+        library.scan(roms);
+        Assert.assertEquals(3, library.getLastScanParsed());
+        Assert.assertEquals(List.of("TETRIS"), library.getEntries().stream().map(entry -> entry.header().title()).toList());
+
+        // the index was saved, and the bad zips are in it so they aren't read again until they change
+        RomLibrary reloaded = new RomLibrary(index);
+        Assert.assertEquals(1, reloaded.getEntries().size());
+        reloaded.scan(roms);
+        Assert.assertEquals(0, reloaded.getLastScanParsed());
+        Assert.assertEquals(3, reloaded.getLastScanReused());
+    }
+
+    @Test
+    public void testScan_unreadableDirectoryDoesNotStopTheRest() throws IOException {
+        Path roms = Files.createTempDirectory("library");
+        Files.write(roms.resolve("tetris.gb"), romWithHeader("TETRIS", 0x00, 0, 0, 0x00));
+        Path locked = Files.createDirectory(roms.resolve("locked"));
+        Files.write(locked.resolve("hidden.gb"), romWithHeader("HIDDEN", 0x00, 0, 0, 0x00));
+        Files.setPosixFilePermissions(locked, Set.of());
+        try {
+            // root reads it anyway
+            Assume.assumeFalse(Files.isReadable(locked));
+
+            RomLibrary library = new RomLibrary(Files.createTempDirectory("index").resolve("roms.idx"));
+            library.scan(roms);
+            Assert.assertEquals(List.of("TETRIS"), library.getEntries().stream().map(entry -> entry.header().title()).toList());
+        } finally {
+            Files.setPosixFilePermissions(locked, PosixFilePermissions.fromString("rwx------"));
+        }
+    }
+
+    @Test(expected = NoSuchFileException.class)
+    public void testScan_missingDirectoryFails() throws IOException {
+        Path roms = Files.createTempDirectory("library");
+        new RomLibrary(Files.createTempDirectory("index").resolve("roms.idx")).scan(roms.resolve("missing"));
+    }
+
+    @Test
+    public void testIndexAgreesWithLoader() throws IOException {
+        Path roms = Files.createTempDirectory("library");
+        int[] types = {0x00, 0x03, 0x06, 0x10, 0x1E, 0xFC};
+        for (int type : types) {
+            Files.write(roms.resolve("type" + type + ".gb"), romWithHeader("T" + type, type, 1, 2, 0x00));
+        }
+        RomLibrary library = new RomLibrary(Files.createTempDirectory("index").resolve("roms.idx"));
+        library.scan(roms);
+
+        for (RomLibrary.Entry entry : library.getEntries()) {
+            Memory memory = new Memory();
+            memory.loadRom(Path.of(entry.location()));
+            Assert.assertEquals(memory.getMemoryBankType(), entry.header().memoryBankType());
+            Assert.assertEquals(memory.getCartRamSize(), entry.header().ramSize());
+            memory.unloadRom();
+        }
+    }
+}
@@ -0,0 +1,144 @@
+import com.pat.Emulator;
+import com.pat.Memory;
+import com.pat.SaveFile;
+import com.pat.mbc.RealTimeClock;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class SaveFileTests {
+
+    // MBC1 + RAM + battery, 8kB
+    private static Path batteryRom(Path directory) throws IOException {
+        Path rom = directory.resolve("game.gb");
+        Files.write(rom, BankControllerTests.markedRom(0x03, 0x04, 0x02));
+        return rom;
+    }
+
+    @Test
+    public void testWritesReachTheSaveFile() throws IOException {
+        Path directory = Files.createTempDirectory("save");
+        Memory memory = new Memory();
+        memory.loadRomWithSaveFile(batteryRom(directory));
+        Assert.assertEquals(directory.resolve("game.sav"), memory.getSaveFile().getPath());
+
+        memory.writeByteToLocation(0x0A, 0x0000);
+        memory.writeByteToLocation(0x12, 0xA000);
+        memory.writeByteToLocation(0x34, 0xBFFF);
+        Assert.assertEquals(0x12, memory.readByteFromLocation(0xA000));
+        Assert.assertTrue(memory.getSaveFile().isDirty());
+
+        // disabling RAM is the game saying it's done
+        memory.writeByteToLocation(0x00, 0x0000);
+        Assert.assertFalse(memory.getSaveFile().isDirty());
+        memory.getSaveFile().awaitFlush();
+
+        byte[] saved = Files.readAllBytes(directory.resolve("game.sav"));
+        Assert.assertEquals(0x2000, saved.length);
+        Assert.assertEquals(0x12, saved[0x0000]);
+        Assert.assertEquals(0x34, saved[0x1FFF]);
+    }
+
+    @Test
+    public void testExistingSaveIsLoaded_andTrailerKept() throws IOException {
+        Path directory = Files.createTempDirectory("save");
+        Path rom = batteryRom(directory);
+        // another emulator's save, with 48 bytes of clock on the end
+        byte[] existing = new byte[0x2000 + 48];
+        existing[0x0100] = 0x56;
+        existing[0x2000] = 0x78;
+        Files.write(directory.resolve("game.sav"), existing);
+
+        Memory memory = new Memory();
+        memory.loadRomWithSaveFile(rom);
+        memory.writeByteToLocation(0x0A, 0x0000);
+        Assert.assertEquals(0x56, memory.readByteFromLocation(0xA100));
+
+        memory.writeByteToLocation(0x9A, 0xA101);
+        memory.flushCartRam();
+        memory.getSaveFile().awaitFlush();
+
+        byte[] saved = Files.readAllBytes(directory.resolve("game.sav"));
+        Assert.assertEquals(existing.length, saved.length);
+        Assert.assertEquals((byte) 0x9A, saved[0x0101]);
+        Assert.assertEquals(0x78, saved[0x2000]);
+    }
+
+    @Test
+    public void testFlushedAtFrameBoundary() throws IOException {
+        Path directory = Files.createTempDirectory("save");
+        try (Emulator emulator = new Emulator()) {
+            Memory memory = emulator.getMemory();
+            memory.loadRomWithSaveFile(batteryRom(directory));
+            emulator.getCpu().forceProgramCounterToPosition(0x0150, false);
+
+            memory.writeByteToLocation(0x0A, 0x0000);
+            memory.writeByteToLocation(0x42, 0xA010);
+            Assert.assertTrue(memory.getSaveFile().isDirty());
+            emulator.runFrame();
+            Assert.assertFalse(memory.getSaveFile().isDirty());
+            memory.getSaveFile().awaitFlush();
+        }
+    }
+
+    @Test
+    public void testClockKeptInTheTrailer() throws IOException {
+        Path directory = Files.createTempDirectory("save");
+        Path rom = directory.resolve("game.gb");
+        Files.write(rom, BankControllerTests.markedRom(0x10, 0x04, 0x02)); // MBC3 + timer + RAM + battery, 8kB
+
+        Memory memory = new Memory();
+        memory.loadRomWithSaveFile(rom);
+        memory.writeByteToLocation(0x0A, 0x0000);
+        // halted, so the time between saving and loading doesn't move it
+        memory.writeByteToLocation(0x0C, 0x4000);
+        memory.writeByteToLocation(0x40, 0xA000);
+        memory.writeByteToLocation(0x08, 0x4000);
+        memory.writeByteToLocation(42, 0xA000);
+
+        // disabling RAM saves the clock along with it
+        memory.writeByteToLocation(0x00, 0x0000);
+        memory.getSaveFile().awaitFlush();
+        byte[] saved = Files.readAllBytes(directory.resolve("game.sav"));
+        Assert.assertEquals(0x2000 + RealTimeClock.TRAILER_SIZE, saved.length);
+        Assert.assertEquals(42, saved[0x2000]);
+        Assert.assertEquals(0x40, saved[0x2010]);
+
+        Memory restored = new Memory();
+        restored.loadRomWithSaveFile(rom);
+        restored.writeByteToLocation(0x0A, 0x0000);
+        restored.writeByteToLocation(0x00, 0x6000);
+        restored.writeByteToLocation(0x01, 0x6000);
+        restored.writeByteToLocation(0x08, 0x4000);
+        Assert.assertEquals(42, restored.readByteFromLocation(0xA000));
+        restored.writeByteToLocation(0x0C, 0x4000);
+        Assert.assertEquals(0x40, restored.readByteFromLocation(0xA000));
+    }
+
+    @Test
+    public void testClockWithoutRam_stillGetsAFile() throws IOException {
+        Path directory = Files.createTempDirectory("save");
+        Path rom = directory.resolve("game.gb");
+        Files.write(rom, BankControllerTests.markedRom(0x0F, 0x04, 0x00)); // MBC3 + timer + battery
+
+        Memory memory = new Memory();
+        memory.loadRomWithSaveFile(rom);
+        Assert.assertEquals(0, memory.getSaveFile().getRam().capacity());
+        Assert.assertEquals(RealTimeClock.TRAILER_SIZE, Files.size(SaveFile.besideRom(rom)));
+    }
+
+    @Test
+    public void testNoFileWithoutBattery() throws IOException {
+        Path directory = Files.createTempDirectory("save");
+        Path rom = directory.resolve("game.gb");
+        Files.write(rom, BankControllerTests.markedRom(0x02, 0x04, 0x02)); // MBC1 + RAM, no battery
+
+        Memory memory = new Memory();
+        memory.loadRomWithSaveFile(rom);
+        Assert.assertNull(memory.getSaveFile());
+        Assert.assertFalse(Files.exists(SaveFile.besideRom(rom)));
+    }
+}
@@ -0,0 +1,124 @@
+import com.pat.Helpful;
+import com.pat.ppu.PaletteMapper;
+import com.pat.ppu.TileCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.Color;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One 160 pixel scanline from twenty tile rows (two bitplane bytes each) to ARGB through BGP.
+ * currentPath is the way Gameboy used to do it: Helpful.getBit twice a pixel and getAWTColor, which built a new
+ * palette of Colors for every pixel. The others decode through TileCache's table and map with each PaletteMapper;
+ * vector needs the JVM run with --add-modules jdk.incubator.vector, and maps with the loop without it.
+ * Run with the JMH runner, e.g. {@code java --add-modules jdk.incubator.vector -cp <test classpath>
+ * org.openjdk.jmh.Main ScanlineBenchmark}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class ScanlineBenchmark {
+
+    private static final int WIDTH = 160;
+    private static final int[] SHADES = {0xFF9BBC0F, 0xFF8BAC0F, 0xFF306230, 0xFF0F380F};
+
+    private final int[] rowBytes = new int[WIDTH / 8 * 2];
+    private final int bgp = 0xE4;
+    private final int[] palette = new int[4];
+    private final byte[] colors = new byte[WIDTH];
+    private final int[] line = new int[WIDTH];
+
+    private PaletteMapper scalar;
+    private PaletteMapper vector;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(0x23);
+        for (int i = 0; i < rowBytes.length; i++) {
+            rowBytes[i] = random.nextInt(256);
+        }
+        for (int color = 0; color < 4; color++) {
+            palette[color] = SHADES[(bgp >> (color << 1)) & 3];
+        }
+        scalar = PaletteMapper.scalar();
+        PaletteMapper available = PaletteMapper.vector();
+        vector = available != null ? available : scalar;
+    }
+
+    @Benchmark
+    public int[] currentPath() {
+        for (int tile = 0; tile < WIDTH / 8; tile++) {
+            int low = rowBytes[tile * 2];
+            int high = rowBytes[tile * 2 + 1];
+            for (int innerX = 0; innerX < 8; innerX++) {
+                boolean topLine = Helpful.getBit(low, 7 - innerX);
+                boolean bottomLine = Helpful.getBit(high, 7 - innerX);
+                int color = (bottomLine ? 2 : 0) | (topLine ? 1 : 0);
+                line[tile * 8 + innerX] = getAWTColor((bgp >> (color << 1)) & 3).getRGB();
+            }
+        }
+        return line;
+    }
+
+    // as Gameboy had it
+    private static Color getAWTColor(int colorValue) {
+        Color[] dmgPalette = {
+                new Color(155, 188, 15),
+                new Color(139, 172, 15),
+                new Color(48, 98, 48),
+                new Color(15, 56, 15)
+        };
+        return dmgPalette[colorValue];
+    }
+
+    @Benchmark
+    public int[] lookupTable_scalar() {
+        decode();
+        scalar.map(colors, 0, palette, line, 0, WIDTH);
+        return line;
+    }
+
+    @Benchmark
+    public int[] lookupTable_vector() {
+        decode();
+        vector.map(colors, 0, palette, line, 0, WIDTH);
+        return line;
+    }
+
+    /**
+     * Just the palette step, on a line the layer cache has already decoded.
+     */
+    @Benchmark
+    public int[] mapOnly_scalar() {
+        scalar.map(colors, 0, palette, line, 0, WIDTH);
+        return line;
+    }
+
+    @Benchmark
+    public int[] mapOnly_vector() {
+        vector.map(colors, 0, palette, line, 0, WIDTH);
+        return line;
+    }
+
+    private void decode() {
+        for (int tile = 0; tile < WIDTH / 8; tile++) {
+            int packed = TileCache.decodeRow(rowBytes[tile * 2], rowBytes[tile * 2 + 1]);
+            for (int pixel = 0; pixel < 8; pixel++) {
+                colors[tile * 8 + pixel] = (byte) ((packed >> (14 - pixel * 2)) & 3);
+            }
+        }
+    }
+}
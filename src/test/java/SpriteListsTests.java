@@ -0,0 +1,122 @@
+import com.pat.CPU;
+import com.pat.Memory;
+import com.pat.ppu.PPU;
+import com.pat.ppu.SpriteLists;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SpriteListsTests {
+
+    private PPUFixture fixture;
+    private Memory memory;
+
+    private PPU ppu() {
+        fixture = new PPUFixture();
+        memory = fixture.memory;
+        PPU ppu = fixture.ppu;
+        // sprites on, solid tile 1 for them
+        memory.writeByteToLocation(0x93, 0xFF40);
+        memory.writeByteToLocation(0xE4, 0xFF48);
+        for (int i = 0; i < 16; i++) {
+            memory.writeByteToLocation(0xFF, 0x8010 + i);
+        }
+        return ppu;
+    }
+
+    private void sprite(int index, int y, int x) {
+        memory.writeByteToLocation(y, 0xFE00 + index * 4);
+        memory.writeByteToLocation(x, 0xFE00 + index * 4 + 1);
+        memory.writeByteToLocation(1, 0xFE00 + index * 4 + 2);
+    }
+
+    @Test
+    public void testLists_builtOnceUntilOamChanges() {
+        PPU ppu = ppu();
+        SpriteLists lists = ppu.getSpriteLists();
+        sprite(0, 20, 20);
+        fixture.runTo(3L * CPU.CYCLES_PER_FRAME);
+        Assert.assertEquals(1, lists.getRebuilds());
+
+        sprite(0, 40, 20);
+        fixture.runTo(4L * CPU.CYCLES_PER_FRAME);
+        Assert.assertEquals(2, lists.getRebuilds());
+        Assert.assertEquals(3, fixture.pixel(12, 24));
+        Assert.assertEquals(0, fixture.pixel(12, 4));
+
+        // other high memory isn't OAM
+        memory.writeByteToLocation(0x12, 0xFF80);
+        fixture.runTo(5L * CPU.CYCLES_PER_FRAME);
+        Assert.assertEquals(2, lists.getRebuilds());
+    }
+
+    @Test
+    public void testDma_rebuildsLists() {
+        PPU ppu = ppu();
+        SpriteLists lists = ppu.getSpriteLists();
+        fixture.runTo(CPU.CYCLES_PER_FRAME);
+        long before = lists.getRebuilds();
+
+        // one sprite at 8, 8 in work RAM, copied in by DMA
+        memory.writeByteToLocation(24, 0xC000);
+        memory.writeByteToLocation(16, 0xC001);
+        memory.writeByteToLocation(1, 0xC002);
+        memory.writeByteToLocation(0xC0, 0xFF46);
+        fixture.runTo(2L * CPU.CYCLES_PER_FRAME);
+        Assert.assertEquals(before + 1, lists.getRebuilds());
+        Assert.assertEquals(3, fixture.pixel(8, 8));
+    }
+
+    @Test
+    public void testLists_sortedByXThenOamIndex_tenPerLine() {
+        PPU ppu = ppu();
+        SpriteLists lists = ppu.getSpriteLists();
+        // eleven sprites on line 0, the last one in OAM is dropped however far left it is
+        for (int i = 0; i < 11; i++) {
+            sprite(i, 16, i == 10 ? 0 : 100 - i * 8);
+        }
+        sprite(1, 16, 100);
+        fixture.runTo(PPU.CYCLES_PER_LINE);
+        Assert.assertEquals(10, lists.prepareLine(0, 8));
+        int[] sprites = lists.getSprites();
+        // sprite 0 and 1 share X 100, OAM order breaks the tie
+        Assert.assertEquals(9, sprites[0]);
+        Assert.assertEquals(0, sprites[8]);
+        Assert.assertEquals(1, sprites[9]);
+        Assert.assertEquals(0, lists.prepareLine(8, 8));
+    }
+
+    @Test
+    public void testSpriteSizeChange_rebuildsLists() {
+        PPU ppu = ppu();
+        SpriteLists lists = ppu.getSpriteLists();
+        sprite(0, 16, 8);
+        fixture.runTo(CPU.CYCLES_PER_FRAME);
+        Assert.assertEquals(0, fixture.pixel(0, 8));
+
+        memory.writeByteToLocation(0x97, 0xFF40);
+        fixture.runTo(2L * CPU.CYCLES_PER_FRAME);
+        Assert.assertEquals(2, lists.getRebuilds());
+        // 8x16 uses tiles 0 and 1, so the bottom half is tile 1
+        Assert.assertEquals(0, fixture.pixel(0, 0));
+        Assert.assertEquals(3, fixture.pixel(0, 8));
+    }
+
+    @Test
+    public void testMidFrameOamWrite_leavesDrawnLinesAlone() {
+        ppu();
+        // 16 lines of sprite, two 8 line sprites one above the other
+        sprite(0, 16, 8);
+        sprite(1, 24, 8);
+        fixture.runTo(CPU.CYCLES_PER_FRAME);
+
+        // once line 10 is drawn, move the second one away
+        fixture.setNow(CPU.CYCLES_PER_FRAME + 10L * PPU.CYCLES_PER_LINE + 300);
+        sprite(1, 24, 100);
+        fixture.runTo(2L * CPU.CYCLES_PER_FRAME);
+        Assert.assertEquals(3, fixture.pixel(0, 3));
+        Assert.assertEquals(3, fixture.pixel(0, 10));
+        Assert.assertEquals(0, fixture.pixel(0, 11));
+        Assert.assertEquals(0, fixture.pixel(0, 12));
+        Assert.assertEquals(3, fixture.pixel(92, 12));
+    }
+}
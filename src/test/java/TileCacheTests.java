@@ -0,0 +1,123 @@
+import com.pat.CPU;
+import com.pat.Memory;
+import com.pat.ppu.PPU;
+import com.pat.ppu.TileCache;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TileCacheTests {
+
+    private PPUFixture fixture;
+    private Memory memory;
+
+    private PPU ppu() {
+        fixture = new PPUFixture();
+        memory = fixture.memory;
+        PPU ppu = fixture.ppu;
+        return ppu;
+    }
+
+    @Test
+    public void testDecode_rowOfColourIndices() {
+        TileCache cache = ppu().getTileCache();
+        memory.writeByteToLocation(0b10100101, 0x8010 + 6);
+        memory.writeByteToLocation(0b11000011, 0x8010 + 7);
+        int start = cache.rowOffset(1, 3);
+        byte[] expected = {3, 2, 1, 0, 0, 1, 2, 3};
+        for (int pixel = 0; pixel < 8; pixel++) {
+            Assert.assertEquals(expected[pixel], cache.getPixels()[start + pixel]);
+        }
+    }
+
+    @Test
+    public void testDecodeTable_matchesBitByBit() {
+        for (int low = 0; low < 0x100; low++) {
+            for (int high = 0; high < 0x100; high++) {
+                int packed = TileCache.decodeRow(low, high);
+                for (int pixel = 0; pixel < 8; pixel++) {
+                    int bit = 7 - pixel;
+                    int expected = ((high >> bit) & 1) << 1 | ((low >> bit) & 1);
+                    Assert.assertEquals(expected, (packed >> (14 - pixel * 2)) & 3);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testWrite_dirtiesOnlyItsRow() {
+        TileCache cache = ppu().getTileCache();
+        cache.rowOffset(5, 2);
+        cache.rowOffset(5, 3);
+        cache.rowOffset(6, 2);
+        Assert.assertFalse(cache.isDirty(5, 2));
+
+        memory.writeByteToLocation(0x42, 0x8000 + 5 * 16 + 2 * 2 + 1);
+        Assert.assertTrue(cache.isDirty(5, 2));
+        Assert.assertFalse(cache.isDirty(5, 3));
+        Assert.assertFalse(cache.isDirty(6, 2));
+        Assert.assertEquals(0x42, memory.readByteFromLocation(0x8000 + 5 * 16 + 2 * 2 + 1));
+
+        cache.resetCounters();
+        cache.rowOffset(5, 2);
+        cache.rowOffset(5, 3);
+        Assert.assertEquals(1, cache.getRedecodes());
+        Assert.assertEquals(1, cache.getHits());
+        Assert.assertEquals(0.5, cache.getHitRate(), 0);
+    }
+
+    @Test
+    public void testWrite_sameValueLeavesRowClean() {
+        TileCache cache = ppu().getTileCache();
+        memory.writeByteToLocation(0x77, 0x8100);
+        cache.rowOffset(16, 0);
+        memory.writeByteToLocation(0x77, 0x8100);
+        Assert.assertFalse(cache.isDirty(16, 0));
+    }
+
+    @Test
+    public void testSignedTiles_andMapsNotTracked() {
+        TileCache cache = ppu().getTileCache();
+        cache.rowOffset(256 + 127, 7);
+        memory.writeByteToLocation(0x01, 0x97FF);
+        Assert.assertTrue(cache.isDirty(383, 7));
+
+        // the tile maps aren't tile data
+        cache.rowOffset(383, 7);
+        memory.writeByteToLocation(0x01, 0x9800);
+        Assert.assertFalse(cache.isDirty(383, 7));
+        Assert.assertEquals(0x01, memory.readByteFromLocation(0x9800));
+    }
+
+    @Test
+    public void testPpu_drawsTileChangedBetweenFrames() {
+        PPU ppu = ppu();
+        memory.writeByteToLocation(0xE4, 0xFF47);
+        memory.writeByteToLocation(0xFF, 0x8000);
+        fixture.runTo(CPU.CYCLES_PER_FRAME);
+        Assert.assertEquals(PPU.shadeColor(1), ppu.getFramebuffer()[0]);
+
+        // a static screen decodes nothing
+        TileCache cache = ppu.getTileCache();
+        cache.resetCounters();
+        fixture.runTo(2L * CPU.CYCLES_PER_FRAME);
+        Assert.assertEquals(0, cache.getRedecodes());
+
+        memory.writeByteToLocation(0xFF, 0x8001);
+        fixture.runTo(3L * CPU.CYCLES_PER_FRAME);
+        Assert.assertEquals(PPU.shadeColor(3), ppu.getFramebuffer()[0]);
+        Assert.assertEquals(1, cache.getRedecodes());
+    }
+
+    @Test
+    public void testDma_leavesTileWritesTracked() {
+        TileCache cache = ppu().getTileCache();
+        memory.writeByteToLocation(0xC0, 0xFF46);
+        fixture.setNow(fixture.getNow() + Memory.OAM_DMA_CYCLES);
+        cache.rowOffset(0, 0);
+        memory.writeByteToLocation(0x12, 0x8000);
+        Assert.assertTrue(cache.isDirty(0, 0));
+        cache.rowOffset(0, 0);
+        memory.writeByteToLocation(0x34, 0x8000);
+        Assert.assertTrue(cache.isDirty(0, 0));
+    }
+}
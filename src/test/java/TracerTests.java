@@ -0,0 +1,54 @@
+import com.pat.CPU;
+import com.pat.Tracer;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+public class TracerTests {
+
+    @Test
+    public void testTracingIsOffByDefault() throws IOException {
+        CPU cpu = RomFixture.cpuWithCode(new int[]{0x00});
+        Assert.assertNull(cpu.getTracer());
+    }
+
+    @Test
+    public void testRingBuffer_keepsTheNewestRecords() throws IOException {
+        // six INC A, the tracer only has room for four
+        CPU cpu = RomFixture.cpuWithCode(new int[]{0x3C, 0x3C, 0x3C, 0x3C, 0x3C, 0x3C, 0x76});
+        cpu.enableTracing(4);
+        for (int i = 0; i < 6; i++) {
+            cpu.executeBlock();
+        }
+
+        Tracer tracer = cpu.getTracer();
+        Assert.assertEquals(4, tracer.size());
+        Assert.assertEquals(6, tracer.getRecordedCount());
+        for (int i = 0; i < 4; i++) {
+            Assert.assertEquals(i + 2, tracer.getPC(i));
+            Assert.assertEquals(0x3C, tracer.getOpcode(i));
+            Assert.assertEquals((i + 2) * 4L, tracer.getCycle(i));
+        }
+    }
+
+    @Test
+    public void testDump_writesOneLinePerRecord() throws IOException {
+        // LD A,0x12 / SWAP A
+        CPU cpu = RomFixture.cpuWithCode(new int[]{0x3E, 0x12, 0xCB, 0x37, 0x76});
+        cpu.enableTracing(16);
+        cpu.executeBlock();
+        cpu.executeBlock();
+
+        StringWriter out = new StringWriter();
+        cpu.getTracer().dump(out);
+        String[] lines = out.toString().split("\\R");
+
+        Assert.assertEquals(2, lines.length);
+        Assert.assertTrue(lines[0], lines[0].contains("PC:0000") && lines[0].contains("LD A,n"));
+        Assert.assertTrue(lines[1], lines[1].contains("PC:0002") && lines[1].contains("CB 37") && lines[1].contains("SWAP A"));
+        // registers are recorded before the instruction runs
+        Assert.assertTrue(lines[1], lines[1].contains("AF:12"));
+    }
+}